@@ -63,4 +63,24 @@ public @interface Options {
   String keyColumn() default "";
   
   String resultSets() default "";
+
+  /**
+   * Comma separated names of the tables the statement reads (select) or writes (insert, update, delete).
+   * By default they are taken from the SQL.
+   * @since 3.4.6
+   */
+  String tables() default "";
+
+  /**
+   * Whether an empty result of the select goes into the second level cache.
+   * @since 3.4.6
+   */
+  boolean cacheEmptyResults() default true;
+
+  /**
+   * Comma separated ids of the statements whose batches have to be executed before the batch of this one,
+   * when statements are grouped by the batch executor.
+   * @since 3.4.6
+   */
+  String batchAfter() default "";
 }
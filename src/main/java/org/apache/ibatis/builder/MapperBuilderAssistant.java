@@ -144,6 +144,7 @@ public class MapperBuilderAssistant extends BaseBuilder {
                 .readWrite(readWrite)
                 .blocking(blocking)
                 .properties(props)
+                .statisticsRegistry(configuration.getCacheStatisticsRegistry())
                 .build();
         configuration.addCache(cache);
         currentCache = cache;
@@ -296,6 +297,45 @@ public class MapperBuilderAssistant extends BaseBuilder {
             String databaseId,
             LanguageDriver lang,
             String resultSets) {
+        return addMappedStatement(
+                id, sqlSource, statementType, sqlCommandType, fetchSize, timeout,
+                parameterMap, parameterType, resultMap, resultType, resultSetType,
+                flushCache, useCache, resultOrdered, keyGenerator, keyProperty,
+                keyColumn, databaseId, lang, resultSets, null, null, true, null);
+    }
+
+    /**
+     * @param readTables 语句读取的表，未知时为null
+     * @param writtenTables 语句写入的表，未知时为null，刷新缓存时只清除依赖这些表的条目
+     * @param cacheEmptyResults 空结果是否放入二级缓存
+     * @param batchAfter 逗号分隔的语句id，分组批处理时这些语句的批次先执行
+     * @since 3.4.6
+     */
+    public MappedStatement addMappedStatement(
+            String id,
+            SqlSource sqlSource,
+            StatementType statementType,
+            SqlCommandType sqlCommandType,
+            Integer fetchSize,
+            Integer timeout,
+            String parameterMap,
+            Class<?> parameterType,
+            String resultMap,
+            Class<?> resultType,
+            ResultSetType resultSetType,
+            boolean flushCache,
+            boolean useCache,
+            boolean resultOrdered,
+            KeyGenerator keyGenerator,
+            String keyProperty,
+            String keyColumn,
+            String databaseId,
+            LanguageDriver lang,
+            String resultSets,
+            Set<String> readTables,
+            Set<String> writtenTables,
+            boolean cacheEmptyResults,
+            String batchAfter) {
 
         if (unresolvedCacheRef) {
             throw new IncompleteElementException("Cache-ref not yet resolved");
@@ -316,6 +356,10 @@ public class MapperBuilderAssistant extends BaseBuilder {
                 .lang(lang)
                 .resultOrdered(resultOrdered)
                 .resultSets(resultSets)
+                .readTables(readTables)
+                .writtenTables(writtenTables)
+                .cacheEmptyResults(cacheEmptyResults)
+                .batchAfter(getStatementIds(batchAfter))
                 .resultMaps(getStatementResultMaps(resultMap, resultType, id))
                 .resultSetType(resultSetType)
                 .flushCacheRequired(valueOrDefault(flushCache, !isSelect))
@@ -332,6 +376,17 @@ public class MapperBuilderAssistant extends BaseBuilder {
         return statement;
     }
 
+    private String[] getStatementIds(String ids) {
+        if (ids == null || ids.trim().isEmpty()) {
+            return null;
+        }
+        String[] statementIds = ids.split(",");
+        for (int i = 0; i < statementIds.length; i++) {
+            statementIds[i] = applyCurrentNamespace(statementIds[i].trim(), true);
+        }
+        return statementIds;
+    }
+
     private <T> T valueOrDefault(T value, T defaultValue) {
         return value == null ? defaultValue : value;
     }
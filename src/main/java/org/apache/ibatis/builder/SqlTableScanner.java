@@ -0,0 +1,281 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Finds the tables a SQL statement reads and writes by looking at the names that follow FROM, JOIN, INTO, UPDATE
+ * and the like. It is a scan, not a parser: it may report names that are not tables, which only makes cache
+ * invalidation broader, and it gives up (returns null) on table names built with {@code ${}} and on procedure calls.
+ * Names are lower-cased and stripped of quotes and schema.
+ *
+ * @since 3.4.6
+ */
+public class SqlTableScanner {
+
+  private static final String DYNAMIC = "${";
+
+  private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+      "WHERE", "GROUP", "ORDER", "HAVING", "LIMIT", "OFFSET", "UNION", "JOIN", "INNER", "LEFT", "RIGHT", "FULL",
+      "OUTER", "CROSS", "NATURAL", "STRAIGHT_JOIN", "ON", "USING", "SET", "VALUES", "VALUE", "SELECT", "FOR", "WINDOW",
+      "FETCH", "EXCEPT", "INTERSECT", "MINUS", "RETURNING", "WITH", "START", "CONNECT", "PARTITION", "AS", "WHEN",
+      "FROM", "INTO", "UPDATE", "DELETE", "INSERT", "MERGE", "DEFAULT", "LOCK"));
+
+  private final List<String> tokens;
+  private final Set<String> reads = new LinkedHashSet<String>();
+  private final Set<String> writes = new LinkedHashSet<String>();
+  private boolean unknown;
+
+  private SqlTableScanner(String sql) {
+    this.tokens = tokenize(sql);
+    scan();
+  }
+
+  /**
+   * @return the tables the statement reads, or null if they cannot be told
+   */
+  public static Set<String> readTables(String sql) {
+    SqlTableScanner scanner = new SqlTableScanner(sql);
+    return scanner.unknown || scanner.reads.isEmpty() ? null : Collections.unmodifiableSet(scanner.reads);
+  }
+
+  /**
+   * @return the tables the statement writes, or null if they cannot be told
+   */
+  public static Set<String> writtenTables(String sql) {
+    SqlTableScanner scanner = new SqlTableScanner(sql);
+    return scanner.unknown || scanner.writes.isEmpty() ? null : Collections.unmodifiableSet(scanner.writes);
+  }
+
+  /**
+   * Parses an explicit, comma separated list of table names
+   *
+   * @return the tables, or null if the list is null or empty
+   */
+  public static Set<String> parseTables(String tables) {
+    if (tables == null) {
+      return null;
+    }
+    Set<String> result = new LinkedHashSet<String>();
+    for (String table : tables.split(",")) {
+      if (table.trim().length() > 0) {
+        result.add(normalize(table.trim()));
+      }
+    }
+    return result.isEmpty() ? null : Collections.unmodifiableSet(result);
+  }
+
+  private void scan() {
+    Set<String> expected = null;
+    Set<String> list = null;
+    boolean deleteTarget = false;
+    String previous = null;
+    for (int i = 0; i < tokens.size(); i++) {
+      String token = tokens.get(i);
+      String upper = token.toUpperCase(Locale.ENGLISH);
+      if (expected != null) {
+        Set<String> target = expected;
+        expected = null;
+        if (DYNAMIC.equals(token)) {
+          unknown = true;
+          return;
+        } else if (isName(token) && !KEYWORDS.contains(upper)) {
+          target.add(normalize(token));
+          i = skipAlias(i);
+          if (list != null && ",".equals(next(i))) {
+            // FROM a, b
+            expected = list;
+            i++;
+          } else {
+            list = null;
+          }
+          previous = null;
+          continue;
+        }
+        list = null;
+      }
+      if ("FROM".equals(upper)) {
+        expected = deleteTarget ? writes : reads;
+        list = expected;
+        deleteTarget = false;
+      } else if ("JOIN".equals(upper) || ("USING".equals(upper) && !"(".equals(next(i)))) {
+        expected = reads;
+      } else if ("INTO".equals(upper)) {
+        expected = writes;
+      } else if ("UPDATE".equals(upper) && !"FOR".equalsIgnoreCase(previous) && !"ON".equalsIgnoreCase(previous)
+          && !"KEY".equalsIgnoreCase(previous)) {
+        expected = writes;
+        list = writes;
+      } else if ("TABLE".equals(upper) && "TRUNCATE".equalsIgnoreCase(previous)) {
+        expected = writes;
+      } else if ("DELETE".equals(upper)) {
+        String target = next(i);
+        if (target != null && isName(target) && !"FROM".equalsIgnoreCase(target)) {
+          // DELETE t FROM t JOIN ...
+          expected = writes;
+        } else {
+          deleteTarget = true;
+        }
+      } else if ("CALL".equals(upper) || "EXEC".equals(upper) || "EXECUTE".equals(upper)) {
+        unknown = true;
+        return;
+      }
+      previous = token;
+    }
+  }
+
+  private int skipAlias(int i) {
+    String next = next(i);
+    if (next == null) {
+      return i;
+    }
+    if ("AS".equalsIgnoreCase(next)) {
+      return i + 2;
+    }
+    if (isName(next) && !KEYWORDS.contains(next.toUpperCase(Locale.ENGLISH))) {
+      return i + 1;
+    }
+    return i;
+  }
+
+  private String next(int i) {
+    return i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+  }
+
+  private static boolean isName(String token) {
+    return isNameStart(token.charAt(0));
+  }
+
+  private static boolean isNameStart(char c) {
+    return Character.isLetter(c) || c == '_' || c == '"' || c == '`' || c == '[';
+  }
+
+  private static String normalize(String name) {
+    int dot = lastDotOutsideQuotes(name);
+    String table = dot >= 0 ? name.substring(dot + 1) : name;
+    if (table.length() > 1 && (table.charAt(0) == '"' || table.charAt(0) == '`' || table.charAt(0) == '[')) {
+      table = table.substring(1, table.length() - 1);
+    }
+    return table.toLowerCase(Locale.ENGLISH);
+  }
+
+  private static int lastDotOutsideQuotes(String name) {
+    char quote = 0;
+    int dot = -1;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '`') {
+        quote = c;
+      } else if (c == '[') {
+        quote = ']';
+      } else if (c == '.') {
+        dot = i;
+      }
+    }
+    return dot;
+  }
+
+  private static List<String> tokenize(String sql) {
+    String text = sql.trim();
+    if (text.startsWith("<script>")) {
+      text = text.replaceAll("<[^>]*>", " ");
+    }
+    List<String> tokens = new ArrayList<String>();
+    int length = text.length();
+    int i = 0;
+    while (i < length) {
+      char c = text.charAt(i);
+      char next = i + 1 < length ? text.charAt(i + 1) : 0;
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '-' && next == '-') {
+        i = skipTo(text, i + 2, "\n");
+      } else if (c == '/' && next == '*') {
+        i = skipTo(text, i + 2, "*/");
+      } else if (c == '\'') {
+        i = skipLiteral(text, i);
+      } else if ((c == '#' || c == '$') && next == '{') {
+        if (c == '$') {
+          tokens.add(DYNAMIC);
+        }
+        i = skipTo(text, i + 2, "}");
+      } else if (c == '(' || c == ')' || c == ',' || c == ';') {
+        tokens.add(String.valueOf(c));
+        i++;
+      } else if (isNameStart(c)) {
+        int end = nameEnd(text, i);
+        tokens.add(text.substring(i, end));
+        i = end;
+      } else {
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * The end of a possibly quoted, possibly dotted name
+   */
+  private static int nameEnd(String text, int start) {
+    int i = start;
+    int length = text.length();
+    while (i < length) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '`' || c == '[') {
+        int end = text.indexOf(c == '[' ? ']' : c, i + 1);
+        i = end < 0 ? length : end + 1;
+      } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.') {
+        i++;
+      } else {
+        break;
+      }
+    }
+    return i;
+  }
+
+  private static int skipTo(String text, int from, String end) {
+    int index = text.indexOf(end, from);
+    return index < 0 ? text.length() : index + end.length();
+  }
+
+  private static int skipLiteral(String text, int start) {
+    int i = start + 1;
+    while (i < text.length()) {
+      if (text.charAt(i) == '\'') {
+        if (i + 1 < text.length() && text.charAt(i + 1) == '\'') {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return i;
+  }
+
+}
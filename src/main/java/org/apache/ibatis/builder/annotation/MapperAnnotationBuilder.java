@@ -33,6 +33,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.ibatis.annotations.Arg;
 import org.apache.ibatis.annotations.CacheNamespace;
@@ -63,6 +64,7 @@ import org.apache.ibatis.binding.MapperMethod.ParamMap;
 import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.builder.IncompleteElementException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.apache.ibatis.builder.SqlTableScanner;
 import org.apache.ibatis.builder.xml.XMLMapperBuilder;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
@@ -363,6 +365,23 @@ public class MapperAnnotationBuilder {
         resultMapId = parseResultMap(method);
       }
 
+      Set<String> readTables = null;
+      Set<String> writtenTables = null;
+      if (options != null && options.tables().length() > 0) {
+        if (isSelect) {
+          readTables = SqlTableScanner.parseTables(options.tables());
+        } else {
+          writtenTables = SqlTableScanner.parseTables(options.tables());
+        }
+      } else if (statementType != StatementType.CALLABLE) {
+        String sql = getSqlFromAnnotations(method);
+        // the branches of a dynamic script joined together are not a statement
+        if (sql != null && !sql.startsWith("<script>")) {
+          readTables = SqlTableScanner.readTables(sql);
+          writtenTables = isSelect ? null : SqlTableScanner.writtenTables(sql);
+        }
+      }
+
       assistant.addMappedStatement(
           mappedStatementId,
           sqlSource,
@@ -387,7 +406,11 @@ public class MapperAnnotationBuilder {
           null,
           languageDriver,
           // ResultSets
-          options != null ? nullOrEmpty(options.resultSets()) : null);
+          options != null ? nullOrEmpty(options.resultSets()) : null,
+          readTables,
+          writtenTables,
+          options == null || options.cacheEmptyResults(),
+          options != null ? nullOrEmpty(options.batchAfter()) : null);
     }
   }
   
@@ -419,13 +442,19 @@ public class MapperAnnotationBuilder {
   private Class<?> getReturnType(Method method) {
     Class<?> returnType = method.getReturnType();
     Type resolvedReturnType = TypeParameterResolver.resolveReturnType(method, type);
+    if (resolvedReturnType instanceof ParameterizedType
+        && CompletableFuture.class.equals(((ParameterizedType) resolvedReturnType).getRawType())) {
+      // the result type is the one the future completes with
+      resolvedReturnType = ((ParameterizedType) resolvedReturnType).getActualTypeArguments()[0];
+      returnType = Object.class;
+    }
     if (resolvedReturnType instanceof Class) {
       returnType = (Class<?>) resolvedReturnType;
       if (returnType.isArray()) {
         returnType = returnType.getComponentType();
       }
       // gcode issue #508
-      if (void.class.equals(returnType)) {
+      if (void.class.equals(returnType) || Void.class.equals(returnType)) {
         ResultType rt = method.getAnnotation(ResultType.class);
         if (rt != null) {
           returnType = rt.value();
@@ -488,6 +517,27 @@ public class MapperAnnotationBuilder {
     }
   }
 
+  /**
+   * The static SQL of the method, null for SQL providers
+   */
+  private String getSqlFromAnnotations(Method method) {
+    Class<? extends Annotation> sqlAnnotationType = getSqlAnnotationType(method);
+    if (sqlAnnotationType == null) {
+      return null;
+    }
+    try {
+      Annotation sqlAnnotation = method.getAnnotation(sqlAnnotationType);
+      String[] strings = (String[]) sqlAnnotation.getClass().getMethod("value").invoke(sqlAnnotation);
+      StringBuilder sql = new StringBuilder();
+      for (String fragment : strings) {
+        sql.append(fragment).append(" ");
+      }
+      return sql.toString().trim();
+    } catch (Exception e) {
+      throw new BuilderException("Could not find value method on SQL annotation.  Cause: " + e, e);
+    }
+  }
+
   private SqlSource buildSqlSourceFromStrings(String[] strings, Class<?> parameterTypeClass, LanguageDriver languageDriver) {
     final StringBuilder sql = new StringBuilder();
     for (String fragment : strings) {
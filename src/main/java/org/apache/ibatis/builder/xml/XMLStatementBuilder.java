@@ -17,6 +17,7 @@ package org.apache.ibatis.builder.xml;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.apache.ibatis.builder.SqlTableScanner;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
@@ -28,6 +29,10 @@ import org.apache.ibatis.session.Configuration;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 /**
  * 声明解析构建器insert|update|select|delete
@@ -97,6 +102,7 @@ public class XMLStatementBuilder extends BaseBuilder {
         boolean flushCache = context.getBooleanAttribute("flushCache", !isSelect);
         boolean useCache = context.getBooleanAttribute("useCache", isSelect);
         boolean resultOrdered = context.getBooleanAttribute("resultOrdered", false);
+        boolean cacheEmptyResults = context.getBooleanAttribute("cacheEmptyResults", true);
 
         /**
          *  include 节点
@@ -132,10 +138,27 @@ public class XMLStatementBuilder extends BaseBuilder {
                     ? Jdbc3KeyGenerator.INSTANCE : NoKeyGenerator.INSTANCE;
         }
 
+        //语句读写的表，二级缓存按表清除；tables属性优先于扫描SQL，动态SQL的分支拼在一起无法扫描，表未知
+        Set<String> readTables = null;
+        Set<String> writtenTables = null;
+        String tables = context.getStringAttribute("tables");
+        if (tables != null) {
+            if (isSelect) {
+                readTables = SqlTableScanner.parseTables(tables);
+            } else {
+                writtenTables = SqlTableScanner.parseTables(tables);
+            }
+        } else if (statementType != StatementType.CALLABLE && !hasDynamicElements(context.getNode())) {
+            String sql = context.getNode().getTextContent();
+            readTables = SqlTableScanner.readTables(sql);
+            writtenTables = isSelect ? null : SqlTableScanner.writtenTables(sql);
+        }
+
         builderAssistant.addMappedStatement(id, sqlSource, statementType, sqlCommandType,
                 fetchSize, timeout, parameterMap, parameterTypeClass, resultMap, resultTypeClass,
                 resultSetTypeEnum, flushCache, useCache, resultOrdered,
-                keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets);
+                keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets, readTables, writtenTables,
+                cacheEmptyResults, context.getStringAttribute("batchAfter"));
     }
 
     /**
@@ -226,6 +249,20 @@ public class XMLStatementBuilder extends BaseBuilder {
         }
     }
 
+    /**
+     * Whether the SQL has dynamic elements, e.g. choose, whose texts joined together are not a statement
+     */
+    private static boolean hasDynamicElements(Node node) {
+        NodeList children = node.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child.getNodeType() == Node.ELEMENT_NODE && !"bind".equals(child.getNodeName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean databaseIdMatchesCurrent(String id, String databaseId, String requiredDatabaseId) {
         if (requiredDatabaseId != null) {
             if (!requiredDatabaseId.equals(databaseId)) {
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,8 +16,7 @@
 package org.apache.ibatis.cache;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.apache.ibatis.reflection.ArrayUtil;
 
@@ -27,50 +26,60 @@ import org.apache.ibatis.reflection.ArrayUtil;
  * 3.查询所使用的sql，可能包含?占位符
  * 4.用户传递的实际参数
  *
+ * The components are kept in an array sized up front and folded into a 64-bit hash as they are added. Keys are
+ * compared from the last component, where the parameters that tell queries apart are.
+ *
  * @author Clinton Begin
+ * @see CacheKeyPrefix
  */
 public class CacheKey implements Cloneable, Serializable {
 
-  private static final long serialVersionUID = 1146682552656046210L;
+  private static final long serialVersionUID = -1523457287347206393L;
 
   public static final CacheKey NULL_CACHE_KEY = new NullCacheKey();
 
-  private static final int DEFAULT_MULTIPLYER = 37;
-  private static final int DEFAULT_HASHCODE = 17;
+  private static final int DEFAULT_CAPACITY = 8;
+  private static final long HASH_SEED = 17;
+  private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
 
-  private final int multiplier;
-  private int hashcode;
-  private long checksum;
+  private long hash;
   private int count;
   // 8/21/2017 - Sonarlint flags this as needing to be marked transient.  While true if content is not serializable, this is not always true and thus should not be marked transient.
-  private List<Object> updateList;
+  private Object[] components;
 
   public CacheKey() {
-    this.hashcode = DEFAULT_HASHCODE;
-    this.multiplier = DEFAULT_MULTIPLYER;
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param expectedUpdates - the number of components the key will most likely get
+   * @since 3.4.6
+   */
+  public CacheKey(int expectedUpdates) {
+    this.hash = HASH_SEED;
     this.count = 0;
-    this.updateList = new ArrayList<Object>();
+    this.components = new Object[Math.max(1, expectedUpdates)];
   }
 
   public CacheKey(Object[] objects) {
-    this();
+    this(objects.length);
     updateAll(objects);
   }
 
   public int getUpdateCount() {
-    return updateList.size();
+    return count;
   }
 
   public void update(Object object) {
-    int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object); 
-
-    count++;
-    checksum += baseHashCode;
-    baseHashCode *= count;
+    int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object);
 
-    hashcode = multiplier * hashcode + baseHashCode;
+    long mixed = (hash ^ baseHashCode) * MULTIPLIER;
+    hash = mixed ^ (mixed >>> 31);
 
-    updateList.add(object);
+    if (count == components.length) {
+      components = Arrays.copyOf(components, count * 2);
+    }
+    components[count++] = object;
   }
 
   public void updateAll(Object[] objects) {
@@ -90,20 +99,15 @@ public class CacheKey implements Cloneable, Serializable {
 
     final CacheKey cacheKey = (CacheKey) object;
 
-    if (hashcode != cacheKey.hashcode) {
-      return false;
-    }
-    if (checksum != cacheKey.checksum) {
+    if (hash != cacheKey.hash) {
       return false;
     }
     if (count != cacheKey.count) {
       return false;
     }
 
-    for (int i = 0; i < updateList.size(); i++) {
-      Object thisObject = updateList.get(i);
-      Object thatObject = cacheKey.updateList.get(i);
-      if (!ArrayUtil.equals(thisObject, thatObject)) {
+    for (int i = count - 1; i >= 0; i--) {
+      if (!ArrayUtil.equals(components[i], cacheKey.components[i])) {
         return false;
       }
     }
@@ -112,14 +116,14 @@ public class CacheKey implements Cloneable, Serializable {
 
   @Override
   public int hashCode() {
-    return hashcode;
+    return (int) (hash ^ (hash >>> 32));
   }
 
   @Override
   public String toString() {
-    StringBuilder returnValue = new StringBuilder().append(hashcode).append(':').append(checksum);
-    for (Object object : updateList) {
-      returnValue.append(':').append(ArrayUtil.toString(object));
+    StringBuilder returnValue = new StringBuilder().append(hashCode()).append(':').append(hash);
+    for (int i = 0; i < count; i++) {
+      returnValue.append(':').append(ArrayUtil.toString(components[i]));
     }
     return returnValue.toString();
   }
@@ -127,7 +131,8 @@ public class CacheKey implements Cloneable, Serializable {
   @Override
   public CacheKey clone() throws CloneNotSupportedException {
     CacheKey clonedCacheKey = (CacheKey) super.clone();
-    clonedCacheKey.updateList = new ArrayList<Object>(updateList);
+    // room for one more component, as clones are usually combined with another key
+    clonedCacheKey.components = Arrays.copyOf(components, count + 1);
     return clonedCacheKey;
   }
 
@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Serializable;
+
+/**
+ * The statement id and SQL a query's {@link CacheKey} starts with, as a single component.
+ * <p>
+ * A statement hands out one instance per distinct SQL, so the keys of the same query share it: comparing them is a
+ * reference check, their hash was computed once, and the cache retains the SQL once instead of once per entry.
+ *
+ * @since 3.4.6
+ * @see org.apache.ibatis.mapping.MappedStatement#getCacheKeyPrefix(String)
+ */
+public final class CacheKeyPrefix implements Serializable {
+
+  private static final long serialVersionUID = 5196395420587623542L;
+
+  private final String statementId;
+  private final String sql;
+  private final int hashCode;
+
+  public CacheKeyPrefix(String statementId, String sql) {
+    this.statementId = statementId;
+    this.sql = sql;
+    this.hashCode = 31 * statementId.hashCode() + sql.hashCode();
+  }
+
+  public String getStatementId() {
+    return statementId;
+  }
+
+  public String getSql() {
+    return sql;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CacheKeyPrefix)) {
+      return false;
+    }
+    CacheKeyPrefix other = (CacheKeyPrefix) o;
+    return hashCode == other.hashCode && statementId.equals(other.statementId) && sql.equals(other.sql);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return statementId + ":" + sql;
+  }
+
+}
@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Receives the events of a second level cache, to feed them into a monitoring system.
+ * <p>
+ * Implementations are configured with the <code>metricsClass</code> property of a cache and must have a public
+ * no-arg constructor. They are called on the query path and must be thread safe and cheap.
+ *
+ * @since 3.4.6
+ */
+public interface CacheMetrics {
+
+  void recordHit();
+
+  void recordMiss();
+
+  void recordPut();
+
+  /**
+   * @param count the number of entries the cache dropped to make room for a put
+   */
+  void recordEvictions(int count);
+
+  /**
+   * @param nanos the time it took to query the database after a miss
+   */
+  void recordLoadTime(long nanos);
+
+}
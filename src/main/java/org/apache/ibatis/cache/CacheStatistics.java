@@ -0,0 +1,172 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 二级缓存的统计信息
+ * The counters of a second level cache, kept by its {@link org.apache.ibatis.cache.decorators.LoggingCache}.
+ * Events are also passed on to the {@link CacheMetrics} set with {@link #setMetrics(CacheMetrics)}, if any.
+ *
+ * @since 3.4.6
+ */
+public class CacheStatistics implements CacheMetrics, CacheStatisticsMXBean {
+
+  private final Cache cache;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder puts = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder loadTime = new LongAdder();
+  private volatile CacheMetrics metrics;
+
+  public CacheStatistics(Cache cache) {
+    this.cache = cache;
+  }
+
+  public CacheMetrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void recordHit() {
+    hits.increment();
+    CacheMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.recordHit();
+    }
+  }
+
+  @Override
+  public void recordMiss() {
+    misses.increment();
+    CacheMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.recordMiss();
+    }
+  }
+
+  @Override
+  public void recordPut() {
+    puts.increment();
+    CacheMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.recordPut();
+    }
+  }
+
+  @Override
+  public void recordEvictions(int count) {
+    evictions.add(count);
+    CacheMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.recordEvictions(count);
+    }
+  }
+
+  @Override
+  public void recordLoadTime(long nanos) {
+    loads.increment();
+    loadTime.add(nanos);
+    CacheMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.recordLoadTime(nanos);
+    }
+  }
+
+  @Override
+  public String getId() {
+    return cache.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return cache.getSize();
+  }
+
+  @Override
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the share of lookups that found a value, 0 if there were none
+   */
+  @Override
+  public double getHitRatio() {
+    long hits = this.hits.sum();
+    long requests = hits + misses.sum();
+    return requests == 0 ? 0 : (double) hits / (double) requests;
+  }
+
+  @Override
+  public long getPutCount() {
+    return puts.sum();
+  }
+
+  /**
+   * @return the number of entries dropped to make room for new ones, as reported by the evicting caches of the chain
+   */
+  @Override
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  @Override
+  public long getLoadCount() {
+    return loads.sum();
+  }
+
+  @Override
+  public long getLoadTimeMean() {
+    long loads = this.loads.sum();
+    return loads == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(loadTime.sum() / loads);
+  }
+
+  @Override
+  public long getLoadTimeTotal() {
+    return TimeUnit.NANOSECONDS.toMicros(loadTime.sum());
+  }
+
+  @Override
+  public void resetStatistics() {
+    hits.reset();
+    misses.reset();
+    puts.reset();
+    evictions.reset();
+    loads.reset();
+    loadTime.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStatistics [" + getId() + "]: hits=" + getHitCount() + ", misses=" + getMissCount()
+        + ", puts=" + getPutCount() + ", evictions=" + getEvictionCount() + ", loads=" + getLoadCount();
+  }
+
+}
@@ -0,0 +1,138 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import javax.management.ObjectName;
+
+/**
+ * The MBean of a cache's statistics. It only keeps a weak reference to them, so the platform MBean server does not
+ * keep the cache, its content and its class loader alive after the configuration is discarded. Once the statistics
+ * are gone it unregisters itself, when it is next read or when the {@link CacheStatisticsRegistry} finds it in the
+ * queue of cleared references.
+ *
+ * @since 3.4.6
+ */
+class CacheStatisticsReference extends WeakReference<CacheStatistics> implements CacheStatisticsMXBean {
+
+  private final String id;
+  private volatile ObjectName name;
+
+  CacheStatisticsReference(CacheStatistics statistics, ReferenceQueue<CacheStatistics> queue) {
+    super(statistics, queue);
+    this.id = statistics.getId();
+  }
+
+  ObjectName getName() {
+    return name;
+  }
+
+  void setName(ObjectName name) {
+    this.name = name;
+  }
+
+  void unregister() {
+    ObjectName registered = name;
+    name = null;
+    if (registered == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
+  private CacheStatistics statistics() {
+    CacheStatistics statistics = get();
+    if (statistics == null) {
+      unregister();
+    }
+    return statistics;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    CacheStatistics statistics = statistics();
+    return statistics == null ? 0 : statistics.getSize();
+  }
+
+  @Override
+  public long getHitCount() {
+    CacheStatistics statistics = statistics();
+    return statistics == null ? 0 : statistics.getHitCount();
+  }
+
+  @Override
+  public long getMissCount() {
+    CacheStatistics statistics = statistics();
+    return statistics == null ? 0 : statistics.getMissCount();
+  }
+
+  @Override
+  public double getHitRatio() {
+    CacheStatistics statistics = statistics();
+    return statistics == null ? 0 : statistics.getHitRatio();
+  }
+
+  @Override
+  public long getPutCount() {
+    CacheStatistics statistics = statistics();
+    return statistics == null ? 0 : statistics.getPutCount();
+  }
+
+  @Override
+  public long getEvictionCount() {
+    CacheStatistics statistics = statistics();
+    return statistics == null ? 0 : statistics.getEvictionCount();
+  }
+
+  @Override
+  public long getLoadCount() {
+    CacheStatistics statistics = statistics();
+    return statistics == null ? 0 : statistics.getLoadCount();
+  }
+
+  @Override
+  public long getLoadTimeMean() {
+    CacheStatistics statistics = statistics();
+    return statistics == null ? 0 : statistics.getLoadTimeMean();
+  }
+
+  @Override
+  public long getLoadTimeTotal() {
+    CacheStatistics statistics = statistics();
+    return statistics == null ? 0 : statistics.getLoadTimeTotal();
+  }
+
+  @Override
+  public void resetStatistics() {
+    CacheStatistics statistics = statistics();
+    if (statistics != null) {
+      statistics.resetStatistics();
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 按命名空间登记的缓存统计
+ * The statistics of the second level caches of a configuration, by cache id. When JMX is enabled each of them is
+ * also registered with the platform MBean server as a {@link CacheStatisticsMXBean}, through a weak reference that
+ * unregisters itself once the configuration is gone. When another configuration still uses the name of a cache,
+ * the MBean is registered under the same name with an instance property added.
+ *
+ * @since 3.4.6
+ */
+public class CacheStatisticsRegistry {
+
+  private static final Log log = LogFactory.getLog(CacheStatisticsRegistry.class);
+
+  //已被回收的统计，注销其MBean
+  private static final ReferenceQueue<CacheStatistics> CLEARED = new ReferenceQueue<CacheStatistics>();
+
+  private final Map<String, CacheStatistics> statistics = new ConcurrentHashMap<String, CacheStatistics>();
+  private final Map<String, CacheStatisticsReference> registeredMBeans = new ConcurrentHashMap<String, CacheStatisticsReference>();
+  private boolean jmxEnabled;
+
+  public synchronized void register(CacheStatistics cacheStatistics) {
+    String id = cacheStatistics.getId();
+    CacheStatistics previous = statistics.put(id, cacheStatistics);
+    if (previous != null) {
+      unregisterMBean(id);
+    }
+    if (jmxEnabled) {
+      registerMBean(id, cacheStatistics);
+    }
+  }
+
+  /**
+   * @return the statistics of the cache, null if it has not been registered
+   */
+  public CacheStatistics getStatistics(String id) {
+    return statistics.get(id);
+  }
+
+  public Collection<CacheStatistics> getStatistics() {
+    return Collections.unmodifiableCollection(statistics.values());
+  }
+
+  public boolean isJmxEnabled() {
+    return jmxEnabled;
+  }
+
+  /**
+   * Registers or unregisters the MBeans of all the caches
+   */
+  public synchronized void setJmxEnabled(boolean jmxEnabled) {
+    if (jmxEnabled == this.jmxEnabled) {
+      return;
+    }
+    this.jmxEnabled = jmxEnabled;
+    for (Map.Entry<String, CacheStatistics> entry : statistics.entrySet()) {
+      if (jmxEnabled) {
+        registerMBean(entry.getKey(), entry.getValue());
+      } else {
+        unregisterMBean(entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * @return the name the statistics of the cache are registered under, or null
+   */
+  public ObjectName getRegisteredName(String id) {
+    CacheStatisticsReference mbean = registeredMBeans.get(id);
+    return mbean == null ? null : mbean.getName();
+  }
+
+  private void registerMBean(String id, CacheStatistics cacheStatistics) {
+    expungeClearedMBeans();
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = nameOf(id, null);
+      if (server.isRegistered(name)) {
+        // the MBean of a discarded configuration unregisters itself when it is read
+        try {
+          server.getAttribute(name, "Size");
+        } catch (Exception e) {
+          // ignore
+        }
+        if (server.isRegistered(name)) {
+          name = nameOf(id, Integer.toHexString(System.identityHashCode(this)));
+        }
+      }
+      CacheStatisticsReference mbean = new CacheStatisticsReference(cacheStatistics, CLEARED);
+      server.registerMBean(new StandardMBean(mbean, CacheStatisticsMXBean.class, true), name);
+      mbean.setName(name);
+      registeredMBeans.put(id, mbean);
+    } catch (Exception e) {
+      log.warn("Could not register the MBean of cache " + id + ": " + e.getMessage());
+    }
+  }
+
+  private static ObjectName nameOf(String id, String instance) throws Exception {
+    return new ObjectName("org.apache.ibatis.cache:type=" + CacheStatistics.class.getSimpleName()
+        + ",name=" + ObjectName.quote(id) + (instance == null ? "" : ",instance=" + instance));
+  }
+
+  private void unregisterMBean(String id) {
+    CacheStatisticsReference mbean = registeredMBeans.remove(id);
+    if (mbean != null) {
+      mbean.unregister();
+    }
+  }
+
+  private static void expungeClearedMBeans() {
+    Reference<? extends CacheStatistics> cleared;
+    while ((cleared = CLEARED.poll()) != null) {
+      ((CacheStatisticsReference) cleared).unregister();
+    }
+  }
+
+}
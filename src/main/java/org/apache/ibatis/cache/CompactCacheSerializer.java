@@ -0,0 +1,730 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Externalizable;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A faster and more compact alternative to Java serialization for read-write caches.
+ * <p>
+ * The description of each class (its fields and how to create it) is kept by the serializer, so the bytes of an
+ * entry only hold a small class number and the field values. Shared and cyclic references are preserved. Writes
+ * reuse a buffer per thread. Classes that customize their serialization (writeObject, readResolve,
+ * Externalizable...) or have no no-argument constructor are written with Java serialization, as are objects that
+ * are not serializable, which fail the same way they would with it.
+ * <p>
+ * Because class numbers are only known to the instance that assigned them, the bytes can only be read back by the
+ * same instance, which is the case for the in-memory caches this serializer is meant for. Transient fields keep the
+ * value given by the no-argument constructor.
+ *
+ * @since 3.4.6
+ */
+public class CompactCacheSerializer implements CacheSerializer {
+
+  private static final int NULL = 0;
+  private static final int REFERENCE = 1;
+  private static final int STRING = 2;
+  private static final int INTEGER = 3;
+  private static final int LONG = 4;
+  private static final int SHORT = 5;
+  private static final int BYTE = 6;
+  private static final int CHARACTER = 7;
+  private static final int TRUE = 8;
+  private static final int FALSE = 9;
+  private static final int FLOAT = 10;
+  private static final int DOUBLE = 11;
+  private static final int BIG_DECIMAL = 12;
+  private static final int BIG_INTEGER = 13;
+  private static final int DESCRIBED = 14;
+
+  private static final CacheSerializer JAVA = new JavaCacheSerializer();
+
+  private static final ThreadLocal<Output> OUTPUT = new ThreadLocal<Output>() {
+    @Override
+    protected Output initialValue() {
+      return new Output();
+    }
+  };
+
+  private final Map<Class<?>, ClassDescriptor> descriptorsByClass = new ConcurrentHashMap<Class<?>, ClassDescriptor>();
+  private volatile ClassDescriptor[] descriptors = new ClassDescriptor[0];
+
+  @Override
+  public byte[] serialize(Serializable value) throws Exception {
+    Output out = OUTPUT.get();
+    try {
+      writeObject(out, value);
+      return out.toByteArray();
+    } finally {
+      out.reset();
+    }
+  }
+
+  @Override
+  public Serializable deserialize(byte[] bytes) throws Exception {
+    return (Serializable) readObject(new Input(bytes));
+  }
+
+  private void writeObject(Output out, Object value) throws Exception {
+    if (value == null) {
+      out.writeByte(NULL);
+      return;
+    }
+    Class<?> type = value.getClass();
+    if (type == String.class) {
+      out.writeByte(STRING);
+      out.writeString((String) value);
+    } else if (type == Integer.class) {
+      out.writeByte(INTEGER);
+      out.writeInt((Integer) value);
+    } else if (type == Long.class) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (type == Boolean.class) {
+      out.writeByte((Boolean) value ? TRUE : FALSE);
+    } else if (type == Double.class) {
+      out.writeByte(DOUBLE);
+      out.writeFixedLong(Double.doubleToRawLongBits((Double) value));
+    } else if (type == BigDecimal.class) {
+      BigDecimal decimal = (BigDecimal) value;
+      out.writeByte(BIG_DECIMAL);
+      out.writeBytes(decimal.unscaledValue().toByteArray());
+      out.writeInt(decimal.scale());
+    } else if (type == Short.class) {
+      out.writeByte(SHORT);
+      out.writeInt((Short) value);
+    } else if (type == Byte.class) {
+      out.writeByte(BYTE);
+      out.writeByte((Byte) value);
+    } else if (type == Character.class) {
+      out.writeByte(CHARACTER);
+      out.writeVarInt((Character) value);
+    } else if (type == Float.class) {
+      out.writeByte(FLOAT);
+      out.writeVarInt(Float.floatToRawIntBits((Float) value));
+    } else if (type == BigInteger.class) {
+      out.writeByte(BIG_INTEGER);
+      out.writeBytes(((BigInteger) value).toByteArray());
+    } else if (value instanceof Enum) {
+      out.writeByte(DESCRIBED);
+      out.writeVarInt(describe(((Enum<?>) value).getDeclaringClass()).id);
+      out.writeVarInt(((Enum<?>) value).ordinal());
+    } else {
+      Integer reference = out.written.get(value);
+      if (reference != null) {
+        out.writeByte(REFERENCE);
+        out.writeVarInt(reference);
+        return;
+      }
+      out.written.put(value, out.written.size());
+      ClassDescriptor descriptor = describe(type);
+      out.writeByte(DESCRIBED);
+      out.writeVarInt(descriptor.id);
+      writeDescribed(out, descriptor, value);
+    }
+  }
+
+  private void writeDescribed(Output out, ClassDescriptor descriptor, Object value) throws Exception {
+    switch (descriptor.kind) {
+      case OBJECT:
+        for (Field field : descriptor.fields) {
+          writeField(out, field, value);
+        }
+        break;
+      case ARRAY:
+        writeArray(out, value);
+        break;
+      case COLLECTION:
+        Collection<?> collection = (Collection<?>) value;
+        out.writeVarInt(collection.size());
+        for (Object element : collection) {
+          writeObject(out, element);
+        }
+        break;
+      case MAP:
+        Map<?, ?> map = (Map<?, ?>) value;
+        out.writeVarInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          writeObject(out, entry.getKey());
+          writeObject(out, entry.getValue());
+        }
+        break;
+      case DATE:
+        out.writeLong(((Date) value).getTime());
+        break;
+      case TIMESTAMP:
+        out.writeLong(((Timestamp) value).getTime());
+        out.writeVarInt(((Timestamp) value).getNanos());
+        break;
+      default:
+        if (!(value instanceof Serializable)) {
+          throw new NotSerializableException(value.getClass().getName());
+        }
+        out.writeBytes(JAVA.serialize((Serializable) value));
+    }
+  }
+
+  private void writeField(Output out, Field field, Object target) throws Exception {
+    Class<?> type = field.getType();
+    if (!type.isPrimitive()) {
+      writeObject(out, field.get(target));
+    } else if (type == int.class) {
+      out.writeInt(field.getInt(target));
+    } else if (type == long.class) {
+      out.writeLong(field.getLong(target));
+    } else if (type == boolean.class) {
+      out.writeByte(field.getBoolean(target) ? 1 : 0);
+    } else if (type == double.class) {
+      out.writeFixedLong(Double.doubleToRawLongBits(field.getDouble(target)));
+    } else if (type == float.class) {
+      out.writeVarInt(Float.floatToRawIntBits(field.getFloat(target)));
+    } else if (type == short.class) {
+      out.writeInt(field.getShort(target));
+    } else if (type == byte.class) {
+      out.writeByte(field.getByte(target));
+    } else {
+      out.writeVarInt(field.getChar(target));
+    }
+  }
+
+  private void writeArray(Output out, Object array) throws Exception {
+    Class<?> componentType = array.getClass().getComponentType();
+    if (componentType == byte.class) {
+      out.writeBytes((byte[]) array);
+      return;
+    }
+    int length = Array.getLength(array);
+    out.writeVarInt(length);
+    if (componentType == int.class) {
+      for (int value : (int[]) array) {
+        out.writeInt(value);
+      }
+    } else if (componentType == long.class) {
+      for (long value : (long[]) array) {
+        out.writeLong(value);
+      }
+    } else if (componentType == char.class) {
+      for (char value : (char[]) array) {
+        out.writeVarInt(value);
+      }
+    } else if (componentType == double.class) {
+      for (double value : (double[]) array) {
+        out.writeFixedLong(Double.doubleToRawLongBits(value));
+      }
+    } else if (componentType == float.class) {
+      for (float value : (float[]) array) {
+        out.writeVarInt(Float.floatToRawIntBits(value));
+      }
+    } else if (componentType == short.class) {
+      for (short value : (short[]) array) {
+        out.writeInt(value);
+      }
+    } else if (componentType == boolean.class) {
+      for (boolean value : (boolean[]) array) {
+        out.writeByte(value ? 1 : 0);
+      }
+    } else {
+      for (Object element : (Object[]) array) {
+        writeObject(out, element);
+      }
+    }
+  }
+
+  private Object readObject(Input in) throws Exception {
+    int tag = in.readByte();
+    switch (tag) {
+      case NULL:
+        return null;
+      case REFERENCE:
+        return in.read.get(in.readVarInt());
+      case STRING:
+        return in.readString();
+      case INTEGER:
+        return in.readInt();
+      case LONG:
+        return in.readLong();
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      case DOUBLE:
+        return Double.longBitsToDouble(in.readFixedLong());
+      case BIG_DECIMAL:
+        return new BigDecimal(new BigInteger(in.readBytes()), in.readInt());
+      case SHORT:
+        return (short) in.readInt();
+      case BYTE:
+        return in.readByte();
+      case CHARACTER:
+        return (char) in.readVarInt();
+      case FLOAT:
+        return Float.intBitsToFloat(in.readVarInt());
+      case BIG_INTEGER:
+        return new BigInteger(in.readBytes());
+      case DESCRIBED:
+        return readDescribed(in, descriptors[in.readVarInt()]);
+      default:
+        throw new CacheException("Unknown tag " + tag + " in a cached value.");
+    }
+  }
+
+  private Object readDescribed(Input in, ClassDescriptor descriptor) throws Exception {
+    Object value;
+    switch (descriptor.kind) {
+      case ENUM:
+        return descriptor.type.getEnumConstants()[in.readVarInt()];
+      case OBJECT:
+        value = descriptor.constructor.newInstance();
+        in.read.add(value);
+        for (Field field : descriptor.fields) {
+          readField(in, field, value);
+        }
+        return value;
+      case ARRAY:
+        return readArray(in, descriptor.type.getComponentType());
+      case COLLECTION:
+        int size = in.readVarInt();
+        Collection<Object> collection = newCollection(descriptor.type, size);
+        in.read.add(collection);
+        for (int i = 0; i < size; i++) {
+          collection.add(readObject(in));
+        }
+        return collection;
+      case MAP:
+        int entries = in.readVarInt();
+        Map<Object, Object> map = newMap(descriptor.type, entries);
+        in.read.add(map);
+        for (int i = 0; i < entries; i++) {
+          map.put(readObject(in), readObject(in));
+        }
+        return map;
+      case DATE:
+        value = descriptor.constructor.newInstance(in.readLong());
+        break;
+      case TIMESTAMP:
+        Timestamp timestamp = new Timestamp(in.readLong());
+        timestamp.setNanos(in.readVarInt());
+        value = timestamp;
+        break;
+      default:
+        value = JAVA.deserialize(in.readBytes());
+    }
+    in.read.add(value);
+    return value;
+  }
+
+  private void readField(Input in, Field field, Object target) throws Exception {
+    Class<?> type = field.getType();
+    if (!type.isPrimitive()) {
+      field.set(target, readObject(in));
+    } else if (type == int.class) {
+      field.setInt(target, in.readInt());
+    } else if (type == long.class) {
+      field.setLong(target, in.readLong());
+    } else if (type == boolean.class) {
+      field.setBoolean(target, in.readByte() != 0);
+    } else if (type == double.class) {
+      field.setDouble(target, Double.longBitsToDouble(in.readFixedLong()));
+    } else if (type == float.class) {
+      field.setFloat(target, Float.intBitsToFloat(in.readVarInt()));
+    } else if (type == short.class) {
+      field.setShort(target, (short) in.readInt());
+    } else if (type == byte.class) {
+      field.setByte(target, in.readByte());
+    } else {
+      field.setChar(target, (char) in.readVarInt());
+    }
+  }
+
+  private Object readArray(Input in, Class<?> componentType) throws Exception {
+    if (componentType == byte.class) {
+      byte[] bytes = in.readBytes();
+      in.read.add(bytes);
+      return bytes;
+    }
+    int length = in.readVarInt();
+    Object array = Array.newInstance(componentType, length);
+    in.read.add(array);
+    if (componentType == int.class) {
+      int[] values = (int[]) array;
+      for (int i = 0; i < length; i++) {
+        values[i] = in.readInt();
+      }
+    } else if (componentType == long.class) {
+      long[] values = (long[]) array;
+      for (int i = 0; i < length; i++) {
+        values[i] = in.readLong();
+      }
+    } else if (componentType == char.class) {
+      char[] values = (char[]) array;
+      for (int i = 0; i < length; i++) {
+        values[i] = (char) in.readVarInt();
+      }
+    } else if (componentType == double.class) {
+      double[] values = (double[]) array;
+      for (int i = 0; i < length; i++) {
+        values[i] = Double.longBitsToDouble(in.readFixedLong());
+      }
+    } else if (componentType == float.class) {
+      float[] values = (float[]) array;
+      for (int i = 0; i < length; i++) {
+        values[i] = Float.intBitsToFloat(in.readVarInt());
+      }
+    } else if (componentType == short.class) {
+      short[] values = (short[]) array;
+      for (int i = 0; i < length; i++) {
+        values[i] = (short) in.readInt();
+      }
+    } else if (componentType == boolean.class) {
+      boolean[] values = (boolean[]) array;
+      for (int i = 0; i < length; i++) {
+        values[i] = in.readByte() != 0;
+      }
+    } else {
+      Object[] values = (Object[]) array;
+      for (int i = 0; i < length; i++) {
+        values[i] = readObject(in);
+      }
+    }
+    return array;
+  }
+
+  private static Collection<Object> newCollection(Class<?> type, int size) {
+    if (type == ArrayList.class) {
+      return new ArrayList<Object>(size);
+    } else if (type == LinkedList.class) {
+      return new LinkedList<Object>();
+    } else if (type == HashSet.class) {
+      return new HashSet<Object>(capacity(size));
+    }
+    return new LinkedHashSet<Object>(capacity(size));
+  }
+
+  private static Map<Object, Object> newMap(Class<?> type, int size) {
+    if (type == HashMap.class) {
+      return new HashMap<Object, Object>(capacity(size));
+    }
+    return new LinkedHashMap<Object, Object>(capacity(size));
+  }
+
+  private static int capacity(int size) {
+    return (int) (size / 0.75f) + 1;
+  }
+
+  private ClassDescriptor describe(Class<?> type) {
+    ClassDescriptor descriptor = descriptorsByClass.get(type);
+    return descriptor != null ? descriptor : register(type);
+  }
+
+  private synchronized ClassDescriptor register(Class<?> type) {
+    ClassDescriptor descriptor = descriptorsByClass.get(type);
+    if (descriptor == null) {
+      descriptor = new ClassDescriptor(descriptors.length, type);
+      ClassDescriptor[] grown = Arrays.copyOf(descriptors, descriptors.length + 1);
+      grown[descriptor.id] = descriptor;
+      // published before the class can be written, so every reader of the bytes finds it
+      descriptors = grown;
+      descriptorsByClass.put(type, descriptor);
+    }
+    return descriptor;
+  }
+
+  private enum Kind {
+    OBJECT, ENUM, ARRAY, COLLECTION, MAP, DATE, TIMESTAMP, JAVA
+  }
+
+  private static class ClassDescriptor {
+
+    private static final Field[] NO_FIELDS = new Field[0];
+
+    final int id;
+    final Class<?> type;
+    final Kind kind;
+    final Field[] fields;
+    final Constructor<?> constructor;
+
+    ClassDescriptor(int id, Class<?> type) {
+      this.id = id;
+      this.type = type;
+      Kind kind = kindOf(type);
+      Field[] fields = NO_FIELDS;
+      Constructor<?> constructor = null;
+      try {
+        if (kind == Kind.OBJECT) {
+          fields = serializableFields(type);
+          constructor = type.getDeclaredConstructor();
+          constructor.setAccessible(true);
+        } else if (kind == Kind.DATE) {
+          constructor = type.getConstructor(long.class);
+        }
+      } catch (Exception e) {
+        // no no-argument constructor or inaccessible fields
+        kind = Kind.JAVA;
+      }
+      this.kind = kind;
+      this.fields = fields;
+      this.constructor = constructor;
+    }
+
+    private static Kind kindOf(Class<?> type) {
+      if (type.isEnum()) {
+        return Kind.ENUM;
+      } else if (type.isArray()) {
+        return Kind.ARRAY;
+      } else if (type == ArrayList.class || type == LinkedList.class || type == HashSet.class
+          || type == LinkedHashSet.class) {
+        return Kind.COLLECTION;
+      } else if (type == HashMap.class || type == LinkedHashMap.class) {
+        return Kind.MAP;
+      } else if (type == Date.class || type == java.sql.Date.class || type == java.sql.Time.class) {
+        return Kind.DATE;
+      } else if (type == Timestamp.class) {
+        return Kind.TIMESTAMP;
+      } else if (!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)
+          || hasSerializationHooks(type)) {
+        return Kind.JAVA;
+      }
+      return Kind.OBJECT;
+    }
+
+    private static boolean hasSerializationHooks(Class<?> type) {
+      for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Method method : c.getDeclaredMethods()) {
+          String name = method.getName();
+          if ("writeObject".equals(name) || "readObject".equals(name) || "readObjectNoData".equals(name)
+              || "writeReplace".equals(name) || "readResolve".equals(name)) {
+            return true;
+          }
+        }
+        for (Field field : c.getDeclaredFields()) {
+          if ("serialPersistentFields".equals(field.getName())) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    /**
+     * The fields Java serialization would write: non static, non transient fields of the serializable classes
+     */
+    private static Field[] serializableFields(Class<?> type) {
+      List<Field> fields = new ArrayList<Field>();
+      for (Class<?> c = type; c != null && Serializable.class.isAssignableFrom(c); c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          int modifiers = field.getModifiers();
+          if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+            field.setAccessible(true);
+            fields.add(field);
+          }
+        }
+      }
+      return fields.toArray(new Field[fields.size()]);
+    }
+  }
+
+  private static class Output {
+
+    private static final int INITIAL_SIZE = 256;
+    private static final int MAX_RETAINED_SIZE = 1 << 20;
+
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int position;
+    private IdentityHashMap<Object, Integer> written = new IdentityHashMap<Object, Integer>();
+
+    void writeByte(int value) {
+      ensure(1);
+      buffer[position++] = (byte) value;
+    }
+
+    void writeVarInt(int value) {
+      ensure(5);
+      putVarInt(value);
+    }
+
+    void writeInt(int value) {
+      writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    void writeLong(long value) {
+      long zigZag = (value << 1) ^ (value >> 63);
+      ensure(10);
+      while ((zigZag & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((zigZag & 0x7F) | 0x80);
+        zigZag >>>= 7;
+      }
+      buffer[position++] = (byte) zigZag;
+    }
+
+    void writeFixedLong(long value) {
+      ensure(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeBytes(byte[] bytes) {
+      writeVarInt(bytes.length);
+      ensure(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    void writeString(String value) {
+      int length = value.length();
+      ensure(5 + length * 3);
+      putVarInt(length);
+      for (int i = 0; i < length; i++) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+          buffer[position++] = (byte) c;
+        } else {
+          putVarInt(c);
+        }
+      }
+    }
+
+    private void putVarInt(int value) {
+      while ((value & ~0x7F) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    private void ensure(int length) {
+      if (position + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Gets ready for the next value, without holding on to the memory of an unusually large one
+     */
+    void reset() {
+      position = 0;
+      if (buffer.length > MAX_RETAINED_SIZE) {
+        buffer = new byte[INITIAL_SIZE];
+      }
+      if (written.size() > 1024) {
+        written = new IdentityHashMap<Object, Integer>();
+      } else {
+        written.clear();
+      }
+    }
+  }
+
+  private static class Input {
+
+    private final byte[] buffer;
+    private int position;
+    private final List<Object> read = new ArrayList<Object>();
+
+    Input(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    byte readByte() {
+      return buffer[position++];
+    }
+
+    int readVarInt() {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = buffer[position++];
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+
+    int readInt() {
+      int zigZag = readVarInt();
+      return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    long readLong() {
+      long zigZag = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = buffer[position++];
+        zigZag |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          break;
+        }
+      }
+      return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    long readFixedLong() {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (buffer[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    byte[] readBytes() {
+      int length = readVarInt();
+      byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+      position += length;
+      return bytes;
+    }
+
+    String readString() {
+      int length = readVarInt();
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        byte b = buffer[position];
+        if (b >= 0) {
+          chars[i] = (char) b;
+          position++;
+        } else {
+          chars[i] = (char) readVarInt();
+        }
+      }
+      return new String(chars);
+    }
+  }
+
+}
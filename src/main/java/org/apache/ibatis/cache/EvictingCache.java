@@ -0,0 +1,29 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * A cache or cache decorator that evicts entries by itself to stay within its size, weight or capacity.
+ * {@link org.apache.ibatis.mapping.CacheBuilder} registers the decorators that keep a record of each key, so they
+ * forget the evicted ones, and the {@link org.apache.ibatis.cache.decorators.LoggingCache} that counts them.
+ *
+ * @since 3.4.6
+ */
+public interface EvictingCache {
+
+  void addEvictionListener(EvictionListener listener);
+
+}
@@ -0,0 +1,35 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * 淘汰监听
+ * Told about the entries an {@link EvictingCache} dropped on its own, which the decorators above it never see
+ * through {@link Cache#removeObject(Object)}.
+ *
+ * @since 3.4.6
+ */
+public interface EvictionListener {
+
+  /**
+   * Called after the entry was dropped. It may be called while the cache holds its own locks, so it must not call
+   * back into the cache.
+   *
+   * @param key the key of the entry
+   */
+  void onEviction(Object key);
+
+}
@@ -0,0 +1,217 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.executor.loader.ResultLoaderMap;
+import org.apache.ibatis.executor.loader.WriteReplaceInterface;
+import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * Estimates the heap retained by a cached result in bytes, assuming a 64-bit JVM.
+ * <p>
+ * Byte arrays, which is what a read-write cache stores, weigh their length. Objects are walked through their
+ * instance fields. Large collections and arrays are only sampled and the average is extrapolated, so weighing a
+ * list of thousands of rows stays cheap. The result is an estimate meant to compare entries, not an exact measure.
+ * <p>
+ * The walk stops at the handlers of proxies, such as the lazy loading ones, and at MyBatis infrastructure like the
+ * {@link Configuration}, which the entries share instead of retaining them.
+ *
+ * @since 3.4.6
+ */
+public class ObjectSizeWeigher implements Weigher {
+
+  private static final int OBJECT_HEADER = 16;
+  private static final int REFERENCE = 8;
+  private static final int SAMPLE_SIZE = 32;
+  private static final int MAX_DEPTH = 16;
+
+  private static final Map<Class<?>, ClassLayout> LAYOUTS = new ConcurrentHashMap<Class<?>, ClassLayout>();
+
+  @Override
+  public long weigh(Object value) {
+    if (value instanceof byte[]) {
+      return ((byte[]) value).length;
+    }
+    return estimate(value, new IdentityHashMap<Object, Object>(), 0);
+  }
+
+  private long estimate(Object value, Map<Object, Object> visited, int depth) {
+    if (value == null || depth > MAX_DEPTH || value instanceof Class || value instanceof Enum || isShared(value)) {
+      return 0;
+    }
+    if (value instanceof String) {
+      return align(24) + align(OBJECT_HEADER + 2L * ((String) value).length());
+    } else if (value instanceof Long || value instanceof Double || value instanceof Date) {
+      return 24;
+    } else if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+      if (value instanceof BigDecimal || value instanceof BigInteger) {
+        return 64;
+      }
+      return 16;
+    }
+    if (visited.put(value, value) != null) {
+      return 0;
+    }
+    Class<?> type = value.getClass();
+    if (type.isArray()) {
+      return estimateArray(value, type.getComponentType(), visited, depth);
+    } else if (value instanceof Collection) {
+      Collection<?> collection = (Collection<?>) value;
+      return align(OBJECT_HEADER + 32) + REFERENCE * 2L * collection.size()
+          + estimateElements(collection.iterator(), collection.size(), visited, depth);
+    } else if (value instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      long entries = map.size();
+      return align(OBJECT_HEADER + 48) + (REFERENCE + 32) * entries
+          + estimateElements(map.keySet().iterator(), map.size(), visited, depth)
+          + estimateElements(map.values().iterator(), map.size(), visited, depth);
+    }
+    ClassLayout layout = layoutOf(type);
+    long size = layout.shallowSize;
+    if (Proxy.isProxyClass(type)) {
+      // only the invocation handler
+      return size;
+    }
+    for (Field field : layout.referenceFields) {
+      try {
+        size += estimate(field.get(value), visited, depth + 1);
+      } catch (IllegalAccessException e) {
+        // not accessible, counted as a reference only
+      }
+    }
+    return size;
+  }
+
+  private long estimateArray(Object array, Class<?> componentType, Map<Object, Object> visited, int depth) {
+    int length = Array.getLength(array);
+    if (componentType.isPrimitive()) {
+      return align(OBJECT_HEADER + (long) length * primitiveSize(componentType));
+    }
+    List<Object> elements = new ArrayList<Object>(Math.min(length, SAMPLE_SIZE));
+    for (int i = 0; i < length && i < SAMPLE_SIZE; i++) {
+      elements.add(Array.get(array, i));
+    }
+    return align(OBJECT_HEADER + (long) length * REFERENCE) + estimateElements(elements.iterator(), length, visited, depth);
+  }
+
+  /**
+   * Weighs the first elements and extrapolates to the total count
+   */
+  private long estimateElements(Iterator<?> elements, int count, Map<Object, Object> visited, int depth) {
+    long sampled = 0;
+    int sampleCount = 0;
+    while (sampleCount < SAMPLE_SIZE && elements.hasNext()) {
+      sampled += estimate(elements.next(), visited, depth + 1);
+      sampleCount++;
+    }
+    if (sampleCount == 0 || sampleCount >= count) {
+      return sampled;
+    }
+    return sampled * count / sampleCount;
+  }
+
+  private static boolean isShared(Object value) {
+    return value instanceof Configuration || value instanceof ResultLoaderMap || value instanceof ObjectFactory;
+  }
+
+  /**
+   * Whether the class was generated by javassist or cglib, its own fields then hold the proxy's handler
+   */
+  private static boolean isEnhanced(Class<?> type) {
+    for (Class<?> iface : type.getInterfaces()) {
+      String name = iface.getName();
+      if (iface == WriteReplaceInterface.class || name.endsWith("javassist.util.proxy.ProxyObject")
+          || name.endsWith("javassist.util.proxy.Proxy") || name.endsWith("cglib.proxy.Factory")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static ClassLayout layoutOf(Class<?> type) {
+    ClassLayout layout = LAYOUTS.get(type);
+    if (layout == null) {
+      layout = new ClassLayout(type);
+      LAYOUTS.put(type, layout);
+    }
+    return layout;
+  }
+
+  private static int primitiveSize(Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    } else if (type == int.class || type == float.class) {
+      return 4;
+    } else if (type == short.class || type == char.class) {
+      return 2;
+    }
+    return 1;
+  }
+
+  private static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  private static class ClassLayout {
+
+    private final long shallowSize;
+    private final List<Field> referenceFields = new ArrayList<Field>();
+
+    ClassLayout(Class<?> type) {
+      long size = OBJECT_HEADER;
+      for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+        boolean enhanced = isEnhanced(c);
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          if (field.getType().isPrimitive()) {
+            size += primitiveSize(field.getType());
+          } else if (enhanced || field.isSynthetic()) {
+            // the handler of a proxy or an outer instance, counted as a reference only
+            size += REFERENCE;
+          } else {
+            size += REFERENCE;
+            try {
+              field.setAccessible(true);
+              referenceFields.add(field);
+            } catch (RuntimeException e) {
+              // e.g. a module that is not open, counted as a reference only
+            }
+          }
+        }
+      }
+      this.shallowSize = align(size);
+    }
+  }
+
+}
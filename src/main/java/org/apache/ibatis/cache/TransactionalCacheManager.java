@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@ package org.apache.ibatis.cache;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.ibatis.cache.decorators.TransactionalCache;
 
@@ -27,11 +28,48 @@ import org.apache.ibatis.cache.decorators.TransactionalCache;
 public class TransactionalCacheManager {
 
   private final Map<Cache, TransactionalCache> transactionalCaches = new HashMap<Cache, TransactionalCache>();
+  //多数会话只访问一个命名空间，记住上一次用到的缓存以省去查找
+  private Cache lastCache;
+  private TransactionalCache lastTransactionalCache;
+  private final boolean writeThrough;
+  private boolean written;
+
+  public TransactionalCacheManager() {
+    this(false);
+  }
+
+  /**
+   * @param writeThrough whether to put query results straight into the caches while the transaction has not written
+   * @since 3.4.6
+   */
+  public TransactionalCacheManager(boolean writeThrough) {
+    this.writeThrough = writeThrough;
+  }
+
+  /**
+   * Records that the transaction has written, so query results are held back until it commits.
+   *
+   * @since 3.4.6
+   */
+  public void markWritten() {
+    written = true;
+  }
 
   public void clear(Cache cache) {
+    written = true;
     getTransactionalCache(cache).clear();
   }
 
+  /**
+   * Flushes only the entries read from the tables, or the whole cache if it does not track tables
+   *
+   * @since 3.4.6
+   */
+  public void invalidate(Cache cache, Set<String> tables) {
+    written = true;
+    getTransactionalCache(cache).invalidate(tables);
+  }
+
   public Object getObject(Cache cache, CacheKey key) {
     return getTransactionalCache(cache).getObject(key);
   }
@@ -40,24 +78,43 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  /**
+   * @param tables the tables the value was read from, null if not known
+   * @since 3.4.6
+   */
+  public void putObject(Cache cache, CacheKey key, Object value, Set<String> tables) {
+    if (writeThrough && !written) {
+      getTransactionalCache(cache).putObjectThrough(key, value, tables);
+    } else {
+      getTransactionalCache(cache).putObject(key, value, tables);
+    }
+  }
+
   public void commit() {
+    written = false;
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.commit();
     }
   }
 
   public void rollback() {
+    written = false;
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.rollback();
     }
   }
 
   private TransactionalCache getTransactionalCache(Cache cache) {
+    if (cache == lastCache) {
+      return lastTransactionalCache;
+    }
     TransactionalCache txCache = transactionalCaches.get(cache);
     if (txCache == null) {
       txCache = new TransactionalCache(cache);
       transactionalCaches.put(cache, txCache);
     }
+    lastCache = cache;
+    lastTransactionalCache = txCache;
     return txCache;
   }
 
@@ -0,0 +1,32 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Computes the weight of a cached value, typically an estimate of the heap it retains in bytes.
+ *
+ * @since 3.4.6
+ * @see org.apache.ibatis.cache.decorators.WeightedCache
+ */
+public interface Weigher {
+
+  /**
+   * @param value the value to be cached, a byte array when the cache is read-write
+   * @return the weight, never negative
+   */
+  long weigh(Object value);
+
+}
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2015 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,13 +16,15 @@
 package org.apache.ibatis.cache.decorators;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.ThreadSafeCache;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
 
 /**
  * Simple blocking decorator 
@@ -31,18 +33,25 @@ import org.apache.ibatis.cache.CacheException;
  * It sets a lock over a cache key when the element is not found in cache.
  * This way, other threads will wait until this element is filled instead of hitting the database.
  * 
+ * A lock only exists while its key is being loaded, so the locks do not pile up with every key ever missed.
+ * Hits do not lock at all. With hand-off enabled the threads that waited get the loaded value from the
+ * loading thread instead of reading the cache again, which is only safe when the cache shares its objects.
+ *
  * @author Eduardo Macarron
  * 阻塞版本的缓存器
  *
  */
-public class BlockingCache implements Cache {
+public class BlockingCache implements Cache, ThreadSafeCache {
+
+  private static final Log log = LogFactory.getLog(BlockingCache.class);
 
   private long timeout;
+  private boolean handOff;
   private final Cache delegate;
     /**
-     * 放了多把锁
+     * 正在加载的Key及其锁，释放时删除
      */
-  private final ConcurrentHashMap<Object, ReentrantLock> locks;
+  private final ConcurrentHashMap<Object, KeyLock> locks;
 
     /**
      * 具体被装饰的Cache
@@ -50,7 +59,7 @@ public class BlockingCache implements Cache {
      */
   public BlockingCache(Cache delegate) {
     this.delegate = delegate;
-    this.locks = new ConcurrentHashMap<Object, ReentrantLock>();
+    this.locks = new ConcurrentHashMap<Object, KeyLock>();
   }
 
     /**
@@ -72,17 +81,37 @@ public class BlockingCache implements Cache {
     try {
       delegate.putObject(key, value);
     } finally {
-      releaseLock(key);
+      releaseLock(key, value);
     }
   }
 
   @Override
   public Object getObject(Object key) {
-    acquireLock(key);
     Object value = delegate.getObject(key);
     if (value != null) {
-      releaseLock(key);
-    }        
+      return value;
+    }
+    KeyLock lock = new KeyLock();
+    KeyLock owner;
+    while ((owner = locks.putIfAbsent(key, lock)) != null) {
+      if (owner.thread == Thread.currentThread()) {
+        // already loading this key
+        return null;
+      }
+      value = await(key, owner);
+      if (value == null) {
+        value = delegate.getObject(key);
+      }
+      if (value != null) {
+        return value;
+      }
+      // released without a value, e.g. on rollback: try to load it ourselves
+    }
+    // it may have been put since the first read
+    value = delegate.getObject(key);
+    if (value != null) {
+      releaseLock(key, value);
+    }
     return value;
   }
 
@@ -94,7 +123,7 @@ public class BlockingCache implements Cache {
   @Override
   public Object removeObject(Object key) {
     // despite of its name, this method is called only to release locks
-    releaseLock(key);
+    releaseLock(key, null);
     return null;
   }
 
@@ -109,48 +138,47 @@ public class BlockingCache implements Cache {
   }
 
     /**
-     * 根据Key得到锁，若没有则新建锁
-     * @param key
-     * @return
-     */
-  private ReentrantLock getLockForKey(Object key) {
-    ReentrantLock lock = new ReentrantLock();
-    ReentrantLock previous = locks.putIfAbsent(key, lock);
-    return previous == null ? lock : previous;
-  }
-
-    /**
-     * 得到锁
+     * 等待其他线程加载完成
      * @param key
+     * @return 加载的值，没有交接时为null
      */
-  private void acquireLock(Object key) {
-    Lock lock = getLockForKey(key);
-    if (timeout > 0) {
-      try {
-          /**
-           * 尝试锁住对象
-           */
-        boolean acquired = lock.tryLock(timeout, TimeUnit.MILLISECONDS);
+  private Object await(Object key, KeyLock owner) {
+    try {
+      if (timeout > 0) {
+        boolean acquired = owner.released.await(timeout, TimeUnit.MILLISECONDS);
         if (!acquired) {
           throw new CacheException("Couldn't get a lock in " + timeout + " for the key " +  key + " at the cache " + delegate.getId());  
         }
-      } catch (InterruptedException e) {
-        throw new CacheException("Got interrupted while trying to acquire lock for key " + key, e);
+      } else {
+        owner.released.await();
       }
-    } else {
-      lock.lock();
+    } catch (InterruptedException e) {
+      throw new CacheException("Got interrupted while trying to acquire lock for key " + key, e);
     }
+    return owner.value;
   }
 
     /**
-     * 释放锁
+     * 释放锁，只有加锁的线程可以释放
      * @param key
+     * @param value 交给等待线程的值
      */
-  private void releaseLock(Object key) {
-    ReentrantLock lock = locks.get(key);
-    if (lock.isHeldByCurrentThread()) {
-      lock.unlock();
+  private void releaseLock(Object key, Object value) {
+    KeyLock lock = locks.get(key);
+    if (lock == null) {
+      return;
+    }
+    if (lock.thread != Thread.currentThread()) {
+      // the loading thread has to release it, until then the readers of the key wait
+      log.warn("Thread " + Thread.currentThread().getName() + " cannot release the lock of thread "
+          + lock.thread.getName() + " for the key " + key + " at the cache " + delegate.getId());
+      return;
+    }
+    if (handOff) {
+      lock.value = value;
     }
+    locks.remove(key, lock);
+    lock.released.countDown();
   }
 
   public long getTimeout() {
@@ -160,4 +188,25 @@ public class BlockingCache implements Cache {
   public void setTimeout(long timeout) {
     this.timeout = timeout;
   }  
-}
\ No newline at end of file
+
+  /**
+   * @since 3.4.6
+   */
+  public boolean isHandOff() {
+    return handOff;
+  }
+
+  /**
+   * @param handOff - true to give the loaded value to the waiting threads. Set by the builder for read-only caches.
+   * @since 3.4.6
+   */
+  public void setHandOff(boolean handOff) {
+    this.handOff = handOff;
+  }
+
+  private static class KeyLock {
+    private final Thread thread = Thread.currentThread();
+    private final CountDownLatch released = new CountDownLatch(1);
+    private volatile Object value;
+  }
+}
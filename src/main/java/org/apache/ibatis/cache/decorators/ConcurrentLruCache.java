@@ -0,0 +1,194 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EvictingCache;
+import org.apache.ibatis.cache.EvictionListener;
+import org.apache.ibatis.cache.ThreadSafeCache;
+
+/**
+ * Segmented Lru (least recently used) cache decorator.
+ * <p>
+ * Keys are spread over a number of segments by hash, each with its own access ordered key list and lock and an
+ * equal share of the size. Threads only contend when they touch keys of the same segment, at the price of evicting
+ * the least recently used key of a segment instead of the whole cache. Meant to decorate a thread-safe cache like
+ * {@link org.apache.ibatis.cache.impl.ConcurrentPerpetualCache}.
+ *
+ * @since 3.4.6
+ */
+public class ConcurrentLruCache implements Cache, ThreadSafeCache, EvictingCache {
+
+  private final Cache delegate;
+  private int size = 1024;
+  private int segmentCount = 16;
+  private volatile Segment[] segments;
+  private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<EvictionListener>();
+
+  public ConcurrentLruCache(Cache delegate) {
+    this.delegate = delegate;
+    createSegments();
+  }
+
+  @Override
+  public void addEvictionListener(EvictionListener listener) {
+    evictionListeners.add(listener);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void setSize(int size) {
+    this.size = size;
+    createSegments();
+  }
+
+  /**
+   * The number of independently locked segments, 1 behaves like {@link LruCache}
+   *
+   * @param segmentCount - the number of segments
+   */
+  public void setSegments(int segmentCount) {
+    this.segmentCount = segmentCount;
+    createSegments();
+  }
+
+  private void createSegments() {
+    int count = Math.max(1, Math.min(segmentCount, size));
+    Segment[] newSegments = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      // the remainder goes to the first segments, so the segments add up to the size
+      newSegments[i] = new Segment(Math.max(1, size / count + (i < size % count ? 1 : 0)));
+    }
+    segments = newSegments;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      delegate.putObject(key, value);
+      Object eldestKey = segment.touch(key);
+      if (eldestKey != null) {
+        delegate.removeObject(eldestKey);
+        evicted(eldestKey);
+      }
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      segment.keyMap.get(key);
+    }
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      segment.keyMap.remove(key);
+    }
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    clear(segments, 0);
+  }
+
+  /**
+   * Clears while holding the locks of all segments, so no put runs between clearing the delegate and the key maps
+   */
+  private void clear(Segment[] current, int index) {
+    if (index == current.length) {
+      delegate.clear();
+      return;
+    }
+    Segment segment = current[index];
+    synchronized (segment) {
+      clear(current, index + 1);
+      segment.keyMap.clear();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private Segment segmentFor(Object key) {
+    Segment[] current = segments;
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return current[(h & 0x7fffffff) % current.length];
+  }
+
+  private void evicted(Object key) {
+    for (EvictionListener listener : evictionListeners) {
+      listener.onEviction(key);
+    }
+  }
+
+  private static class Segment {
+
+    private final Map<Object, Object> keyMap;
+    private Object eldestKey;
+
+    Segment(final int size) {
+      this.keyMap = new LinkedHashMap<Object, Object>(size, .75F, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+          boolean tooBig = size() > size;
+          if (tooBig) {
+            eldestKey = eldest.getKey();
+          }
+          return tooBig;
+        }
+      };
+    }
+
+    /**
+     * Marks a key as most recently used
+     *
+     * @return the key that had to make room, or null
+     */
+    Object touch(Object key) {
+      keyMap.put(key, key);
+      Object evicted = eldestKey;
+      eldestKey = null;
+      return evicted;
+    }
+  }
+
+}
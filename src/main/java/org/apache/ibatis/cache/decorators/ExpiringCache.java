@@ -0,0 +1,277 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EvictionListener;
+import org.apache.ibatis.cache.ThreadSafeCache;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Expires every entry on its own, unlike {@link ScheduledCache} which clears the whole cache at once.
+ * <p>
+ * An entry expires {@code expireAfterWrite} milliseconds after it was put and {@code expireAfterAccess}
+ * milliseconds after it was last read, whichever comes first. With {@code refreshAhead} set, a hit in the last
+ * {@code refreshAhead} milliseconds before the write expiry still returns the cached value but also reloads the
+ * entry on a background thread, through the statement that produced it. The statement is taken from the
+ * {@link Refresher} the caller registered for the lookup, see {@link #setRefresher(Refresher)}.
+ *
+ * @since 3.4.6
+ */
+public class ExpiringCache implements Cache, ThreadSafeCache, EvictionListener {
+
+  private static final Log log = LogFactory.getLog(ExpiringCache.class);
+
+  private static final ThreadLocal<Refresher> REFRESHER = new ThreadLocal<Refresher>();
+  private static final ThreadLocal<Entry> REFRESHING = new ThreadLocal<Entry>();
+  private static final ExecutorService REFRESH_EXECUTOR = newRefreshExecutor();
+
+  private final Cache delegate;
+  private final ConcurrentMap<Object, Entry> entries = new ConcurrentHashMap<Object, Entry>();
+  private final Set<Object> refreshingKeys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+  private final AtomicLong lastPurge = new AtomicLong(System.currentTimeMillis());
+  private volatile long generation;
+  private long expireAfterWrite;
+  private long expireAfterAccess;
+  private long refreshAhead;
+
+  public ExpiringCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Reloads the entry a lookup is about to read
+   */
+  public interface Refresher {
+
+    /**
+     * Captures what is needed to reload the value of a key, so the reload can run after the lookup returned.
+     * The task is expected to put the new value into the cache.
+     *
+     * @param key the key being looked up
+     * @return the reload task, or null if the entry cannot be reloaded
+     */
+    Runnable newRefreshTask(Object key);
+  }
+
+  /**
+   * Registers the refresher of the lookups done by the current thread, to be removed with {@link #removeRefresher()}
+   */
+  public static void setRefresher(Refresher refresher) {
+    REFRESHER.set(refresher);
+  }
+
+  public static void removeRefresher() {
+    REFRESHER.remove();
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void setExpireAfterWrite(long expireAfterWrite) {
+    this.expireAfterWrite = expireAfterWrite;
+  }
+
+  public void setExpireAfterAccess(long expireAfterAccess) {
+    this.expireAfterAccess = expireAfterAccess;
+  }
+
+  public void setRefreshAhead(long refreshAhead) {
+    this.refreshAhead = refreshAhead;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    Entry refreshed = REFRESHING.get();
+    if (refreshed != null && refreshed.key.equals(key)
+        && (entries.get(key) != refreshed || refreshed.generation != generation)) {
+      // removed, replaced or flushed while it was reloaded
+      return;
+    }
+    long now = System.currentTimeMillis();
+    delegate.putObject(key, value);
+    entries.put(key, new Entry(key, now, generation));
+    purgeIfDue(now);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Entry refreshed = REFRESHING.get();
+    if (refreshed != null && refreshed.key.equals(key)) {
+      // the reload reads the database, not the entry it replaces
+      return null;
+    }
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return delegate.getObject(key);
+    }
+    long now = System.currentTimeMillis();
+    if (isExpired(entry, now)) {
+      expire(entry);
+      return null;
+    }
+    Object value = delegate.getObject(key);
+    if (value == null) {
+      entries.remove(key, entry);
+      return null;
+    }
+    entry.accessTime = now;
+    if (refreshAhead > 0 && expireAfterWrite > 0 && now >= entry.writeTime + expireAfterWrite - refreshAhead) {
+      refresh(entry);
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    entries.remove(key);
+    return delegate.removeObject(key);
+  }
+
+  /**
+   * Forgets the expiry of a key the base cache evicted by itself
+   */
+  @Override
+  public void onEviction(Object key) {
+    entries.remove(key);
+  }
+
+  @Override
+  public void clear() {
+    generation++;
+    entries.clear();
+    delegate.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return (expireAfterWrite > 0 && now - entry.writeTime >= expireAfterWrite)
+        || (expireAfterAccess > 0 && now - entry.accessTime >= expireAfterAccess);
+  }
+
+  private void expire(Entry entry) {
+    if (entries.remove(entry.key, entry)) {
+      delegate.removeObject(entry.key);
+    }
+  }
+
+  /**
+   * Drops expired entries that are no longer read, at most once per the shorter expiry
+   */
+  private void purgeIfDue(long now) {
+    long interval = expireAfterWrite > 0 && (expireAfterAccess <= 0 || expireAfterWrite < expireAfterAccess)
+        ? expireAfterWrite : expireAfterAccess;
+    long last = lastPurge.get();
+    if (interval <= 0 || now - last < interval || !lastPurge.compareAndSet(last, now)) {
+      return;
+    }
+    for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+      Entry entry = it.next();
+      if (isExpired(entry, now)) {
+        expire(entry);
+      }
+    }
+  }
+
+  private void refresh(final Entry entry) {
+    Refresher refresher = REFRESHER.get();
+    if (refresher == null || !refreshingKeys.add(entry.key)) {
+      return;
+    }
+    final Runnable task = refresher.newRefreshTask(entry.key);
+    if (task == null) {
+      refreshingKeys.remove(entry.key);
+      return;
+    }
+    try {
+      REFRESH_EXECUTOR.execute(new Runnable() {
+        @Override
+        public void run() {
+          REFRESHING.set(entry);
+          try {
+            task.run();
+          } catch (RuntimeException e) {
+            log.debug("Refresh ahead of key " + entry.key + " in cache " + getId() + " failed.  Cause: " + e);
+          } finally {
+            REFRESHING.remove();
+            refreshingKeys.remove(entry.key);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refreshingKeys.remove(entry.key);
+    }
+  }
+
+  private static ExecutorService newRefreshExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(1024), new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "mybatis-cache-refresh-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static class Entry {
+
+    private final Object key;
+    private final long writeTime;
+    private final long generation;
+    private volatile long accessTime;
+
+    Entry(Object key, long writeTime, long generation) {
+      this.key = key;
+      this.writeTime = writeTime;
+      this.generation = generation;
+      this.accessTime = writeTime;
+    }
+  }
+
+}
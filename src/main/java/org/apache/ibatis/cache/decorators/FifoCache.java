@@ -17,9 +17,13 @@ package org.apache.ibatis.cache.decorators;
 
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EvictingCache;
+import org.apache.ibatis.cache.EvictionListener;
 
 /**
  * 先进先出缓存
@@ -27,13 +31,14 @@ import org.apache.ibatis.cache.Cache;
  *
  * @author Clinton Begin
  */
-public class FifoCache implements Cache {
+public class FifoCache implements Cache, EvictingCache {
 
   private final Cache delegate;
   /**双向队列**/
   private final Deque<Object> keyList;
   /**长度**/
   private int size;
+  private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<EvictionListener>();
 
   public FifoCache(Cache delegate) {
     this.delegate = delegate;
@@ -41,6 +46,11 @@ public class FifoCache implements Cache {
     this.size = 1024;
   }
 
+  @Override
+  public void addEvictionListener(EvictionListener listener) {
+    evictionListeners.add(listener);
+  }
+
   @Override
   public String getId() {
     return delegate.getId();
@@ -100,6 +110,13 @@ public class FifoCache implements Cache {
       Object oldestKey = keyList.removeFirst();
       //Cache删除对象,1024-1 = 1023
       delegate.removeObject(oldestKey);
+      evicted(oldestKey);
+    }
+  }
+
+  private void evicted(Object key) {
+    for (EvictionListener listener : evictionListeners) {
+      listener.onEviction(key);
     }
   }
 
@@ -18,23 +18,32 @@ package org.apache.ibatis.cache.decorators;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheMetrics;
+import org.apache.ibatis.cache.CacheStatistics;
+import org.apache.ibatis.cache.EvictionListener;
+import org.apache.ibatis.cache.ThreadSafeCache;
+import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /**
- * 在Cache基础上提供log
+ * 在Cache基础上提供log及统计
+ * The counters are private to its {@link CacheStatistics}, subclasses read them through {@link #getHitRatio()}
+ * and {@link #getStatistics()}.
+ *
  * @author Clinton Begin
  */
-public class LoggingCache implements Cache {
+public class LoggingCache implements Cache, ThreadSafeCache, EvictionListener {
 
   private final Log log;
   private final Cache delegate;
-  protected int requests = 0;
-  protected int hits = 0;
+  private final CacheStatistics statistics;
 
   public LoggingCache(Cache delegate) {
     this.delegate = delegate;
     this.log = LogFactory.getLog(getId());
+    this.statistics = new CacheStatistics(this);
   }
 
   @Override
@@ -50,14 +59,16 @@ public class LoggingCache implements Cache {
   @Override
   public void putObject(Object key, Object object) {
     delegate.putObject(key, object);
+    statistics.recordPut();
   }
 
   @Override
   public Object getObject(Object key) {
-    requests++;
     final Object value = delegate.getObject(key);
     if (value != null) {
-      hits++;
+      statistics.recordHit();
+    } else {
+      statistics.recordMiss();
     }
     if (log.isDebugEnabled()) {
       log.debug("Cache Hit Ratio [" + getId() + "]: " + getHitRatio());
@@ -75,6 +86,16 @@ public class LoggingCache implements Cache {
     delegate.clear();
   }
 
+  /**
+   * Counts an eviction of one of the {@link org.apache.ibatis.cache.EvictingCache}s below
+   *
+   * @since 3.4.6
+   */
+  @Override
+  public void onEviction(Object key) {
+    statistics.recordEvictions(1);
+  }
+
   @Override
   public ReadWriteLock getReadWriteLock() {
     return null;
@@ -90,8 +111,33 @@ public class LoggingCache implements Cache {
     return delegate.equals(obj);
   }
 
-  private double getHitRatio() {
-    return (double) hits / (double) requests;
+  /**
+   * The share of {@link #getObject(Object)} calls that found a value
+   *
+   * @since 3.4.6
+   */
+  public double getHitRatio() {
+    return statistics.getHitRatio();
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Passes the events of this cache on to a new instance of the given {@link CacheMetrics} class as well.
+   *
+   * @since 3.4.6
+   */
+  public void setMetricsClass(String metricsClass) {
+    try {
+      statistics.setMetrics((CacheMetrics) Resources.classForName(metricsClass).newInstance());
+    } catch (Exception e) {
+      throw new CacheException("Error creating cache metrics " + metricsClass + " for cache " + getId() + ".  Cause: " + e, e);
+    }
   }
 
 }
@@ -16,10 +16,14 @@
 package org.apache.ibatis.cache.decorators;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EvictingCache;
+import org.apache.ibatis.cache.EvictionListener;
 
 /**
  * 清除最近最少使用缓存
@@ -27,19 +31,25 @@ import org.apache.ibatis.cache.Cache;
  *
  * @author Clinton Begin
  */
-public class LruCache implements Cache {
+public class LruCache implements Cache, EvictingCache {
 
   private final Cache delegate;
   /**KeyMap，key使用情况**/
   private Map<Object, Object> keyMap;
   /**使用最少的key**/
   private Object eldestKey;
+  private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<EvictionListener>();
 
   public LruCache(Cache delegate) {
     this.delegate = delegate;
     setSize(1024);
   }
 
+  @Override
+  public void addEvictionListener(EvictionListener listener) {
+    evictionListeners.add(listener);
+  }
+
   @Override
   public String getId() {
     return delegate.getId();
@@ -117,8 +127,15 @@ public class LruCache implements Cache {
     keyMap.put(key, key);
     if (eldestKey != null) {
       delegate.removeObject(eldestKey);
+      evicted(eldestKey);
       eldestKey = null;
     }
   }
 
+  private void evicted(Object key) {
+    for (EvictionListener listener : evictionListeners) {
+      listener.onEviction(key);
+    }
+  }
+
 }
@@ -0,0 +1,168 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EvictingCache;
+import org.apache.ibatis.cache.EvictionListener;
+import org.apache.ibatis.cache.ThreadSafeCache;
+
+/**
+ * 空结果（负缓存）单独存放，有自己的容量和过期时间
+ * Keeps empty query results apart from the other entries, so lookups of keys that do not exist neither evict
+ * real results nor outlive them.
+ * <p>
+ * At most {@code negativeSize} empty results are kept, dropping the oldest first, and each of them for at most
+ * {@code negativeExpireAfterWrite} milliseconds. They never reach the decorated cache; a hit returns a new empty
+ * list, as callers may add to the results they get.
+ *
+ * @since 3.4.6
+ */
+public class NegativeResultCache implements Cache, ThreadSafeCache, EvictingCache {
+
+  private final Cache delegate;
+  //key -> 过期时间，按放入顺序
+  private final LinkedHashMap<Object, Long> emptyResults = new LinkedHashMap<Object, Long>();
+  private int negativeSize = 1024;
+  private long negativeExpireAfterWrite;
+  private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<EvictionListener>();
+
+  public NegativeResultCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  public void setNegativeSize(int negativeSize) {
+    this.negativeSize = negativeSize;
+  }
+
+  /**
+   * @param negativeExpireAfterWrite milliseconds, zero or less to keep empty results until they are evicted
+   */
+  public void setNegativeExpireAfterWrite(long negativeExpireAfterWrite) {
+    this.negativeExpireAfterWrite = negativeExpireAfterWrite;
+  }
+
+  @Override
+  public void addEvictionListener(EvictionListener listener) {
+    evictionListeners.add(listener);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    synchronized (emptyResults) {
+      return delegate.getSize() + emptyResults.size();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (isEmptyResult(value)) {
+      long expiry = negativeExpireAfterWrite > 0 ? System.currentTimeMillis() + negativeExpireAfterWrite : Long.MAX_VALUE;
+      List<Object> evicted = null;
+      synchronized (emptyResults) {
+        emptyResults.remove(key);
+        emptyResults.put(key, expiry);
+        Iterator<Object> it = emptyResults.keySet().iterator();
+        while (emptyResults.size() > negativeSize && it.hasNext()) {
+          if (evicted == null) {
+            evicted = new ArrayList<Object>();
+          }
+          evicted.add(it.next());
+          it.remove();
+        }
+      }
+      // drops a previous result of the key, and lets the decorators below forget the evicted keys
+      delegate.removeObject(key);
+      if (evicted != null) {
+        for (Object evictedKey : evicted) {
+          delegate.removeObject(evictedKey);
+          evicted(evictedKey);
+        }
+      }
+    } else {
+      synchronized (emptyResults) {
+        emptyResults.remove(key);
+      }
+      delegate.putObject(key, value);
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Long expiry;
+    boolean expired = false;
+    synchronized (emptyResults) {
+      expiry = emptyResults.get(key);
+      if (expiry != null && expiry < System.currentTimeMillis()) {
+        emptyResults.remove(key);
+        expired = true;
+      }
+    }
+    if (expiry == null) {
+      return delegate.getObject(key);
+    }
+    if (expired) {
+      delegate.removeObject(key);
+      return null;
+    }
+    return new ArrayList<Object>();
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    synchronized (emptyResults) {
+      emptyResults.remove(key);
+    }
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    synchronized (emptyResults) {
+      emptyResults.clear();
+    }
+    delegate.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private static boolean isEmptyResult(Object value) {
+    return value instanceof List && ((List<?>) value).isEmpty();
+  }
+
+  private void evicted(Object key) {
+    for (EvictionListener listener : evictionListeners) {
+      listener.onEviction(key);
+    }
+  }
+
+}
@@ -15,30 +15,53 @@
  */
 package org.apache.ibatis.cache.decorators;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.JavaCacheSerializer;
+import org.apache.ibatis.cache.ThreadSafeCache;
 import org.apache.ibatis.io.Resources;
 
 /**
  * 虚拟化缓存
  * @author Clinton Begin
  */
-public class SerializedCache implements Cache {
+public class SerializedCache implements Cache, ThreadSafeCache {
 
   private final Cache delegate;
+  private CacheSerializer serializer;
 
   public SerializedCache(Cache delegate) {
+    this(delegate, new JavaCacheSerializer());
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public SerializedCache(Cache delegate, CacheSerializer serializer) {
     this.delegate = delegate;
+    this.serializer = serializer;
+  }
+
+  /**
+   * Replaces the default Java serialization, e.g. with {@link org.apache.ibatis.cache.CompactCacheSerializer}.
+   *
+   * @param serializerClass - the fully qualified name of a {@link CacheSerializer} with a no-argument constructor
+   * @since 3.4.6
+   */
+  public void setSerializerClass(String serializerClass) {
+    try {
+      this.serializer = (CacheSerializer) Resources.classForName(serializerClass).newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error creating serializer " + serializerClass + " for cache " + getId() + ".  Cause: " + e, e);
+    }
   }
 
   @Override
@@ -104,12 +127,7 @@ public class SerializedCache implements Cache {
      */
   private byte[] serialize(Serializable value) {
     try {
-      ByteArrayOutputStream bos = new ByteArrayOutputStream();
-      ObjectOutputStream oos = new ObjectOutputStream(bos);
-      oos.writeObject(value);
-      oos.flush();
-      oos.close();
-      return bos.toByteArray();
+      return serializer.serialize(value);
     } catch (Exception e) {
       throw new CacheException("Error serializing object.  Cause: " + e, e);
     }
@@ -118,10 +136,7 @@ public class SerializedCache implements Cache {
   private Serializable deserialize(byte[] value) {
     Serializable result;
     try {
-      ByteArrayInputStream bis = new ByteArrayInputStream(value);
-      ObjectInputStream ois = new CustomObjectInputStream(bis);
-      result = (Serializable) ois.readObject();
-      ois.close();
+      result = serializer.deserialize(value);
     } catch (Exception e) {
       throw new CacheException("Error deserializing object.  Cause: " + e, e);
     }
@@ -19,12 +19,13 @@ import java.util.Collections;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
 
 /**
  * 同步方法，类似java.util.Collections#synchronizedCollection(java.util.Collection),每个方法添加Synchronized
  * @author Clinton Begin
  */
-public class SynchronizedCache implements Cache {
+public class SynchronizedCache implements Cache, ThreadSafeCache {
 
   private final Cache delegate;
   
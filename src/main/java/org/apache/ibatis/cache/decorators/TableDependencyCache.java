@@ -0,0 +1,182 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EvictionListener;
+import org.apache.ibatis.cache.ThreadSafeCache;
+
+/**
+ * Keeps track of the tables each cached key was read from. It decorates the base cache directly, so it also sees
+ * the removals made by eviction policies and stays exact. A base cache that evicts by itself reports its evictions
+ * through {@link #onEviction(Object)}. Keys are registered by the {@link TableInvalidatingCache} at the top of the
+ * same chain.
+ *
+ * @since 3.4.6
+ */
+public class TableDependencyCache implements Cache, ThreadSafeCache, EvictionListener {
+
+  private final Cache delegate;
+  private final Map<Object, Set<String>> tablesByKey = new HashMap<Object, Set<String>>();
+  private final Map<String, Set<Object>> keysByTable = new HashMap<String, Set<Object>>();
+  /**依赖的表未知的key，任何表的更新都会清除**/
+  private final Set<Object> keysOfUnknownTables = new HashSet<Object>();
+  /**每次按表清除或全部清除加一，注册时发现变化说明清除时还看不到这个key**/
+  private long generation;
+
+  public TableDependencyCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, value);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    unregister(key);
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void onEviction(Object key) {
+    unregister(key);
+  }
+
+  @Override
+  public void clear() {
+    synchronized (this) {
+      generation++;
+      tablesByKey.clear();
+      keysByTable.clear();
+      keysOfUnknownTables.clear();
+    }
+    delegate.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  /**
+   * @return the count of invalidations so far, to be passed to {@link #register(Object, Set, long)}
+   */
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * @param key the cached key
+   * @param tables the tables its value was read from, null if not known
+   * @param generation the {@link #getGeneration()} read before the value was put
+   * @return False if an invalidation ran since, the key is not registered then
+   */
+  synchronized boolean register(Object key, Set<String> tables, long generation) {
+    if (this.generation != generation) {
+      return false;
+    }
+    unregister(key);
+    if (tables == null) {
+      keysOfUnknownTables.add(key);
+      return true;
+    }
+    tablesByKey.put(key, tables);
+    for (String table : tables) {
+      Set<Object> keys = keysByTable.get(table);
+      if (keys == null) {
+        keys = new HashSet<Object>();
+        keysByTable.put(table, keys);
+      }
+      keys.add(key);
+    }
+    return true;
+  }
+
+  /**
+   * Starts an invalidation, the keys registered later were put after it started
+   *
+   * @return the keys that were read from any of the tables, or from unknown tables
+   */
+  synchronized List<Object> keysDependingOn(Set<String> tables) {
+    generation++;
+    List<Object> keys = new ArrayList<Object>(keysOfUnknownTables);
+    for (String table : tables) {
+      Set<Object> tableKeys = keysByTable.get(table);
+      if (tableKeys != null) {
+        keys.addAll(tableKeys);
+      }
+    }
+    return keys;
+  }
+
+  synchronized boolean dependsOn(Object key, Set<String> tables) {
+    Set<String> keyTables = tablesByKey.get(key);
+    if (keyTables == null) {
+      return true;
+    }
+    for (String table : tables) {
+      if (keyTables.contains(table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private synchronized void unregister(Object key) {
+    if (keysOfUnknownTables.remove(key)) {
+      return;
+    }
+    Set<String> tables = tablesByKey.remove(key);
+    if (tables == null) {
+      return;
+    }
+    for (String table : tables) {
+      Set<Object> keys = keysByTable.get(table);
+      if (keys != null) {
+        keys.remove(key);
+        if (keys.isEmpty()) {
+          keysByTable.remove(table);
+        }
+      }
+    }
+  }
+
+}
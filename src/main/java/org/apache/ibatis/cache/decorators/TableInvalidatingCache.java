@@ -0,0 +1,110 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
+
+/**
+ * The outermost decorator of a cache that is flushed by table. A statement that writes known tables only removes
+ * the entries read from those tables, instead of clearing the whole cache. Entries put without their tables
+ * depend on every table.
+ *
+ * @since 3.4.6
+ * @see TableDependencyCache
+ */
+public class TableInvalidatingCache implements Cache, ThreadSafeCache {
+
+  private final Cache delegate;
+  private final TableDependencyCache dependencies;
+
+  /**
+   * @param delegate the decorated cache chain
+   * @param dependencies the table index at the bottom of the same chain
+   */
+  public TableInvalidatingCache(Cache delegate, TableDependencyCache dependencies) {
+    this.delegate = delegate;
+    this.dependencies = dependencies;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    putObject(key, value, null);
+  }
+
+  /**
+   * @param tables the tables the value was read from, null if not known
+   */
+  public void putObject(Object key, Object value, Set<String> tables) {
+    long generation = dependencies.getGeneration();
+    delegate.putObject(key, value);
+    // registered after the put, so a concurrent invalidation cannot leave the entry untracked; one that ran in between
+    // did not see the key, the value is removed as it may have been read before the write
+    if (value != null && !dependencies.register(key, tables, generation)) {
+      delegate.removeObject(key);
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  /**
+   * Removes the entries read from any of the tables
+   */
+  public void invalidate(Set<String> tables) {
+    for (Object key : dependencies.keysDependingOn(tables)) {
+      delegate.removeObject(key);
+    }
+  }
+
+  /**
+   * @return True if the entry of the key was read from any of the tables, or its tables are not known
+   */
+  public boolean dependsOn(Object key, Set<String> tables) {
+    return dependencies.dependsOn(key, tables);
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+}
@@ -0,0 +1,249 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EvictingCache;
+import org.apache.ibatis.cache.EvictionListener;
+
+/**
+ * Window TinyLFU cache decorator.
+ * <p>
+ * New keys enter a small Lru window. A key pushed out of the window is only admitted to the main area if it was
+ * requested more often than the key it would evict, so a burst of one-off keys cannot flush the frequently used ones.
+ * Frequencies are estimated by a count-min sketch with 4-bit counters that are halved periodically to forget the past.
+ * The main area is a segmented Lru: keys hit a second time move from probation to the protected segment.
+ *
+ * @since 3.4.6
+ */
+public class TinyLfuCache implements Cache, EvictingCache {
+
+  private static final Object PRESENT = new Object();
+
+  private final Cache delegate;
+  private final Map<Object, Object> window = new LinkedHashMap<Object, Object>();
+  private final Map<Object, Object> probation = new LinkedHashMap<Object, Object>();
+  private final Map<Object, Object> protectedKeys = new LinkedHashMap<Object, Object>();
+  private int windowSize;
+  private int mainSize;
+  private int protectedSize;
+  private FrequencySketch sketch;
+  private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<EvictionListener>();
+
+  public TinyLfuCache(Cache delegate) {
+    this.delegate = delegate;
+    setSize(1024);
+  }
+
+  @Override
+  public void addEvictionListener(EvictionListener listener) {
+    evictionListeners.add(listener);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void setSize(int size) {
+    size = Math.max(2, size);
+    this.windowSize = Math.max(1, size / 100);
+    this.mainSize = size - windowSize;
+    this.protectedSize = mainSize * 4 / 5;
+    this.sketch = new FrequencySketch(size);
+    clear();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, value);
+    sketch.increment(key);
+    if (!touch(key)) {
+      window.put(key, PRESENT);
+      evict();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    sketch.increment(key);
+    touch(key);
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    if (window.remove(key) == null && probation.remove(key) == null) {
+      protectedKeys.remove(key);
+    }
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    window.clear();
+    probation.clear();
+    protectedKeys.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  /**
+   * Moves a tracked key to the most recently used position of its area
+   *
+   * @return False if the key is not tracked
+   */
+  private boolean touch(Object key) {
+    if (window.remove(key) != null) {
+      window.put(key, PRESENT);
+    } else if (probation.remove(key) != null) {
+      protectedKeys.put(key, PRESENT);
+      if (protectedKeys.size() > protectedSize) {
+        probation.put(removeEldest(protectedKeys), PRESENT);
+      }
+    } else if (protectedKeys.remove(key) != null) {
+      protectedKeys.put(key, PRESENT);
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private void evict() {
+    if (window.size() <= windowSize) {
+      return;
+    }
+    Object candidate = removeEldest(window);
+    if (probation.size() + protectedKeys.size() < mainSize) {
+      probation.put(candidate, PRESENT);
+      return;
+    }
+    Map<Object, Object> victimArea = probation.isEmpty() ? protectedKeys : probation;
+    Object victim = victimArea.keySet().iterator().next();
+    if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+      victimArea.remove(victim);
+      delegate.removeObject(victim);
+      evicted(victim);
+      probation.put(candidate, PRESENT);
+    } else {
+      delegate.removeObject(candidate);
+      evicted(candidate);
+    }
+  }
+
+  private static Object removeEldest(Map<Object, Object> keys) {
+    Iterator<Object> it = keys.keySet().iterator();
+    Object eldest = it.next();
+    it.remove();
+    return eldest;
+  }
+
+  private void evicted(Object key) {
+    for (EvictionListener listener : evictionListeners) {
+      listener.onEviction(key);
+    }
+  }
+
+  /**
+   * Count-min sketch of 4 rows of 4-bit counters
+   */
+  static class FrequencySketch {
+
+    private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+    private static final int MAX_COUNT = 15;
+
+    private final byte[][] rows = new byte[SEEDS.length][];
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int size) {
+      // a few counters per entry keep the estimates of rarely used keys from being inflated by collisions
+      int width = Integer.highestOneBit(Math.max(16, size - 1)) << 3;
+      for (int i = 0; i < rows.length; i++) {
+        rows[i] = new byte[width];
+      }
+      this.mask = width - 1;
+      this.sampleSize = 10 * size;
+    }
+
+    int frequency(Object key) {
+      int hash = spread(key.hashCode());
+      int frequency = MAX_COUNT;
+      for (int i = 0; i < rows.length; i++) {
+        frequency = Math.min(frequency, rows[i][index(hash, i)]);
+      }
+      return frequency;
+    }
+
+    void increment(Object key) {
+      int hash = spread(key.hashCode());
+      boolean added = false;
+      for (int i = 0; i < rows.length; i++) {
+        int index = index(hash, i);
+        if (rows[i][index] < MAX_COUNT) {
+          rows[i][index]++;
+          added = true;
+        }
+      }
+      if (added && ++additions >= sampleSize) {
+        reset();
+      }
+    }
+
+    /**
+     * Halves every counter so that old popularity fades
+     */
+    private void reset() {
+      for (byte[] row : rows) {
+        for (int i = 0; i < row.length; i++) {
+          row[i] = (byte) (row[i] >>> 1);
+        }
+      }
+      additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+      int h = hash * SEEDS[row];
+      h += h >>> 16;
+      return h & mask;
+    }
+
+    private static int spread(int h) {
+      h ^= h >>> 17;
+      h *= 0xED5AD4BB;
+      h ^= h >>> 11;
+      return h;
+    }
+  }
+
+}
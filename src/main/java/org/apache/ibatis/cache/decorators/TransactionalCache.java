@@ -15,8 +15,10 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -45,14 +47,16 @@ public class TransactionalCache implements Cache {
   private final Cache delegate;
   //在提交时清除
   private boolean clearOnCommit;
-  private final Map<Object, Object> entriesToAddOnCommit;
-  private final Set<Object> entriesMissedInCache;
+  //首次使用时创建，之后在事务间复用
+  private Map<Object, Object> entriesToAddOnCommit;
+  private Set<Object> entriesMissedInCache;
+  //按表缓存时，条目读取的表及提交时要清除的表
+  private Map<Object, Set<String>> tablesOfEntries;
+  private Set<String> tablesToInvalidateOnCommit;
 
   public TransactionalCache(Cache delegate) {
     this.delegate = delegate;
     this.clearOnCommit = false;
-    this.entriesToAddOnCommit = new HashMap<Object, Object>();
-    this.entriesMissedInCache = new HashSet<Object>();
   }
 
   @Override
@@ -71,11 +75,17 @@ public class TransactionalCache implements Cache {
     Object object = delegate.getObject(key);
     if (object == null) {
         //在缓存中丢失的Key
+      if (entriesMissedInCache == null) {
+        entriesMissedInCache = new HashSet<Object>();
+      }
       entriesMissedInCache.add(key);
     }
     // issue #146
     if (clearOnCommit) {
       return null;
+    } else if (object != null && tablesToInvalidateOnCommit != null
+        && ((TableInvalidatingCache) delegate).dependsOn(key, tablesToInvalidateOnCommit)) {
+      return null;
     } else {
       return object;
     }
@@ -89,9 +99,45 @@ public class TransactionalCache implements Cache {
   @Override
   public void putObject(Object key, Object object) {
       ///实体被提交时缓存到
+    if (entriesToAddOnCommit == null) {
+      entriesToAddOnCommit = new HashMap<Object, Object>();
+    }
     entriesToAddOnCommit.put(key, object);
   }
 
+  /**
+   * @param tables the tables the object was read from, null if not known
+   * @since 3.4.6
+   */
+  public void putObject(Object key, Object object, Set<String> tables) {
+    putObject(key, object);
+    if (tables != null) {
+      if (tablesOfEntries == null) {
+        tablesOfEntries = new HashMap<Object, Set<String>>();
+      }
+      tablesOfEntries.put(key, tables);
+    }
+  }
+
+  /**
+   * Puts the object straight into the cache, releasing the lock a blocking cache took on the miss, unless this
+   * transaction has already flushed the cache. Only safe when the transaction has not written anything, as the
+   * object then reflects committed data and stays valid even if the transaction is rolled back.
+   *
+   * @param tables the tables the object was read from, null if not known
+   * @since 3.4.6
+   */
+  public void putObjectThrough(Object key, Object object, Set<String> tables) {
+    if (clearOnCommit || tablesToInvalidateOnCommit != null) {
+      putObject(key, object, tables);
+      return;
+    }
+    putInDelegate(key, object, tables);
+    if (entriesMissedInCache != null) {
+      entriesMissedInCache.remove(key);
+    }
+  }
+
   @Override
   public Object removeObject(Object key) {
     return null;
@@ -100,7 +146,34 @@ public class TransactionalCache implements Cache {
   @Override
   public void clear() {
     clearOnCommit = true;
-    entriesToAddOnCommit.clear();
+    if (entriesToAddOnCommit != null) {
+      entriesToAddOnCommit.clear();
+    }
+  }
+
+  /**
+   * Flushes, on commit, the entries read from the tables. Clears the whole cache if it does not track tables.
+   *
+   * @since 3.4.6
+   */
+  public void invalidate(Set<String> tables) {
+    if (!(delegate instanceof TableInvalidatingCache)) {
+      clear();
+      return;
+    }
+    if (tablesToInvalidateOnCommit == null) {
+      tablesToInvalidateOnCommit = new HashSet<String>();
+    }
+    tablesToInvalidateOnCommit.addAll(tables);
+    if (entriesToAddOnCommit == null) {
+      return;
+    }
+    for (Iterator<Object> it = entriesToAddOnCommit.keySet().iterator(); it.hasNext();) {
+      Set<String> entryTables = tablesOfEntries == null ? null : tablesOfEntries.get(it.next());
+      if (entryTables == null || !Collections.disjoint(entryTables, tables)) {
+        it.remove();
+      }
+    }
   }
 
     /**
@@ -109,6 +182,8 @@ public class TransactionalCache implements Cache {
   public void commit() {
     if (clearOnCommit) {
       delegate.clear();
+    } else if (tablesToInvalidateOnCommit != null) {
+      ((TableInvalidatingCache) delegate).invalidate(tablesToInvalidateOnCommit);
     }
     //刷新未确定的数据
     flushPendingEntries();
@@ -123,8 +198,14 @@ public class TransactionalCache implements Cache {
 
   private void reset() {
     clearOnCommit = false;
-    entriesToAddOnCommit.clear();
-    entriesMissedInCache.clear();
+    if (entriesToAddOnCommit != null && !entriesToAddOnCommit.isEmpty()) {
+      entriesToAddOnCommit.clear();
+    }
+    if (entriesMissedInCache != null && !entriesMissedInCache.isEmpty()) {
+      entriesMissedInCache.clear();
+    }
+    tablesOfEntries = null;
+    tablesToInvalidateOnCommit = null;
   }
 
     /**
@@ -132,18 +213,33 @@ public class TransactionalCache implements Cache {
      */
   private void flushPendingEntries() {
       //在提交时缓存的实体，
-    for (Map.Entry<Object, Object> entry : entriesToAddOnCommit.entrySet()) {
-      delegate.putObject(entry.getKey(), entry.getValue());
+    if (entriesToAddOnCommit != null) {
+      for (Map.Entry<Object, Object> entry : entriesToAddOnCommit.entrySet()) {
+        putInDelegate(entry.getKey(), entry.getValue(), tablesOfEntries == null ? null : tablesOfEntries.get(entry.getKey()));
+      }
     }
     //在Cache中miss的实体在entriesToAddOnCommit不存在，则需要吧<key，null>缓存起来
-    for (Object entry : entriesMissedInCache) {
-      if (!entriesToAddOnCommit.containsKey(entry)) {
-        delegate.putObject(entry, null);
+    if (entriesMissedInCache != null) {
+      for (Object entry : entriesMissedInCache) {
+        if (entriesToAddOnCommit == null || !entriesToAddOnCommit.containsKey(entry)) {
+          delegate.putObject(entry, null);
+        }
       }
     }
   }
 
+  private void putInDelegate(Object key, Object object, Set<String> tables) {
+    if (tables != null && delegate instanceof TableInvalidatingCache) {
+      ((TableInvalidatingCache) delegate).putObject(key, object, tables);
+    } else {
+      delegate.putObject(key, object);
+    }
+  }
+
   private void unlockMissedEntries() {
+    if (entriesMissedInCache == null) {
+      return;
+    }
     for (Object entry : entriesMissedInCache) {
       try {
         delegate.removeObject(entry);
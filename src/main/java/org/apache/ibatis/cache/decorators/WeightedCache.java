@@ -0,0 +1,166 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.EvictingCache;
+import org.apache.ibatis.cache.EvictionListener;
+import org.apache.ibatis.cache.ObjectSizeWeigher;
+import org.apache.ibatis.cache.Weigher;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * Lru cache decorator bounded by the total weight of its values instead of their count.
+ * <p>
+ * The weight of a value comes from a {@link Weigher}, by default an {@link ObjectSizeWeigher}, so the bound is an
+ * approximate memory budget in bytes. In a read-write cache the values are serialized before they get here and weigh
+ * their serialized length. A value heavier than the whole budget is not cached.
+ *
+ * @since 3.4.6
+ */
+public class WeightedCache implements Cache, EvictingCache {
+
+  private final Cache delegate;
+  private final Map<Object, Long> weights = new LinkedHashMap<Object, Long>(16, .75F, true);
+  private Weigher weigher = new ObjectSizeWeigher();
+  private long maxWeight = 64L * 1024 * 1024;
+  private volatile long weight;
+  private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<EvictionListener>();
+
+  public WeightedCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void addEvictionListener(EvictionListener listener) {
+    evictionListeners.add(listener);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  /**
+   * The current total weight of the cached values
+   */
+  public long getWeight() {
+    return weight;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public void setMaxWeight(long maxWeight) {
+    this.maxWeight = maxWeight;
+  }
+
+  public void setWeigher(Weigher weigher) {
+    this.weigher = weigher;
+  }
+
+  /**
+   * Sets the weigher by class name, so it can be configured as a cache property
+   *
+   * @param weigherClass - the fully qualified name of a {@link Weigher} with a no-argument constructor
+   */
+  public void setWeigherClass(String weigherClass) {
+    try {
+      this.weigher = (Weigher) Resources.classForName(weigherClass).newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error creating weigher " + weigherClass + " for cache " + getId() + ".  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long valueWeight = weigher.weigh(value);
+    if (valueWeight > maxWeight) {
+      removeObject(key);
+      return;
+    }
+    delegate.putObject(key, value);
+    Long previous = weights.put(key, valueWeight);
+    weight += valueWeight - (previous == null ? 0 : previous);
+    evict(key);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    // touch
+    weights.get(key);
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Long removed = weights.remove(key);
+    if (removed != null) {
+      weight -= removed;
+    }
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    weights.clear();
+    weight = 0;
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  /**
+   * Removes the least recently used values until the total weight fits, never the one just put
+   */
+  private void evict(Object keptKey) {
+    Iterator<Map.Entry<Object, Long>> it = weights.entrySet().iterator();
+    while (weight > maxWeight && it.hasNext()) {
+      Map.Entry<Object, Long> eldest = it.next();
+      if (eldest.getKey().equals(keptKey)) {
+        continue;
+      }
+      it.remove();
+      weight -= eldest.getValue();
+      delegate.removeObject(eldest.getKey());
+      evicted(eldest.getKey());
+    }
+  }
+
+  private void evicted(Object key) {
+    for (EvictionListener listener : evictionListeners) {
+      listener.onEviction(key);
+    }
+  }
+
+}
@@ -0,0 +1,547 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.EvictingCache;
+import org.apache.ibatis.cache.EvictionListener;
+import org.apache.ibatis.cache.JavaCacheSerializer;
+import org.apache.ibatis.cache.ThreadSafeCache;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * A cache that keeps its values out of the Java heap, so that a large cache adds nothing to garbage collection
+ * pauses. Values are serialized into slabs of direct memory, or of a memory-mapped file when the file property is
+ * set. Only the keys and a small index entry per value stay on the heap.
+ * <p>
+ * Keys are spread over segments, each with its own lock and slabs. A segment fills its slabs in turn. When all are
+ * full the oldest one is reclaimed: the entries read since they were written are moved to its start, up to half of
+ * it, and the others are evicted. This approximates Lru without any bookkeeping on reads. The capacity property
+ * limits the bytes and the size attribute the number of entries. Values larger than a slab are not cached.
+ * Evicted keys are reported to the {@link EvictionListener}s once the segment is unlocked.
+ * <p>
+ * Every read returns a new copy, even for a read-only cache. Byte arrays, which is what a read-write cache hands
+ * down, are stored as they are.
+ *
+ * @since 3.4.6
+ */
+public class OffHeapCache implements Cache, ThreadSafeCache, EvictingCache {
+
+  private static final int MIN_SLAB_SIZE = 1024;
+
+  private final String id;
+  private long capacity = 64L * 1024 * 1024;
+  private int slabSize = 4 * 1024 * 1024;
+  private int segmentCount = 4;
+  private volatile int size = Integer.MAX_VALUE;
+  private String file;
+  private CacheSerializer serializer = new JavaCacheSerializer();
+  private volatile Segment[] segments;
+  private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<EvictionListener>();
+
+  public OffHeapCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @param capacity - the bytes of memory, or of the file, the values may take
+   */
+  public synchronized void setCapacity(long capacity) {
+    this.capacity = capacity;
+    this.segments = null;
+  }
+
+  public synchronized void setSlabSize(int slabSize) {
+    this.slabSize = slabSize;
+    this.segments = null;
+  }
+
+  /**
+   * @param segments - the number of independently locked parts, rounded down to a power of two
+   */
+  public synchronized void setSegments(int segments) {
+    this.segmentCount = segments;
+    this.segments = null;
+  }
+
+  /**
+   * @param file - a file to memory-map instead of allocating direct memory. Its content does not outlive the cache.
+   */
+  public synchronized void setFile(String file) {
+    this.file = file;
+    this.segments = null;
+  }
+
+  /**
+   * @param size - the maximum number of entries
+   */
+  public void setSize(int size) {
+    this.size = size;
+  }
+
+  /**
+   * @param serializerClass - the fully qualified name of the {@link CacheSerializer} of the values
+   */
+  public void setSerializerClass(String serializerClass) {
+    try {
+      this.serializer = (CacheSerializer) Resources.classForName(serializerClass).newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error creating serializer " + serializerClass + " for cache " + id + ".  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public void addEvictionListener(EvictionListener listener) {
+    evictionListeners.add(listener);
+  }
+
+  @Override
+  public int getSize() {
+    int count = 0;
+    for (Segment segment : segments()) {
+      count += segment.size();
+    }
+    return count;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value == null) {
+      removeObject(key);
+    } else if (value instanceof byte[]) {
+      notifyEvictions(segmentFor(key).put(key, (byte[]) value, true));
+    } else if (value instanceof Serializable) {
+      notifyEvictions(segmentFor(key).put(key, serialize((Serializable) value), false));
+    } else {
+      throw new CacheException("Cache " + id + " can only hold serializable objects off heap: " + value);
+    }
+  }
+
+  private void notifyEvictions(List<Object> evictedKeys) {
+    if (evictedKeys == null) {
+      return;
+    }
+    for (Object evictedKey : evictedKeys) {
+      for (EvictionListener listener : evictionListeners) {
+        listener.onEviction(evictedKey);
+      }
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return segmentFor(key).get(key);
+  }
+
+  /**
+   * @return null, the removed value is not read back
+   */
+  @Override
+  public Object removeObject(Object key) {
+    segmentFor(key).remove(key);
+    return null;
+  }
+
+  @Override
+  public void clear() {
+    for (Segment segment : segments()) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private Segment segmentFor(Object key) {
+    Segment[] current = segments();
+    int hash = key.hashCode();
+    return current[(hash ^ (hash >>> 16)) & (current.length - 1)];
+  }
+
+  private Segment[] segments() {
+    Segment[] current = segments;
+    if (current == null) {
+      synchronized (this) {
+        current = segments;
+        if (current == null) {
+          current = allocate();
+          segments = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  private Segment[] allocate() {
+    int count = Integer.highestOneBit(Math.max(1, segmentCount));
+    long segmentCapacity = capacity / count;
+    int slabBytes = (int) Math.max(MIN_SLAB_SIZE, Math.min(slabSize, segmentCapacity / 2));
+    int slabsPerSegment = (int) Math.max(2, segmentCapacity / slabBytes);
+    ByteBuffer[] buffers = file == null ? allocateDirect(count * slabsPerSegment, slabBytes)
+        : map(count * slabsPerSegment, slabBytes);
+    Segment[] allocated = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      Slab[] slabs = new Slab[slabsPerSegment];
+      for (int j = 0; j < slabsPerSegment; j++) {
+        slabs[j] = new Slab(buffers[i * slabsPerSegment + j]);
+      }
+      allocated[i] = new Segment(slabs, count);
+    }
+    return allocated;
+  }
+
+  private static ByteBuffer[] allocateDirect(int count, int slabBytes) {
+    ByteBuffer[] buffers = new ByteBuffer[count];
+    for (int i = 0; i < count; i++) {
+      buffers[i] = ByteBuffer.allocateDirect(slabBytes);
+    }
+    return buffers;
+  }
+
+  private ByteBuffer[] map(int count, int slabBytes) {
+    ByteBuffer[] buffers = new ByteBuffer[count];
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.setLength((long) count * slabBytes);
+        FileChannel channel = raf.getChannel();
+        for (int i = 0; i < count; i++) {
+          // mappings stay valid after the channel is closed
+          buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * slabBytes, slabBytes);
+        }
+      } finally {
+        raf.close();
+      }
+    } catch (Exception e) {
+      throw new CacheException("Error mapping file " + file + " for cache " + id + ".  Cause: " + e, e);
+    }
+    return buffers;
+  }
+
+  private byte[] serialize(Serializable value) {
+    try {
+      return serializer.serialize(value);
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    }
+  }
+
+  private Object deserialize(byte[] data) {
+    try {
+      return serializer.deserialize(data);
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+  private class Segment {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Object, Entry> index = new HashMap<Object, Entry>();
+    private final Slab[] slabs;
+    private final Deque<Slab> free = new ArrayDeque<Slab>();
+    private final Deque<Slab> full = new ArrayDeque<Slab>();
+    private final byte[] scratch = new byte[8192];
+    // keys evicted by the put holding the lock
+    private final List<Object> evictedKeys = new ArrayList<Object>();
+    // the segments sharing the size limit
+    private final int segmentsInCache;
+    private Slab current;
+
+    Segment(Slab[] slabs, int segmentsInCache) {
+      this.slabs = slabs;
+      this.segmentsInCache = segmentsInCache;
+      reset();
+    }
+
+    int size() {
+      lock.readLock().lock();
+      try {
+        return index.size();
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    Object get(Object key) {
+      byte[] data;
+      boolean raw;
+      lock.readLock().lock();
+      try {
+        Entry entry = index.get(key);
+        if (entry == null) {
+          return null;
+        }
+        entry.accessed = true;
+        data = new byte[entry.length];
+        ByteBuffer view = entry.slab.buffer.duplicate();
+        view.position(entry.offset);
+        view.get(data);
+        raw = entry.raw;
+      } finally {
+        lock.readLock().unlock();
+      }
+      return raw ? data : deserialize(data);
+    }
+
+    /**
+     * @return the keys evicted to make room, or null
+     */
+    List<Object> put(Object key, byte[] data, boolean raw) {
+      lock.writeLock().lock();
+      try {
+        unlink(key);
+        int slabCapacity = current.buffer.capacity();
+        if (data.length > slabCapacity) {
+          return null;
+        }
+        if (current.position + data.length > slabCapacity) {
+          advance(data.length);
+        }
+        Entry entry = new Entry(key, current, current.position, data.length, raw);
+        ByteBuffer view = current.buffer.duplicate();
+        view.position(current.position);
+        view.put(data);
+        current.position += data.length;
+        current.entries.add(entry);
+        index.put(key, entry);
+        int maxEntries = Math.max(1, (size - 1) / segmentsInCache + 1);
+        while (index.size() > maxEntries) {
+          evictOldestEntry();
+        }
+        if (evictedKeys.isEmpty()) {
+          return null;
+        }
+        List<Object> evicted = new ArrayList<Object>(evictedKeys);
+        evictedKeys.clear();
+        return evicted;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    void remove(Object key) {
+      lock.writeLock().lock();
+      try {
+        unlink(key);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    void clear() {
+      lock.writeLock().lock();
+      try {
+        index.clear();
+        reset();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    private void unlink(Object key) {
+      Entry entry = index.remove(key);
+      if (entry != null) {
+        entry.removed = true;
+      }
+    }
+
+    private void reset() {
+      free.clear();
+      full.clear();
+      for (Slab slab : slabs) {
+        slab.reset();
+        free.add(slab);
+      }
+      current = free.poll();
+    }
+
+    /**
+     * Moves on to a free slab, or reclaims the oldest one
+     */
+    private void advance(int needed) {
+      full.add(current);
+      Slab next = free.poll();
+      if (next == null) {
+        next = full.poll();
+        compact(next, needed);
+      }
+      current = next;
+    }
+
+    /**
+     * Keeps the entries read since they were written, as long as they fill at most half of the slab
+     */
+    private void compact(Slab slab, int needed) {
+      int slabCapacity = slab.buffer.capacity();
+      int budget = Math.min(slabCapacity / 2, slabCapacity - needed);
+      List<Entry> survivors = new ArrayList<Entry>();
+      int position = 0;
+      for (Entry entry : slab.entries) {
+        if (entry.removed) {
+          continue;
+        }
+        if (entry.accessed && position + entry.length <= budget) {
+          move(slab.buffer, entry.offset, position, entry.length);
+          entry.offset = position;
+          entry.accessed = false;
+          position += entry.length;
+          survivors.add(entry);
+        } else {
+          evict(entry);
+        }
+      }
+      slab.reset();
+      slab.entries.addAll(survivors);
+      slab.position = position;
+    }
+
+    /**
+     * Copies bytes to a lower offset of the same buffer, in chunks read before they are overwritten
+     */
+    private void move(ByteBuffer buffer, int from, int to, int length) {
+      if (from == to) {
+        return;
+      }
+      ByteBuffer source = buffer.duplicate();
+      ByteBuffer target = buffer.duplicate();
+      source.position(from);
+      target.position(to);
+      int remaining = length;
+      while (remaining > 0) {
+        int chunk = Math.min(remaining, scratch.length);
+        source.get(scratch, 0, chunk);
+        target.put(scratch, 0, chunk);
+        remaining -= chunk;
+      }
+    }
+
+    /**
+     * Evicts the entry written first, for the entry count limit
+     */
+    private void evictOldestEntry() {
+      while (true) {
+        Slab oldest = full.isEmpty() ? current : full.peek();
+        while (oldest.evicted < oldest.entries.size()) {
+          Entry entry = oldest.entries.get(oldest.evicted++);
+          if (!entry.removed) {
+            evict(entry);
+            return;
+          }
+        }
+        if (oldest == current) {
+          return;
+        }
+        // nothing left alive in it
+        full.poll();
+        oldest.reset();
+        free.add(oldest);
+      }
+    }
+
+    private void evict(Entry entry) {
+      entry.removed = true;
+      index.remove(entry.key);
+      evictedKeys.add(entry.key);
+    }
+  }
+
+  private static class Slab {
+
+    private final ByteBuffer buffer;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private int position;
+    // entries before this one were evicted to honor the size
+    private int evicted;
+
+    Slab(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    void reset() {
+      entries.clear();
+      position = 0;
+      evicted = 0;
+    }
+  }
+
+  private static class Entry {
+
+    private final Object key;
+    private final Slab slab;
+    private final int length;
+    private final boolean raw;
+    private int offset;
+    private volatile boolean accessed;
+    private boolean removed;
+
+    Entry(Object key, Slab slab, int offset, int length, boolean raw) {
+      this.key = key;
+      this.slab = slab;
+      this.offset = offset;
+      this.length = length;
+      this.raw = raw;
+    }
+  }
+
+}
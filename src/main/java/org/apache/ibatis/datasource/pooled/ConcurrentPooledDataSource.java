@@ -0,0 +1,506 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * A lock-free variant of {@link PooledDataSource}.
+ * <p>
+ * Idle connections are kept in a lock-free deque and taken with a CAS, a thread first tries to reuse the
+ * connection it returned last, and threads that find the pool exhausted queue up in FIFO order and receive
+ * returned connections by direct handoff. It accepts the same properties as {@link PooledDataSource}.
+ */
+public class ConcurrentPooledDataSource extends PooledDataSource {
+
+  private static final Log log = LogFactory.getLog(ConcurrentPooledDataSource.class);
+
+  private final ConcurrentPoolState state = new ConcurrentPoolState(this);
+
+  private final ConcurrentLinkedDeque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<PooledConnection>();
+  private final Set<PooledConnection> activeConnections = Collections.newSetFromMap(new ConcurrentHashMap<PooledConnection, Boolean>());
+  private final ConcurrentLinkedQueue<PoolWaiter> waiters = new ConcurrentLinkedQueue<PoolWaiter>();
+  private final AtomicInteger waitingThreadCount = new AtomicInteger();
+  private final AtomicInteger idleConnectionCount = new AtomicInteger();
+  private final AtomicInteger totalConnectionCount = new AtomicInteger();
+  private final ThreadLocal<WeakReference<PooledConnection>> lastReturnedConnection = new ThreadLocal<WeakReference<PooledConnection>>();
+
+  public ConcurrentPooledDataSource() {
+    super();
+  }
+
+  public ConcurrentPooledDataSource(UnpooledDataSource dataSource) {
+    super(dataSource);
+  }
+
+  public ConcurrentPooledDataSource(String driver, String url, String username, String password) {
+    super(driver, url, username, password);
+  }
+
+  public ConcurrentPooledDataSource(String driver, String url, Properties driverProperties) {
+    super(driver, url, driverProperties);
+  }
+
+  public ConcurrentPooledDataSource(ClassLoader driverClassLoader, String driver, String url, String username, String password) {
+    super(driverClassLoader, driver, url, username, password);
+  }
+
+  public ConcurrentPooledDataSource(ClassLoader driverClassLoader, String driver, String url, Properties driverProperties) {
+    super(driverClassLoader, driver, url, driverProperties);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    ensureStarted();
+    return popConnection(dataSource.getUsername(), dataSource.getPassword()).getProxyConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    ensureStarted();
+    return popConnection(username, password).getProxyConnection();
+  }
+
+  @Override
+  public PoolState getPoolState() {
+    return state;
+  }
+
+  @Override
+  List<PooledConnection> getActiveConnections() {
+    return new ArrayList<PooledConnection>(activeConnections);
+  }
+
+  int getIdleConnectionCount() {
+    return idleConnectionCount.get();
+  }
+
+  int getActiveConnectionCount() {
+    return activeConnections.size();
+  }
+
+  int getWaitingThreadCount() {
+    return waitingThreadCount.get();
+  }
+
+  /*
+   * Closes all active and idle connections in the pool
+   */
+  @Override
+  public void forceCloseAll() {
+    expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
+    for (PooledConnection conn : activeConnections) {
+      if (conn.invalidateIfValid()) {
+        activeConnections.remove(conn);
+        closeConnection(conn);
+      }
+    }
+    PooledConnection conn;
+    while ((conn = idleConnections.pollFirst()) != null) {
+      if (conn.claim()) {
+        idleConnectionCount.decrementAndGet();
+        conn.invalidate();
+        closeConnection(conn);
+      }
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("ConcurrentPooledDataSource forcefully closed/removed all connections.");
+    }
+  }
+
+  @Override
+  protected void performMaintenance() {
+    for (PooledConnection conn : idleConnections) {
+      boolean retire = isRetired(conn)
+          || idleConnectionCount.get() > poolMaximumIdleConnections
+          || (poolMaximumIdleTime > 0 && idleConnectionCount.get() > poolMinimumIdleConnections
+              && conn.getTimeElapsedSinceLastUse() > poolMaximumIdleTime);
+      boolean ping = !retire && poolPingEnabled && isPingDue(conn);
+      if ((!retire && !ping) || !conn.claim()) {
+        continue;
+      }
+      idleConnectionCount.decrementAndGet();
+      idleConnections.removeFirstOccurrence(conn);
+      if (retire) {
+        conn.invalidate();
+        closeConnection(conn);
+        if (log.isDebugEnabled()) {
+          log.debug("Retired idle connection " + conn.getRealHashCode() + ".");
+        }
+      } else if (!pingConnection(conn)) {
+        state.badConnectionCounter.increment();
+        closeConnection(conn);
+      } else if (!recycleConnection(conn)) {
+        closeConnection(conn);
+      }
+    }
+    while (idleConnectionCount.get() < poolMinimumIdleConnections) {
+      PooledConnection conn;
+      try {
+        conn = openConnectionIfBelowLimit();
+      } catch (SQLException e) {
+        log.warn("Could not open a connection to fill the pool: " + e.getMessage());
+        break;
+      }
+      if (conn == null) {
+        break;
+      }
+      if (!recycleConnection(conn)) {
+        closeConnection(conn);
+        break;
+      }
+    }
+  }
+
+  @Override
+  protected void pushConnection(PooledConnection conn) throws SQLException {
+    if (!conn.invalidateIfValid()) {
+      // claimed as overdue by another thread or closed twice
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.badConnectionCounter.increment();
+      return;
+    }
+    activeConnections.remove(conn);
+    long checkoutTime = conn.getCheckoutTime();
+    state.accumulatedCheckoutTimeCounter.add(checkoutTime);
+    state.metrics.recordHold(checkoutTime);
+    conn.resetStatementCache();
+    if (!pingConnection(conn)) {
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.badConnectionCounter.increment();
+      closeConnection(conn);
+      return;
+    }
+    try {
+      if (!conn.getAutoCommit()) {
+        conn.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      closeConnection(conn);
+      throw e;
+    }
+    if (conn.getConnectionTypeCode() == expectedConnectionTypeCode && !isRetired(conn) && recycleConnection(conn)) {
+      if (log.isDebugEnabled()) {
+        log.debug("Returned connection " + conn.getRealHashCode() + " to pool.");
+      }
+    } else {
+      closeConnection(conn);
+      if (log.isDebugEnabled()) {
+        log.debug("Closed connection " + conn.getRealHashCode() + ".");
+      }
+    }
+  }
+
+  private PooledConnection popConnection(String username, String password) throws SQLException {
+    boolean countedWait = false;
+    PooledConnection conn = null;
+    long t = System.currentTimeMillis();
+    long startNanos = System.nanoTime();
+    int localBadConnectionCount = 0;
+
+    while (conn == null) {
+      conn = pollIdleConnection();
+      if (conn == null) {
+        conn = openConnectionIfBelowLimit();
+      }
+      if (conn == null) {
+        conn = claimOverdueConnection();
+      }
+      if (conn == null) {
+        if (!countedWait) {
+          state.hadToWaitCounter.increment();
+          countedWait = true;
+        }
+        long timeToWait = poolTimeToWait;
+        if (poolMaximumWaitTime > 0) {
+          timeToWait = Math.min(timeToWait, t + poolMaximumWaitTime - System.currentTimeMillis());
+        }
+        if (log.isDebugEnabled()) {
+          log.debug("Waiting as long as " + timeToWait + " milliseconds for connection.");
+        }
+        long wt = System.currentTimeMillis();
+        try {
+          conn = awaitConnection(timeToWait);
+        } catch (InterruptedException e) {
+          break;
+        } finally {
+          state.accumulatedWaitTimeCounter.add(System.currentTimeMillis() - wt);
+        }
+        if (conn == null && poolMaximumWaitTime > 0 && System.currentTimeMillis() - t >= poolMaximumWaitTime) {
+          if (log.isDebugEnabled()) {
+            log.debug("ConcurrentPooledDataSource: Timed out waiting for a connection.");
+          }
+          state.metrics.recordTimeout();
+          throw new SQLException("ConcurrentPooledDataSource: Timed out after " + poolMaximumWaitTime + " milliseconds waiting for a connection.");
+        }
+      }
+      if (conn != null) {
+        if (conn.isValid()) {
+          try {
+            if (!conn.getAutoCommit()) {
+              conn.getRealConnection().rollback();
+            }
+          } catch (SQLException e) {
+            closeConnection(conn);
+            throw e;
+          }
+          conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+          conn.setCheckoutTimestamp(System.currentTimeMillis());
+          conn.setLastUsedTimestamp(System.currentTimeMillis());
+          activeConnections.add(conn);
+          state.requestCounter.increment();
+          state.accumulatedRequestTimeCounter.add(System.currentTimeMillis() - t);
+        } else {
+          if (log.isDebugEnabled()) {
+            log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
+          }
+          state.badConnectionCounter.increment();
+          localBadConnectionCount++;
+          closeConnection(conn);
+          conn = null;
+          if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
+            if (log.isDebugEnabled()) {
+              log.debug("ConcurrentPooledDataSource: Could not get a good connection to the database.");
+            }
+            throw new SQLException("ConcurrentPooledDataSource: Could not get a good connection to the database.");
+          }
+        }
+      }
+    }
+
+    if (conn == null) {
+      if (log.isDebugEnabled()) {
+        log.debug("ConcurrentPooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+      }
+      throw new SQLException("ConcurrentPooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+    }
+
+    recordCheckoutSite(conn);
+    state.metrics.recordCheckout(System.nanoTime() - startNanos);
+    return conn;
+  }
+
+  /**
+   * Takes an idle connection, preferring the one this thread returned last.
+   */
+  private PooledConnection pollIdleConnection() {
+    WeakReference<PooledConnection> lastReturned = lastReturnedConnection.get();
+    if (lastReturned != null) {
+      PooledConnection conn = lastReturned.get();
+      if (conn != null && conn.claim()) {
+        idleConnectionCount.decrementAndGet();
+        // the claimed wrapper is the only one in the deque that wraps this real connection
+        idleConnections.removeFirstOccurrence(conn);
+        if (log.isDebugEnabled()) {
+          log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
+        }
+        return conn;
+      }
+    }
+    PooledConnection conn;
+    while ((conn = idleConnections.pollFirst()) != null) {
+      // wrappers already claimed through a thread-local fast path are simply dropped
+      if (conn.claim()) {
+        idleConnectionCount.decrementAndGet();
+        if (log.isDebugEnabled()) {
+          log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
+        }
+        return conn;
+      }
+    }
+    return null;
+  }
+
+  private PooledConnection openConnectionIfBelowLimit() throws SQLException {
+    for (;;) {
+      int total = totalConnectionCount.get();
+      if (total >= poolMaximumActiveConnections) {
+        return null;
+      }
+      if (totalConnectionCount.compareAndSet(total, total + 1)) {
+        break;
+      }
+    }
+    boolean opened = false;
+    try {
+      PooledConnection conn = new PooledConnection(dataSource.getConnection(), this);
+      conn.claim();
+      opened = true;
+      if (log.isDebugEnabled()) {
+        log.debug("Created connection " + conn.getRealHashCode() + ".");
+      }
+      return conn;
+    } finally {
+      if (!opened) {
+        totalConnectionCount.decrementAndGet();
+      }
+    }
+  }
+
+  private PooledConnection claimOverdueConnection() {
+    PooledConnection oldestActiveConnection = null;
+    for (PooledConnection candidate : activeConnections) {
+      if (oldestActiveConnection == null || candidate.getCheckoutTimestamp() < oldestActiveConnection.getCheckoutTimestamp()) {
+        oldestActiveConnection = candidate;
+      }
+    }
+    if (oldestActiveConnection == null) {
+      return null;
+    }
+    long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+    if (longestCheckoutTime <= poolMaximumCheckoutTime || !oldestActiveConnection.invalidateIfValid()) {
+      return null;
+    }
+    activeConnections.remove(oldestActiveConnection);
+    state.claimedOverdueConnectionCounter.increment();
+    state.accumulatedCheckoutTimeOfOverdueConnectionsCounter.add(longestCheckoutTime);
+    state.accumulatedCheckoutTimeCounter.add(longestCheckoutTime);
+    oldestActiveConnection.resetStatementCache();
+    try {
+      if (!oldestActiveConnection.getAutoCommit()) {
+        oldestActiveConnection.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      // the validity check in popConnection will discard it
+      log.debug("Bad connection. Could not roll back");
+    }
+    PooledConnection conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
+    conn.claim();
+    conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
+    conn.setStatementCache(oldestActiveConnection.getStatementCache());
+    conn.setConnectionState(oldestActiveConnection.getConnectionState());
+    conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
+    if (log.isDebugEnabled()) {
+      log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
+    }
+    return conn;
+  }
+
+  /**
+   * Queues the current thread and waits for a returned connection to be handed over.
+   *
+   * @return the connection, or null if none was handed over within the given time
+   */
+  private PooledConnection awaitConnection(long timeToWait) throws SQLException, InterruptedException {
+    if (waitingThreadCount.incrementAndGet() > poolMaximumWaitingThreads && poolMaximumWaitingThreads > 0) {
+      int waiting = waitingThreadCount.decrementAndGet();
+      if (log.isDebugEnabled()) {
+        log.debug("ConcurrentPooledDataSource: Too many threads waiting for a connection.");
+      }
+      state.metrics.recordRejection();
+      throw new SQLException("ConcurrentPooledDataSource: Too many threads (" + waiting + ") waiting for a connection.");
+    }
+    PoolWaiter waiter = new PoolWaiter();
+    try {
+      waiters.offer(waiter);
+      // a connection may have been returned before this thread was queued
+      PooledConnection idle = pollIdleConnection();
+      if (idle != null) {
+        if (waiter.cancel()) {
+          return idle;
+        }
+        // both got an idle one and was handed one, give one of them back
+        if (!recycleConnection(idle)) {
+          closeConnection(idle);
+        }
+        return waiter.getConnection();
+      }
+      return waiter.await(timeToWait);
+    } finally {
+      if (waiter.getConnection() == null) {
+        waiters.remove(waiter);
+      }
+      waitingThreadCount.decrementAndGet();
+    }
+  }
+
+  /**
+   * Hands the connection to the oldest waiting thread or puts it back into the idle deque.
+   *
+   * @return false if nobody is waiting and the idle deque is full
+   */
+  private boolean recycleConnection(PooledConnection conn) {
+    for (;;) {
+      PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
+      newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
+      newConn.setStatementCache(conn.getStatementCache());
+      newConn.setConnectionState(conn.getConnectionState());
+      newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+      newConn.setLastValidatedTimestamp(conn.getLastValidatedTimestamp());
+      if (handOff(newConn)) {
+        return true;
+      }
+      if (idleConnectionCount.incrementAndGet() > poolMaximumIdleConnections) {
+        idleConnectionCount.decrementAndGet();
+        return false;
+      }
+      idleConnections.offerFirst(newConn);
+      lastReturnedConnection.set(new WeakReference<PooledConnection>(newConn));
+      // a thread may have queued up after handOff looked at the queue and before the connection became idle
+      if (waiters.isEmpty() || !newConn.claim()) {
+        return true;
+      }
+      idleConnectionCount.decrementAndGet();
+      idleConnections.removeFirstOccurrence(newConn);
+      conn = newConn;
+    }
+  }
+
+  private boolean handOff(PooledConnection conn) {
+    PoolWaiter waiter;
+    while ((waiter = waiters.poll()) != null) {
+      if (waiter.offer(conn)) {
+        conn.claim();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void closeConnection(PooledConnection conn) {
+    totalConnectionCount.decrementAndGet();
+    conn.clearStatementCache();
+    try {
+      Connection realConn = conn.getRealConnection();
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
+}
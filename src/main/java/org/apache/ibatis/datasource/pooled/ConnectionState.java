@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * The last known auto-commit mode, transaction isolation, read-only flag and catalog of a physical connection.
+ * Like the statement cache it is handed from one {@link PooledConnection} wrapper to the next.
+ * <p>
+ * Getters are answered locally once the value is known, setters are skipped when the value would not change.
+ * Changes made behind the pool's back, e.g. through an unwrapped connection or a SQL SET statement,
+ * are not seen.
+ */
+class ConnectionState {
+
+  private static final Map<String, String> GETTERS = new HashMap<String, String>();
+  private static final Map<String, String> SETTERS = new HashMap<String, String>();
+
+  static {
+    GETTERS.put("getAutoCommit", "autoCommit");
+    GETTERS.put("getTransactionIsolation", "transactionIsolation");
+    GETTERS.put("isReadOnly", "readOnly");
+    GETTERS.put("getCatalog", "catalog");
+    SETTERS.put("setAutoCommit", "autoCommit");
+    SETTERS.put("setTransactionIsolation", "transactionIsolation");
+    SETTERS.put("setReadOnly", "readOnly");
+    SETTERS.put("setCatalog", "catalog");
+  }
+
+  private final Map<String, Object> knownValues = new HashMap<String, Object>();
+
+  static boolean isTracked(String methodName) {
+    return GETTERS.containsKey(methodName) || SETTERS.containsKey(methodName);
+  }
+
+  /**
+   * Answers or forwards a getter or setter of a tracked property
+   *
+   * @param realConnection - the physical connection
+   * @param method - the getter or setter
+   * @param args - the arguments
+   * @param metrics - where to count the calls that did not reach the driver
+   * @return the result of the call
+   */
+  synchronized Object invoke(Connection realConnection, Method method, Object[] args, PoolMetrics metrics) throws Throwable {
+    String methodName = method.getName();
+    String getterProperty = GETTERS.get(methodName);
+    if (getterProperty != null) {
+      if (knownValues.containsKey(getterProperty)) {
+        metrics.recordSavedRoundTrip();
+        return knownValues.get(getterProperty);
+      }
+      Object value = forward(realConnection, method, args);
+      knownValues.put(getterProperty, value);
+      return value;
+    }
+    String setterProperty = SETTERS.get(methodName);
+    Object desired = args[0];
+    if (knownValues.containsKey(setterProperty) && equal(knownValues.get(setterProperty), desired)) {
+      metrics.recordSavedRoundTrip();
+      return null;
+    }
+    knownValues.remove(setterProperty);
+    forward(realConnection, method, args);
+    // drivers may treat read-only and catalog as hints, so those are read back on the next get
+    if ("autoCommit".equals(setterProperty) || "transactionIsolation".equals(setterProperty)) {
+      knownValues.put(setterProperty, desired);
+    }
+    return null;
+  }
+
+  /**
+   * The auto-commit mode, read from the driver only if it is not known
+   */
+  synchronized boolean getAutoCommit(Connection realConnection, PoolMetrics metrics) throws SQLException {
+    Boolean autoCommit = (Boolean) knownValues.get("autoCommit");
+    if (autoCommit != null) {
+      metrics.recordSavedRoundTrip();
+      return autoCommit;
+    }
+    autoCommit = realConnection.getAutoCommit();
+    knownValues.put("autoCommit", autoCommit);
+    return autoCommit;
+  }
+
+  private static Object forward(Connection realConnection, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(realConnection, args);
+    } catch (Throwable t) {
+      throw ExceptionUtil.unwrapThrowable(t);
+    }
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+}
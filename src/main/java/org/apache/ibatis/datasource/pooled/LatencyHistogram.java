@@ -0,0 +1,175 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with power-of-two buckets in microseconds.
+ * Recording a value never blocks; percentiles are estimated from a {@link Snapshot} as the upper bound
+ * of the bucket the percentile falls into.
+ */
+public class LatencyHistogram {
+
+  /**
+   * Bucket 0 holds values below 1us, bucket i holds values in [2^(i-1), 2^i) microseconds.
+   * The last bucket also takes every larger value (2^38us is more than three days).
+   */
+  static final int BUCKET_COUNT = 40;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  public LatencyHistogram() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records a latency
+   *
+   * @param micros - the latency in microseconds
+   */
+  public void record(long micros) {
+    long value = micros < 0 ? 0 : micros;
+    int bucket = Math.min(64 - Long.numberOfLeadingZeros(value), BUCKET_COUNT - 1);
+    buckets[bucket].increment();
+    count.increment();
+    total.add(value);
+    long currentMax = max.get();
+    while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+      currentMax = max.get();
+    }
+  }
+
+  public void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    count.reset();
+    total.reset();
+    max.set(0);
+  }
+
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = buckets[i].sum();
+    }
+    return new Snapshot(counts, total.sum(), max.get());
+  }
+
+  /**
+   * An immutable copy of the histogram. Since recording is not atomic across buckets the copy taken
+   * while values are being recorded may be off by the values in flight.
+   */
+  public static class Snapshot {
+
+    private final long[] bucketCounts;
+    private final long count;
+    private final long total;
+    private final long max;
+
+    Snapshot(long[] bucketCounts, long total, long max) {
+      long sum = 0;
+      for (long bucketCount : bucketCounts) {
+        sum += bucketCount;
+      }
+      this.bucketCounts = bucketCounts;
+      this.count = sum;
+      this.total = total;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getTotal() {
+      return total;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public long getMean() {
+      return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * Estimates a percentile
+     *
+     * @param percentile - between 0 and 100
+     * @return the upper bound in microseconds of the bucket holding the percentile, never more than the maximum
+     */
+    public long getPercentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0d), 100d) / 100d);
+      long seen = 0;
+      for (int i = 0; i < bucketCounts.length; i++) {
+        seen += bucketCounts[i];
+        if (seen >= rank && bucketCounts[i] > 0) {
+          return Math.min(getBucketUpperBound(i), max);
+        }
+      }
+      return max;
+    }
+
+    public long get50thPercentile() {
+      return getPercentile(50);
+    }
+
+    public long get90thPercentile() {
+      return getPercentile(90);
+    }
+
+    public long get99thPercentile() {
+      return getPercentile(99);
+    }
+
+    public long get999thPercentile() {
+      return getPercentile(99.9);
+    }
+
+    /**
+     * @return the number of values per bucket, see {@link #getBucketUpperBound(int)}
+     */
+    public long[] getBucketCounts() {
+      return bucketCounts.clone();
+    }
+
+    /**
+     * @return the largest value in microseconds a bucket holds
+     */
+    public static long getBucketUpperBound(int bucket) {
+      return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    @Override
+    public String toString() {
+      return "count=" + count + ", mean=" + getMean() + "us, p50=" + get50thPercentile() + "us, p99="
+          + get99thPercentile() + "us, max=" + max + "us";
+    }
+  }
+
+}
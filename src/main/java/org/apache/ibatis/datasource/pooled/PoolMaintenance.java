@@ -0,0 +1,81 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Runs {@link PooledDataSource#performMaintenance()} and {@link PooledDataSource#detectLeaks()} periodically
+ * on a shared daemon thread.
+ * The task only holds a weak reference to the data source and cancels itself once the data source is gone.
+ */
+class PoolMaintenance implements Runnable {
+
+  private static final Log log = LogFactory.getLog(PoolMaintenance.class);
+
+  private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "mybatis-pool-maintenance");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final WeakReference<PooledDataSource> dataSource;
+  private volatile ScheduledFuture<?> future;
+
+  private PoolMaintenance(PooledDataSource dataSource) {
+    this.dataSource = new WeakReference<PooledDataSource>(dataSource);
+  }
+
+  static PoolMaintenance start(PooledDataSource dataSource, long interval) {
+    PoolMaintenance maintenance = new PoolMaintenance(dataSource);
+    maintenance.future = executor.scheduleWithFixedDelay(maintenance, 0, interval, TimeUnit.MILLISECONDS);
+    return maintenance;
+  }
+
+  void stop() {
+    ScheduledFuture<?> scheduled = future;
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+  }
+
+  @Override
+  public void run() {
+    PooledDataSource pool = dataSource.get();
+    if (pool == null) {
+      stop();
+      return;
+    }
+    try {
+      pool.performMaintenance();
+      pool.detectLeaks();
+    } catch (Exception e) {
+      log.warn("Pool maintenance failed: " + e.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checkout latency, hold time and failure counters of a pool. Everything is recorded into striped
+ * counters outside of the pool lock, so reading or recording the metrics never blocks a checkout.
+ *
+ * @since 3.4.6
+ */
+public class PoolMetrics {
+
+  private final LatencyHistogram checkoutTime = new LatencyHistogram();
+  private final LatencyHistogram holdTime = new LatencyHistogram();
+  private final LongAdder timeoutCount = new LongAdder();
+  private final LongAdder rejectedCount = new LongAdder();
+  private final LongAdder leakCount = new LongAdder();
+  private final LongAdder savedRoundTripCount = new LongAdder();
+
+  /**
+   * Records a successful checkout
+   *
+   * @param nanos - the time from the request to getting the connection, in nanoseconds
+   */
+  public void recordCheckout(long nanos) {
+    checkoutTime.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
+  /**
+   * Records the return of a connection
+   *
+   * @param millis - the time the connection was checked out, in milliseconds
+   */
+  public void recordHold(long millis) {
+    holdTime.record(TimeUnit.MILLISECONDS.toMicros(millis));
+  }
+
+  public void recordTimeout() {
+    timeoutCount.increment();
+  }
+
+  public void recordRejection() {
+    rejectedCount.increment();
+  }
+
+  public void recordLeak() {
+    leakCount.increment();
+  }
+
+  public void recordSavedRoundTrip() {
+    savedRoundTripCount.increment();
+  }
+
+  /**
+   * @return the time it took to get a connection, in microseconds
+   */
+  public LatencyHistogram.Snapshot getCheckoutTime() {
+    return checkoutTime.snapshot();
+  }
+
+  /**
+   * @return the time connections were held by the application, in microseconds
+   */
+  public LatencyHistogram.Snapshot getHoldTime() {
+    return holdTime.snapshot();
+  }
+
+  /**
+   * @return the number of requests that gave up after poolMaximumWaitTime
+   */
+  public long getTimeoutCount() {
+    return timeoutCount.sum();
+  }
+
+  /**
+   * @return the number of requests refused because poolMaximumWaitingThreads were already waiting
+   */
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  /**
+   * @return the number of connections leak detection reported as held past poolLeakDetectionThreshold
+   */
+  public long getLeakCount() {
+    return leakCount.sum();
+  }
+
+  /**
+   * @return the number of connection state getters and setters answered without calling the driver
+   */
+  public long getSavedRoundTripCount() {
+    return savedRoundTripCount.sum();
+  }
+
+  public void reset() {
+    checkoutTime.reset();
+    holdTime.reset();
+    timeoutCount.reset();
+    rejectedCount.reset();
+    leakCount.reset();
+    savedRoundTripCount.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "checkoutTime[" + getCheckoutTime() + "], holdTime[" + getHoldTime() + "], timeouts=" + getTimeoutCount()
+        + ", rejected=" + getRejectedCount() + ", leaks=" + getLeakCount()
+        + ", savedRoundTrips=" + getSavedRoundTripCount();
+  }
+
+}
@@ -16,7 +16,9 @@
 package org.apache.ibatis.datasource.pooled;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
 
 /**
  * 连接池状态，配合PoolConnection使用
@@ -34,6 +36,10 @@ public class PoolState {
      * 活动队列,List
      */
   protected final List<PooledConnection> activeConnections = new ArrayList<PooledConnection>();
+  /**
+   * 等待连接的线程,FIFO
+   */
+  protected final Queue<PoolWaiter> waiters = new LinkedList<PoolWaiter>();
   /**请求计数**/
   protected long requestCount = 0;
   protected long accumulatedRequestTime = 0;
@@ -43,6 +49,10 @@ public class PoolState {
   protected long accumulatedWaitTime = 0;
   protected long hadToWaitCount = 0;
   protected long badConnectionCount = 0;
+  /**
+   * 无锁的延迟直方图和超时计数
+   */
+  protected final PoolMetrics metrics = new PoolMetrics();
 
   public PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
@@ -90,6 +100,17 @@ public class PoolState {
     return activeConnections.size();
   }
 
+  public synchronized int getWaitingThreadCount() {
+    return waiters.size();
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public PoolMetrics getMetrics() {
+    return metrics;
+  }
+
   @Override
   public synchronized String toString() {
     StringBuilder builder = new StringBuilder();
@@ -105,9 +126,20 @@ public class PoolState {
     builder.append("\n poolPingEnabled                ").append(dataSource.poolPingEnabled);
     builder.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     builder.append("\n poolPingConnectionsNotUsedFor  ").append(dataSource.poolPingConnectionsNotUsedFor);
+    builder.append("\n poolMaxWaitTime                ").append(dataSource.poolMaximumWaitTime);
+    builder.append("\n poolMaxWaitingThreads          ").append(dataSource.poolMaximumWaitingThreads);
+    builder.append("\n poolMinIdleConnections         ").append(dataSource.poolMinimumIdleConnections);
+    builder.append("\n poolMaxIdleTime                ").append(dataSource.poolMaximumIdleTime);
+    builder.append("\n poolMaxLifetime                ").append(dataSource.poolMaximumLifetime);
+    builder.append("\n poolMaintenanceInterval        ").append(dataSource.poolMaintenanceInterval);
+    builder.append("\n poolPreparedStatementCacheSize ").append(dataSource.poolPreparedStatementCacheSize);
+    builder.append("\n poolTrackConnectionState       ").append(dataSource.poolTrackConnectionState);
+    builder.append("\n poolLeakDetectionThreshold     ").append(dataSource.poolLeakDetectionThreshold);
+    builder.append("\n poolLeakDetectionSamplingRate  ").append(dataSource.poolLeakDetectionSamplingRate);
     builder.append("\n ---STATUS-----------------------------------------------------");
     builder.append("\n activeConnections              ").append(getActiveConnectionCount());
     builder.append("\n idleConnections                ").append(getIdleConnectionCount());
+    builder.append("\n waitingThreads                 ").append(getWaitingThreadCount());
     builder.append("\n requestCount                   ").append(getRequestCount());
     builder.append("\n averageRequestTime             ").append(getAverageRequestTime());
     builder.append("\n averageCheckoutTime            ").append(getAverageCheckoutTime());
@@ -116,6 +148,18 @@ public class PoolState {
     builder.append("\n hadToWait                      ").append(getHadToWaitCount());
     builder.append("\n averageWaitTime                ").append(getAverageWaitTime());
     builder.append("\n badConnectionCount             ").append(getBadConnectionCount());
+    builder.append("\n timeoutCount                   ").append(metrics.getTimeoutCount());
+    builder.append("\n rejectedCount                  ").append(metrics.getRejectedCount());
+    builder.append("\n checkoutTime                   ").append(metrics.getCheckoutTime());
+    builder.append("\n holdTime                       ").append(metrics.getHoldTime());
+    List<PooledConnection> leaks = dataSource.getSuspectedLeaks();
+    if (!leaks.isEmpty()) {
+      builder.append("\n ---SUSPECTED LEAKS--------------------------------------------");
+      for (PooledConnection conn : leaks) {
+        builder.append("\n connection ").append(conn.getRealHashCode()).append(" held ").append(conn.getCheckoutTime())
+            .append(" ms by ").append(conn.getCheckoutSite());
+      }
+    }
     builder.append("\n===============================================================");
     return builder.toString();
   }
@@ -0,0 +1,144 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Exposes the {@link PoolState} and {@link PoolMetrics} of a data source through JMX.
+ * Only a weak reference to the data source is kept, so a registered MBean does not keep an unused pool alive;
+ * once the data source is gone every attribute reads as zero.
+ */
+class PoolStatistics implements PooledDataSourceMXBean {
+
+  private static final PoolState NO_STATE = new PoolState(null);
+
+  private final WeakReference<PooledDataSource> dataSource;
+
+  PoolStatistics(PooledDataSource dataSource) {
+    this.dataSource = new WeakReference<PooledDataSource>(dataSource);
+  }
+
+  private PoolState state() {
+    PooledDataSource pool = dataSource.get();
+    return pool == null ? NO_STATE : pool.getPoolState();
+  }
+
+  private PoolMetrics metrics() {
+    return state().getMetrics();
+  }
+
+  @Override
+  public int getActiveConnectionCount() {
+    return state().getActiveConnectionCount();
+  }
+
+  @Override
+  public int getIdleConnectionCount() {
+    return state().getIdleConnectionCount();
+  }
+
+  @Override
+  public int getWaitingThreadCount() {
+    return state().getWaitingThreadCount();
+  }
+
+  @Override
+  public long getRequestCount() {
+    return state().getRequestCount();
+  }
+
+  @Override
+  public long getHadToWaitCount() {
+    return state().getHadToWaitCount();
+  }
+
+  @Override
+  public long getBadConnectionCount() {
+    return state().getBadConnectionCount();
+  }
+
+  @Override
+  public long getClaimedOverdueConnectionCount() {
+    return state().getClaimedOverdueConnectionCount();
+  }
+
+  @Override
+  public long getTimeoutCount() {
+    return metrics().getTimeoutCount();
+  }
+
+  @Override
+  public long getRejectedCount() {
+    return metrics().getRejectedCount();
+  }
+
+  @Override
+  public long getLeakCount() {
+    return metrics().getLeakCount();
+  }
+
+  @Override
+  public long getSavedRoundTripCount() {
+    return metrics().getSavedRoundTripCount();
+  }
+
+  @Override
+  public long getCheckoutTimeMean() {
+    return metrics().getCheckoutTime().getMean();
+  }
+
+  @Override
+  public long getCheckoutTime50thPercentile() {
+    return metrics().getCheckoutTime().get50thPercentile();
+  }
+
+  @Override
+  public long getCheckoutTime99thPercentile() {
+    return metrics().getCheckoutTime().get99thPercentile();
+  }
+
+  @Override
+  public long getCheckoutTimeMax() {
+    return metrics().getCheckoutTime().getMax();
+  }
+
+  @Override
+  public long getHoldTimeMean() {
+    return metrics().getHoldTime().getMean();
+  }
+
+  @Override
+  public long getHoldTime50thPercentile() {
+    return metrics().getHoldTime().get50thPercentile();
+  }
+
+  @Override
+  public long getHoldTime99thPercentile() {
+    return metrics().getHoldTime().get99thPercentile();
+  }
+
+  @Override
+  public long getHoldTimeMax() {
+    return metrics().getHoldTime().getMax();
+  }
+
+  @Override
+  public void resetMetrics() {
+    metrics().reset();
+  }
+
+}
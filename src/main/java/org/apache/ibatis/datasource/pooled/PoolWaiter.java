@@ -0,0 +1,101 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thread waiting in a pool's FIFO queue for a connection to be handed over.
+ * The slot is set exactly once, either to a handed over connection or to cancelled by the waiting thread itself.
+ */
+class PoolWaiter {
+
+  private static final Object CANCELLED = new Object();
+
+  private final Thread thread = Thread.currentThread();
+  private final AtomicReference<Object> slot = new AtomicReference<Object>();
+
+  /**
+   * Hands a connection over to the waiting thread
+   *
+   * @param conn - the connection
+   * @return True if the waiting thread now owns the connection, false if it stopped waiting
+   */
+  boolean offer(PooledConnection conn) {
+    if (slot.compareAndSet(null, conn)) {
+      LockSupport.unpark(thread);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Stops waiting
+   *
+   * @return True if no connection was handed over before
+   */
+  boolean cancel() {
+    return slot.compareAndSet(null, CANCELLED);
+  }
+
+  PooledConnection getConnection() {
+    Object value = slot.get();
+    return value == CANCELLED ? null : (PooledConnection) value;
+  }
+
+  /**
+   * Parks the waiting thread until a connection is handed over or the time is up, then stops waiting
+   *
+   * @param timeToWait - the time to wait in milliseconds
+   * @return the connection, or null if none was handed over in time
+   * @throws InterruptedException if interrupted before a connection was handed over
+   */
+  PooledConnection await(long timeToWait) throws InterruptedException {
+    park(timeToWait);
+    cancel();
+    return getConnection();
+  }
+
+  /**
+   * Parks the waiting thread until a connection is handed over or the time is up. Unless interrupted it keeps
+   * waiting afterwards, so it can park again without losing its place in the queue.
+   *
+   * @param timeToWait - the time to wait in milliseconds
+   * @return the connection, or null if none was handed over yet
+   * @throws InterruptedException if interrupted before a connection was handed over
+   */
+  PooledConnection park(long timeToWait) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeToWait);
+    while (slot.get() == null) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        break;
+      }
+      LockSupport.parkNanos(this, remaining);
+      if (Thread.interrupted()) {
+        if (cancel()) {
+          throw new InterruptedException();
+        }
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    return getConnection();
+  }
+
+}
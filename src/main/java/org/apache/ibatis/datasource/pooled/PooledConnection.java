@@ -20,6 +20,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.ibatis.reflection.ExceptionUtil;
 
@@ -31,6 +32,8 @@ class PooledConnection implements InvocationHandler {
 
   private static final String CLOSE = "close";
   private static final Class<?>[] IFACES = new Class<?>[] { Connection.class };
+  private static final String POOL_PACKAGE = PooledConnection.class.getPackage().getName() + ".";
+  private static final int MAX_CHECKOUT_FRAMES = 12;
 
   private final int hashCode;
   private final PooledDataSource dataSource;
@@ -39,8 +42,15 @@ class PooledConnection implements InvocationHandler {
   private long checkoutTimestamp;
   private long createdTimestamp;
   private long lastUsedTimestamp;
+  private long lastValidatedTimestamp;
   private int connectionTypeCode;
-  private boolean valid;
+  private final AtomicBoolean valid = new AtomicBoolean();
+  private final AtomicBoolean claimed = new AtomicBoolean();
+  private volatile String checkoutThreadName;
+  private volatile Throwable checkoutTrace;
+  private boolean leakReported;
+  private PreparedStatementCache statementCache;
+  private ConnectionState connectionState = new ConnectionState();
 
   /**
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed in
@@ -54,7 +64,7 @@ class PooledConnection implements InvocationHandler {
     this.dataSource = dataSource;
     this.createdTimestamp = System.currentTimeMillis();
     this.lastUsedTimestamp = System.currentTimeMillis();
-    this.valid = true;
+    this.valid.set(true);
     //初始化时，直接够着了一个代理Connection
     this.proxyConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), IFACES, this);
   }
@@ -63,7 +73,25 @@ class PooledConnection implements InvocationHandler {
    * Invalidates the connection
    */
   public void invalidate() {
-    valid = false;
+    valid.set(false);
+  }
+
+  /**
+   * Invalidates the connection unless another thread already did so
+   *
+   * @return True if this call is the one that invalidated the connection
+   */
+  boolean invalidateIfValid() {
+    return valid.compareAndSet(true, false);
+  }
+
+  /**
+   * Marks an idle connection as taken, used by pools that keep idle connections in lock-free structures
+   *
+   * @return True if the caller now owns the connection
+   */
+  boolean claim() {
+    return claimed.compareAndSet(false, true);
   }
 
   /**
@@ -72,7 +100,16 @@ class PooledConnection implements InvocationHandler {
    * @return True if the connection is usable
    */
   public boolean isValid() {
-    return valid && realConnection != null && dataSource.pingConnection(this);
+    return valid.get() && realConnection != null && dataSource.pingConnection(this);
+  }
+
+  /**
+   * Like {@link #isValid()} but without pinging the database
+   *
+   * @return True if the connection was not invalidated
+   */
+  boolean isMarkedValid() {
+    return valid.get() && realConnection != null;
   }
 
   /**
@@ -156,6 +193,33 @@ class PooledConnection implements InvocationHandler {
     this.lastUsedTimestamp = lastUsedTimestamp;
   }
 
+  /**
+   * Getter for the time that the connection was last validated by a ping query
+   *
+   * @return - the timestamp, 0 if it was never pinged
+   */
+  public long getLastValidatedTimestamp() {
+    return lastValidatedTimestamp;
+  }
+
+  /**
+   * Setter for the time that the connection was last validated by a ping query
+   *
+   * @param lastValidatedTimestamp - the timestamp
+   */
+  public void setLastValidatedTimestamp(long lastValidatedTimestamp) {
+    this.lastValidatedTimestamp = lastValidatedTimestamp;
+  }
+
+  /**
+   * Getter for the time since this connection was last validated by a ping query
+   *
+   * @return - the time since the last validation
+   */
+  public long getTimeElapsedSinceLastValidation() {
+    return System.currentTimeMillis() - lastValidatedTimestamp;
+  }
+
   /**
    * Getter for the time since this connection was last used
    *
@@ -201,6 +265,122 @@ class PooledConnection implements InvocationHandler {
     return System.currentTimeMillis() - checkoutTimestamp;
   }
 
+  /**
+   * Remembers where the connection was checked out, used by leak detection
+   *
+   * @param threadName - the name of the checking out thread
+   * @param trace - the stack at checkout, or null if this checkout was not sampled
+   */
+  void setCheckoutSite(String threadName, Throwable trace) {
+    this.checkoutThreadName = threadName;
+    this.checkoutTrace = trace;
+  }
+
+  /**
+   * Describes where the connection was checked out, skipping the frames of the pool itself
+   *
+   * @return the thread and, if sampled, the first frames of the caller's stack
+   */
+  String getCheckoutSite() {
+    StringBuilder builder = new StringBuilder("thread ").append(checkoutThreadName);
+    Throwable trace = checkoutTrace;
+    if (trace == null) {
+      return builder.append(" (stack not sampled)").toString();
+    }
+    int frames = 0;
+    for (StackTraceElement element : trace.getStackTrace()) {
+      if (element.getClassName().startsWith(POOL_PACKAGE)) {
+        continue;
+      }
+      if (frames++ == MAX_CHECKOUT_FRAMES) {
+        builder.append("\n\t...");
+        break;
+      }
+      builder.append("\n\tat ").append(element);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Marks the connection as reported by leak detection
+   *
+   * @return True if it was not reported before
+   */
+  boolean markLeakReported() {
+    if (leakReported) {
+      return false;
+    }
+    leakReported = true;
+    return true;
+  }
+
+  /**
+   * Getter for the statement cache of the real connection
+   *
+   * @return the cache, or null if no statement was prepared through it yet
+   */
+  synchronized PreparedStatementCache getStatementCache() {
+    return statementCache;
+  }
+
+  /**
+   * Hands the statement cache of the real connection over from a previous wrapper
+   *
+   * @param statementCache - the cache, may be null
+   */
+  synchronized void setStatementCache(PreparedStatementCache statementCache) {
+    this.statementCache = statementCache;
+  }
+
+  /**
+   * Closes the statements the application left open, cached statements stay prepared
+   */
+  synchronized void resetStatementCache() {
+    if (statementCache != null) {
+      statementCache.reset();
+    }
+  }
+
+  /**
+   * Closes every statement of the cache, used before the real connection is closed
+   */
+  synchronized void clearStatementCache() {
+    if (statementCache != null) {
+      statementCache.clear();
+    }
+  }
+
+  /**
+   * Getter for the last known state of the real connection
+   *
+   * @return the state
+   */
+  ConnectionState getConnectionState() {
+    return connectionState;
+  }
+
+  /**
+   * Hands the last known state of the real connection over from a previous wrapper
+   *
+   * @param connectionState - the state
+   */
+  void setConnectionState(ConnectionState connectionState) {
+    this.connectionState = connectionState;
+  }
+
+  /**
+   * Gets the auto-commit mode of the real connection without a round trip if it is known
+   *
+   * @return the auto-commit mode
+   * @throws SQLException if the driver fails
+   */
+  boolean getAutoCommit() throws SQLException {
+    if (!dataSource.poolTrackConnectionState) {
+      return realConnection.getAutoCommit();
+    }
+    return connectionState.getAutoCommit(realConnection, dataSource.getPoolState().getMetrics());
+  }
+
   @Override
   public int hashCode() {
     return hashCode;
@@ -246,6 +426,17 @@ class PooledConnection implements InvocationHandler {
           // throw an SQLException instead of a Runtime
           checkConnection();
         }
+        //已知的连接状态
+        if (dataSource.poolTrackConnectionState && ConnectionState.isTracked(methodName)) {
+          return connectionState.invoke(realConnection, method, args, dataSource.getPoolState().getMetrics());
+        }
+        //缓存的PreparedStatement
+        if (PreparedStatementCache.isCacheable(method)) {
+          PreparedStatementCache cache = createStatementCacheIfEnabled();
+          if (cache != null) {
+            return cache.prepare(realConnection, method, args);
+          }
+        }
         return method.invoke(realConnection, args);
       } catch (Throwable t) {
         throw ExceptionUtil.unwrapThrowable(t);
@@ -253,8 +444,15 @@ class PooledConnection implements InvocationHandler {
     }
   }
 
+  private synchronized PreparedStatementCache createStatementCacheIfEnabled() {
+    if (statementCache == null && dataSource.poolPreparedStatementCacheSize > 0) {
+      statementCache = new PreparedStatementCache(dataSource.poolPreparedStatementCacheSize);
+    }
+    return statementCache;
+  }
+
   private void checkConnection() throws SQLException {
-    if (!valid) {
+    if (!valid.get()) {
       throw new SQLException("Error accessing PooledConnection. Connection is invalid.");
     }
   }
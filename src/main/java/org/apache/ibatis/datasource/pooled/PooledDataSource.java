@@ -16,6 +16,7 @@
 package org.apache.ibatis.datasource.pooled;
 
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
@@ -23,9 +24,16 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Logger;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import javax.sql.DataSource;
 
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
@@ -47,7 +55,7 @@ public class PooledDataSource implements DataSource {
     /**
      * 被包装在内部的UnpooledDataSource
      */
-  private final UnpooledDataSource dataSource;
+  protected final UnpooledDataSource dataSource;
 
   /**
    *  OPTIONAL CONFIGURATION FIELDS
@@ -61,11 +69,36 @@ public class PooledDataSource implements DataSource {
   protected String poolPingQuery = "NO PING QUERY SET";
   protected boolean poolPingEnabled;
   protected int poolPingConnectionsNotUsedFor;
+  protected int poolMaximumWaitTime;
+  protected int poolMaximumWaitingThreads;
+  protected int poolMinimumIdleConnections;
+  protected int poolMaximumIdleTime;
+  protected int poolMaximumLifetime;
+  protected int poolMaintenanceInterval;
+  protected boolean poolJmxEnabled;
+  protected String poolName;
+  protected int poolPreparedStatementCacheSize;
+  protected boolean poolTrackConnectionState;
+  protected int poolLeakDetectionThreshold;
+  protected int poolLeakDetectionSamplingRate = 1;
+
+  /**
+   * 后台维护任务
+   */
+  private volatile PoolMaintenance maintenance;
+  /**
+   * 已注册的JMX名称
+   */
+  private volatile ObjectName registeredName;
+  /**
+   * 已交给等待线程但还未被取走的连接数，由state锁保护
+   */
+  private int pendingHandOffCount;
 
     /**
      * 预期的数据库连接类型
      */
-  private int expectedConnectionTypeCode;
+  protected int expectedConnectionTypeCode;
 
   public PooledDataSource() {
     dataSource = new UnpooledDataSource();
@@ -102,11 +135,13 @@ public class PooledDataSource implements DataSource {
      */
   @Override
   public Connection getConnection() throws SQLException {
+    ensureStarted();
     return popConnection(dataSource.getUsername(), dataSource.getPassword()).getProxyConnection();
   }
 
   @Override
   public Connection getConnection(String username, String password) throws SQLException {
+    ensureStarted();
     return popConnection(username, password).getProxyConnection();
   }
 
@@ -251,6 +286,147 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /**
+   * The maximum total time a thread waits for a connection before giving up.
+   * A value of 0 or less waits until a connection becomes available.
+   *
+   * @param poolMaximumWaitTime the time in milliseconds
+   * @since 3.4.6
+   */
+  public void setPoolMaximumWaitTime(int poolMaximumWaitTime) {
+    this.poolMaximumWaitTime = poolMaximumWaitTime;
+  }
+
+  /**
+   * The maximum number of threads that may wait for a connection. Further requests fail immediately
+   * while the queue is full. A value of 0 or less does not limit the queue.
+   *
+   * @param poolMaximumWaitingThreads the maximum number of waiting threads
+   * @since 3.4.6
+   */
+  public void setPoolMaximumWaitingThreads(int poolMaximumWaitingThreads) {
+    this.poolMaximumWaitingThreads = poolMaximumWaitingThreads;
+  }
+
+  /**
+   * The number of idle connections the maintenance thread opens eagerly and keeps in the pool.
+   * Only used when a maintenance interval is set.
+   *
+   * @param poolMinimumIdleConnections the minimum number of idle connections
+   * @since 3.4.6
+   */
+  public void setPoolMinimumIdleConnections(int poolMinimumIdleConnections) {
+    this.poolMinimumIdleConnections = poolMinimumIdleConnections;
+  }
+
+  /**
+   * The time a connection may sit idle before the maintenance thread closes it, as long as
+   * more than the minimum number of idle connections remain. A value of 0 or less keeps idle connections.
+   *
+   * @param poolMaximumIdleTime the time in milliseconds
+   * @since 3.4.6
+   */
+  public void setPoolMaximumIdleTime(int poolMaximumIdleTime) {
+    this.poolMaximumIdleTime = poolMaximumIdleTime;
+  }
+
+  /**
+   * The maximum age of a connection. Older connections are closed when they are returned or
+   * by the maintenance thread while idle. A value of 0 or less does not limit the age.
+   *
+   * @param poolMaximumLifetime the time in milliseconds
+   * @since 3.4.6
+   */
+  public void setPoolMaximumLifetime(int poolMaximumLifetime) {
+    this.poolMaximumLifetime = poolMaximumLifetime;
+  }
+
+  /**
+   * The delay between two runs of the maintenance thread, which pre-fills the pool, pings idle
+   * connections off the request path and retires old or unused ones. A value of 0 or less disables it.
+   *
+   * @param poolMaintenanceInterval the time in milliseconds
+   * @since 3.4.6
+   */
+  public void setPoolMaintenanceInterval(int poolMaintenanceInterval) {
+    this.poolMaintenanceInterval = poolMaintenanceInterval;
+    stopMaintenance();
+  }
+
+  /**
+   * Registers a {@link PooledDataSourceMXBean} with the platform MBean server on first use.
+   *
+   * @param poolJmxEnabled whether to register the MBean
+   * @since 3.4.6
+   */
+  public void setPoolJmxEnabled(boolean poolJmxEnabled) {
+    this.poolJmxEnabled = poolJmxEnabled;
+    if (!poolJmxEnabled) {
+      unregisterMBean();
+    }
+  }
+
+  /**
+   * The name property of the MBean's object name. Defaults to an identity based name.
+   *
+   * @param poolName the name
+   * @since 3.4.6
+   */
+  public void setPoolName(String poolName) {
+    this.poolName = poolName;
+    unregisterMBean();
+  }
+
+  /**
+   * The number of prepared statements each connection keeps open for later sessions. Statements are looked up
+   * by their SQL and prepare options and put back into the cache when the application closes them.
+   * A value of 0 or less disables the cache.
+   *
+   * @param poolPreparedStatementCacheSize the number of statements per connection
+   * @since 3.4.6
+   */
+  public void setPoolPreparedStatementCacheSize(int poolPreparedStatementCacheSize) {
+    this.poolPreparedStatementCacheSize = poolPreparedStatementCacheSize;
+    forceCloseAll();
+  }
+
+  /**
+   * Remembers the auto-commit mode, transaction isolation, read-only flag and catalog of each connection so that
+   * getters are answered without a round trip and setters that would not change anything are skipped.
+   * Off by default. Only enable it if the application never changes these through SQL statements or unwrapped
+   * connections, as the pool would then report and restore stale values.
+   *
+   * @param poolTrackConnectionState whether to track the connection state
+   * @since 3.4.6
+   */
+  public void setPoolTrackConnectionState(boolean poolTrackConnectionState) {
+    this.poolTrackConnectionState = poolTrackConnectionState;
+    forceCloseAll();
+  }
+
+  /**
+   * The time a connection may stay checked out before the maintenance thread reports it as a possible leak,
+   * together with where it was checked out. A value of 0 or less disables leak detection. If no
+   * poolMaintenanceInterval is set, the maintenance thread runs at this interval.
+   *
+   * @param poolLeakDetectionThreshold the time in milliseconds
+   * @since 3.4.6
+   */
+  public void setPoolLeakDetectionThreshold(int poolLeakDetectionThreshold) {
+    this.poolLeakDetectionThreshold = poolLeakDetectionThreshold;
+    stopMaintenance();
+  }
+
+  /**
+   * Captures the stack of only one in this many checkouts, the others only remember the checking out thread.
+   *
+   * @param poolLeakDetectionSamplingRate the sampling rate, 1 captures every checkout
+   * @since 3.4.6
+   */
+  public void setPoolLeakDetectionSamplingRate(int poolLeakDetectionSamplingRate) {
+    this.poolLeakDetectionSamplingRate = poolLeakDetectionSamplingRate;
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -311,6 +487,303 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  public int getPoolMaximumWaitTime() {
+    return poolMaximumWaitTime;
+  }
+
+  public int getPoolMaximumWaitingThreads() {
+    return poolMaximumWaitingThreads;
+  }
+
+  public int getPoolMinimumIdleConnections() {
+    return poolMinimumIdleConnections;
+  }
+
+  public int getPoolMaximumIdleTime() {
+    return poolMaximumIdleTime;
+  }
+
+  public int getPoolMaximumLifetime() {
+    return poolMaximumLifetime;
+  }
+
+  public int getPoolMaintenanceInterval() {
+    return poolMaintenanceInterval;
+  }
+
+  public boolean isPoolJmxEnabled() {
+    return poolJmxEnabled;
+  }
+
+  public int getPoolPreparedStatementCacheSize() {
+    return poolPreparedStatementCacheSize;
+  }
+
+  public boolean isPoolTrackConnectionState() {
+    return poolTrackConnectionState;
+  }
+
+  public int getPoolLeakDetectionThreshold() {
+    return poolLeakDetectionThreshold;
+  }
+
+  public int getPoolLeakDetectionSamplingRate() {
+    return poolLeakDetectionSamplingRate;
+  }
+
+  public String getPoolName() {
+    return poolName == null ? getClass().getSimpleName() + "-" + Integer.toHexString(System.identityHashCode(this)) : poolName;
+  }
+
+  /**
+   * Starts the maintenance thread if a maintenance interval is set. The first run fills the pool up
+   * to the minimum number of idle connections.
+   *
+   * @since 3.4.6
+   */
+  public synchronized void startMaintenance() {
+    if (maintenance == null && getMaintenanceInterval() > 0) {
+      maintenance = PoolMaintenance.start(this, getMaintenanceInterval());
+    }
+  }
+
+  private int getMaintenanceInterval() {
+    return poolMaintenanceInterval > 0 ? poolMaintenanceInterval : poolLeakDetectionThreshold;
+  }
+
+  /**
+   * Stops the maintenance thread. Connections stay open.
+   *
+   * @since 3.4.6
+   */
+  public synchronized void stopMaintenance() {
+    if (maintenance != null) {
+      maintenance.stop();
+      maintenance = null;
+    }
+  }
+
+  /**
+   * Registers the pool's {@link PooledDataSourceMXBean} if poolJmxEnabled is set. A name clash is logged and ignored.
+   *
+   * @since 3.4.6
+   */
+  public synchronized void registerMBean() {
+    if (registeredName != null || !poolJmxEnabled) {
+      return;
+    }
+    try {
+      ObjectName name = new ObjectName("org.apache.ibatis.datasource.pooled:type=" + getClass().getSimpleName()
+          + ",name=" + ObjectName.quote(getPoolName()));
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      server.registerMBean(new StandardMBean(new PoolStatistics(this), PooledDataSourceMXBean.class, true), name);
+      registeredName = name;
+    } catch (Exception e) {
+      log.warn("Could not register the pool MBean: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public synchronized void unregisterMBean() {
+    if (registeredName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+    } catch (Exception e) {
+      // ignore
+    }
+    registeredName = null;
+  }
+
+  /**
+   * @return the name the MBean is registered under, or null
+   * @since 3.4.6
+   */
+  public ObjectName getRegisteredName() {
+    return registeredName;
+  }
+
+  protected void ensureStarted() {
+    if (maintenance == null && getMaintenanceInterval() > 0) {
+      startMaintenance();
+    }
+    if (registeredName == null && poolJmxEnabled) {
+      registerMBean();
+    }
+  }
+
+  /**
+   * Reports every connection that has been checked out for longer than poolLeakDetectionThreshold, once per checkout.
+   */
+  protected void detectLeaks() {
+    for (PooledConnection conn : getSuspectedLeaks()) {
+      if (conn.markLeakReported()) {
+        getPoolState().getMetrics().recordLeak();
+        log.warn("Connection " + conn.getRealHashCode() + " has been checked out for " + conn.getCheckoutTime()
+            + " milliseconds, possible connection leak. Checked out by " + conn.getCheckoutSite());
+      }
+    }
+  }
+
+  /**
+   * @return the checked out connections held for longer than poolLeakDetectionThreshold
+   */
+  List<PooledConnection> getSuspectedLeaks() {
+    List<PooledConnection> leaks = new ArrayList<PooledConnection>();
+    if (poolLeakDetectionThreshold > 0) {
+      for (PooledConnection conn : getActiveConnections()) {
+        if (conn.getCheckoutTime() > poolLeakDetectionThreshold) {
+          leaks.add(conn);
+        }
+      }
+    }
+    return leaks;
+  }
+
+  List<PooledConnection> getActiveConnections() {
+    synchronized (state) {
+      return new ArrayList<PooledConnection>(state.activeConnections);
+    }
+  }
+
+  /**
+   * Remembers the checkout site for leak detection. Only sampled checkouts pay for a stack trace.
+   */
+  void recordCheckoutSite(PooledConnection conn) {
+    if (poolLeakDetectionThreshold <= 0) {
+      return;
+    }
+    Thread thread = Thread.currentThread();
+    Throwable trace = null;
+    if (poolLeakDetectionSamplingRate <= 1 || ThreadLocalRandom.current().nextInt(poolLeakDetectionSamplingRate) == 0) {
+      trace = new Throwable("Connection checked out");
+    }
+    conn.setCheckoutSite(thread.getName(), trace);
+  }
+
+  /**
+   * Runs one round of pool maintenance: closes idle connections that are too old or were not used for too long,
+   * pings idle connections that are due outside of the state lock and opens new ones up to the minimum idle count.
+   */
+  protected void performMaintenance() {
+    List<PooledConnection> toClose = new ArrayList<PooledConnection>();
+    List<PooledConnection> toPing = new ArrayList<PooledConnection>();
+    synchronized (state) {
+      int idle = state.idleConnections.size();
+      for (Iterator<PooledConnection> it = state.idleConnections.iterator(); it.hasNext();) {
+        PooledConnection conn = it.next();
+        if (isRetired(conn)
+            || idle > poolMaximumIdleConnections
+            || (poolMaximumIdleTime > 0 && idle > poolMinimumIdleConnections
+                && conn.getTimeElapsedSinceLastUse() > poolMaximumIdleTime)) {
+          it.remove();
+          toClose.add(conn);
+          idle--;
+        } else if (poolPingEnabled && isPingDue(conn)) {
+          it.remove();
+          conn.setConnectionTypeCode(expectedConnectionTypeCode);
+          toPing.add(conn);
+        }
+      }
+    }
+    for (PooledConnection conn : toClose) {
+      conn.invalidate();
+      closeQuietly(conn);
+      if (log.isDebugEnabled()) {
+        log.debug("Retired idle connection " + conn.getRealHashCode() + ".");
+      }
+    }
+    for (PooledConnection conn : toPing) {
+      if (pingConnection(conn)) {
+        returnIdleConnection(conn);
+      } else {
+        conn.invalidate();
+        closeQuietly(conn);
+        synchronized (state) {
+          state.badConnectionCount++;
+        }
+      }
+    }
+    while (needsMoreIdleConnections()) {
+      PooledConnection conn;
+      try {
+        conn = new PooledConnection(dataSource.getConnection(), this);
+      } catch (SQLException e) {
+        log.warn("Could not open a connection to fill the pool: " + e.getMessage());
+        break;
+      }
+      conn.setConnectionTypeCode(expectedConnectionTypeCode);
+      if (log.isDebugEnabled()) {
+        log.debug("Created idle connection " + conn.getRealHashCode() + ".");
+      }
+      if (!returnIdleConnection(conn)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Puts an idle connection that was taken out by the maintenance thread back, handing it to a waiting thread first.
+   *
+   * @return false if the connection was closed instead
+   */
+  private boolean returnIdleConnection(PooledConnection conn) {
+    synchronized (state) {
+      if (conn.getConnectionTypeCode() == expectedConnectionTypeCode
+          && state.idleConnections.size() + state.activeConnections.size() + pendingHandOffCount < poolMaximumActiveConnections) {
+        if (handOff(conn)) {
+          return true;
+        }
+        if (state.idleConnections.size() < poolMaximumIdleConnections) {
+          state.idleConnections.add(conn);
+          return true;
+        }
+      }
+    }
+    conn.invalidate();
+    closeQuietly(conn);
+    return false;
+  }
+
+  private boolean needsMoreIdleConnections() {
+    synchronized (state) {
+      return state.idleConnections.size() < poolMinimumIdleConnections
+          && state.idleConnections.size() + state.activeConnections.size() + pendingHandOffCount < poolMaximumActiveConnections;
+    }
+  }
+
+  /**
+   * A connection is pinged when it was neither used nor validated within poolPingConnectionsNotUsedFor
+   */
+  protected boolean isPingDue(PooledConnection conn) {
+    return poolPingConnectionsNotUsedFor >= 0
+        && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor
+        && conn.getTimeElapsedSinceLastValidation() > poolPingConnectionsNotUsedFor;
+  }
+
+  protected boolean isRetired(PooledConnection conn) {
+    return poolMaximumLifetime > 0 && conn.getAge() > poolMaximumLifetime;
+  }
+
+  protected void closeQuietly(PooledConnection conn) {
+    conn.clearStatementCache();
+    closeQuietly(conn.getRealConnection());
+  }
+
+  protected void closeQuietly(Connection realConn) {
+    try {
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
   /**
    * 强制删除所有连接
    * Closes all active and idle connections in the pool
@@ -322,6 +795,7 @@ public class PooledDataSource implements DataSource {
         try {
           PooledConnection conn = state.activeConnections.remove(i - 1);
           conn.invalidate();
+          conn.clearStatementCache();
 
           Connection realConn = conn.getRealConnection();
           if (!realConn.getAutoCommit()) {
@@ -336,6 +810,7 @@ public class PooledDataSource implements DataSource {
         try {
           PooledConnection conn = state.idleConnections.remove(i - 1);
           conn.invalidate();
+          conn.clearStatementCache();
 
           Connection realConn = conn.getRealConnection();
           if (!realConn.getAutoCommit()) {
@@ -363,7 +838,7 @@ public class PooledDataSource implements DataSource {
      * @param password
      * @return
      */
-  private int assembleConnectionTypeCode(String url, String username, String password) {
+  protected int assembleConnectionTypeCode(String url, String username, String password) {
     return ("" + url + username + password).hashCode();
   }
 
@@ -374,38 +849,57 @@ public class PooledDataSource implements DataSource {
      */
   protected void pushConnection(PooledConnection conn) throws SQLException {
 
+    long checkoutTime = conn.getCheckoutTime();
+    if (conn.isMarkedValid()) {
+      // recorded outside of the lock, a concurrent overdue claim may slip in but only skews the histogram
+      state.metrics.recordHold(checkoutTime);
+    }
     synchronized (state) {
         //从活跃线程中清楚conn
       state.activeConnections.remove(conn);
       //连接有效
       if (conn.isValid()) {
-          //空闲队列是否，有效
-        if (state.idleConnections.size() < poolMaximumIdleConnections
-                && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
+        state.accumulatedCheckoutTime += checkoutTime;
+        //关闭应用未关闭的Statement
+        conn.resetStatementCache();
+        if (!conn.getAutoCommit()) {
+          conn.getRealConnection().rollback();
+        }
+        boolean reusable = conn.getConnectionTypeCode() == expectedConnectionTypeCode && !isRetired(conn);
+        //有等待的线程，直接交给最早等待的线程
+        if (reusable && !state.waiters.isEmpty()) {
+          PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
+          newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
+          newConn.setStatementCache(conn.getStatementCache());
+          newConn.setConnectionState(conn.getConnectionState());
+          newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+          if (handOff(newConn)) {
+            conn.invalidate();
+            if (log.isDebugEnabled()) {
+              log.debug("Handed over connection " + newConn.getRealHashCode() + " to a waiting thread.");
+            }
+            return;
           }
+        }
+          //空闲队列是否，有效
+        if (reusable && state.idleConnections.size() < poolMaximumIdleConnections) {
           //构造一个新的连接，放入闲置队列中
           PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
           //加入空闲队列
           state.idleConnections.add(newConn);
           newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
+          newConn.setStatementCache(conn.getStatementCache());
+          newConn.setConnectionState(conn.getConnectionState());
           newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
           //连接无效
           conn.invalidate();
           if (log.isDebugEnabled()) {
             log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
           }
-          //通知所有线程
-          state.notifyAll();
           //没有空闲队列已经满了
         } else {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
-          }
           //关闭真实的连接
+          conn.clearStatementCache();
           conn.getRealConnection().close();
           if (log.isDebugEnabled()) {
             log.debug("Closed connection " + conn.getRealHashCode() + ".");
@@ -423,6 +917,23 @@ public class PooledDataSource implements DataSource {
     }
   }
 
+  /**
+   * Hands a connection over to the thread that has been waiting the longest. Must be called holding the state lock.
+   *
+   * @param conn - the connection
+   * @return True if a waiting thread took the connection
+   */
+  private boolean handOff(PooledConnection conn) {
+    PoolWaiter waiter;
+    while ((waiter = state.waiters.poll()) != null) {
+      if (waiter.offer(conn)) {
+        pendingHandOffCount++;
+        return true;
+      }
+    }
+    return false;
+  }
+
     /**
      * 得到具体的PooledConnection对象
      * @param username
@@ -434,136 +945,216 @@ public class PooledDataSource implements DataSource {
 
     boolean countedWait = false;
     PooledConnection conn = null;
+    //排队等待的位置，每段等待之间保留，超时、中断或拿到连接时才离开队列
+    PoolWaiter waiter = null;
     long t = System.currentTimeMillis();
+    long startNanos = System.nanoTime();
     //本地错误连接计数
     int localBadConnectionCount = 0;
 
     //多线程中while处理
-    while (conn == null) {
-        //同步状态
-      synchronized (state) {
-          //空闲连接队列不为空
-        if (!state.idleConnections.isEmpty()) {
-          // Pool has available connection
-            //得到第一个连接
-          conn = state.idleConnections.remove(0);
-          if (log.isDebugEnabled()) {
-            log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
-          }
-          //空闲连接队列为空
-        } else {
-          // Pool does not have available connection
-            //活跃连接数<最大活跃数
-          if (state.activeConnections.size() < poolMaximumActiveConnections) {
-            // Can create new connection
-              //直接创建一个
-            conn = new PooledConnection(dataSource.getConnection(), this);
+    try {
+      while (conn == null) {
+        boolean mustWait = false;
+          //同步状态
+        synchronized (state) {
+          //其他线程直接交过来的连接
+          PooledConnection handedOver = waiter == null ? null : waiter.getConnection();
+          if (handedOver != null) {
+            conn = handedOver;
+            // taken off the queue by the returning thread
+            waiter = null;
+            pendingHandOffCount--;
+            if (log.isDebugEnabled()) {
+              log.debug("Received connection " + conn.getRealHashCode() + " from a returning thread.");
+            }
+            //空闲连接队列不为空
+          } else if (!state.idleConnections.isEmpty()) {
+            // Pool has available connection
+              //得到第一个连接
+            conn = state.idleConnections.remove(0);
             if (log.isDebugEnabled()) {
-              log.debug("Created connection " + conn.getRealHashCode() + ".");
+              log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
             }
-            //已经达到最大连接活跃数
+            //空闲连接队列为空
           } else {
-            // Cannot create new connection,得到第一个活跃连接
-            PooledConnection oldestActiveConnection = state.activeConnections.get(0);
-            //得到检查时间
-            long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
-            //检查时间大于最大检查时间
-            if (longestCheckoutTime > poolMaximumCheckoutTime) {
-              // Can claim overdue connection
-                //声明逾期连接计数++
-              state.claimedOverdueConnectionCount++;
-              //过期连接的累积时间
-              state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
-              //累积检查时间
-              state.accumulatedCheckoutTime += longestCheckoutTime;
-              //清除当前Connection
-              state.activeConnections.remove(oldestActiveConnection);
-              //不是自动提交
-              if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
-                try {
-                    //手动Rollback,忽略异常
-                  oldestActiveConnection.getRealConnection().rollback();
-                } catch (SQLException e) {
-                  /*
-                     Just log a message for debug and continue to execute the following
-                     statement like nothing happend.
-                     Wrap the bad connection with a new PooledConnection, this will help
-                     to not intterupt current executing thread and give current thread a
-                     chance to join the next competion for another valid/good database
-                     connection. At the end of this loop, bad {@link @conn} will be set as null.
-                   */
-                  log.debug("Bad connection. Could not roll back");
-                }  
-              }
-              conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
-              conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
-              conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
-              //标记为无效连接
-              oldestActiveConnection.invalidate();
+            // Pool does not have available connection
+              //活跃连接数<最大活跃数
+            //交接中的连接也占用名额，避免等待线程醒来时多建连接
+            if (state.activeConnections.size() + pendingHandOffCount < poolMaximumActiveConnections) {
+              // Can create new connection
+                //直接创建一个
+              conn = new PooledConnection(dataSource.getConnection(), this);
               if (log.isDebugEnabled()) {
-                log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
+                log.debug("Created connection " + conn.getRealHashCode() + ".");
               }
-              //检查时间合格
+              //已经达到最大连接活跃数
             } else {
-              // Must wait
-              try {
-                  //等待连接
-                if (!countedWait) {
-                  state.hadToWaitCount++;
-                  countedWait = true;
+              // Cannot create new connection,得到第一个活跃连接
+              //名额都在交接中时没有活跃连接可以收回
+              PooledConnection oldestActiveConnection = state.activeConnections.isEmpty() ? null : state.activeConnections.get(0);
+              //得到检查时间
+              long longestCheckoutTime = oldestActiveConnection == null ? 0 : oldestActiveConnection.getCheckoutTime();
+              //检查时间大于最大检查时间
+              if (oldestActiveConnection != null && longestCheckoutTime > poolMaximumCheckoutTime) {
+                // Can claim overdue connection
+                  //声明逾期连接计数++
+                state.claimedOverdueConnectionCount++;
+                //过期连接的累积时间
+                state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
+                //累积检查时间
+                state.accumulatedCheckoutTime += longestCheckoutTime;
+                //清除当前Connection
+                state.activeConnections.remove(oldestActiveConnection);
+                oldestActiveConnection.resetStatementCache();
+                //不是自动提交
+                if (!oldestActiveConnection.getAutoCommit()) {
+                  try {
+                      //手动Rollback,忽略异常
+                    oldestActiveConnection.getRealConnection().rollback();
+                  } catch (SQLException e) {
+                    /*
+                       Just log a message for debug and continue to execute the following
+                       statement like nothing happend.
+                       Wrap the bad connection with a new PooledConnection, this will help
+                       to not intterupt current executing thread and give current thread a
+                       chance to join the next competion for another valid/good database
+                       connection. At the end of this loop, bad {@link @conn} will be set as null.
+                     */
+                    log.debug("Bad connection. Could not roll back");
+                  }  
                 }
+                conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
+                conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
+                conn.setStatementCache(oldestActiveConnection.getStatementCache());
+                conn.setConnectionState(oldestActiveConnection.getConnectionState());
+                conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
+                //标记为无效连接
+                oldestActiveConnection.invalidate();
                 if (log.isDebugEnabled()) {
-                  log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+                  log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
                 }
-                long wt = System.currentTimeMillis();
-                //等待连接
-                state.wait(poolTimeToWait);
-                //累积等待时间
-                state.accumulatedWaitTime += System.currentTimeMillis() - wt;
-              } catch (InterruptedException e) {
-                break;
+                //检查时间合格
+              } else {
+                // Must wait
+                //已经在排队的线程保留原来的位置
+                if (waiter == null) {
+                  //等待队列已满，直接失败
+                  if (poolMaximumWaitingThreads > 0 && state.waiters.size() >= poolMaximumWaitingThreads) {
+                    if (log.isDebugEnabled()) {
+                      log.debug("PooledDataSource: Too many threads waiting for a connection.");
+                    }
+                    state.metrics.recordRejection();
+                    throw new SQLException("PooledDataSource: Too many threads (" + state.waiters.size() + ") waiting for a connection.");
+                  }
+                  if (!countedWait) {
+                    state.hadToWaitCount++;
+                    countedWait = true;
+                  }
+                  //排队等待
+                  waiter = new PoolWaiter();
+                  state.waiters.add(waiter);
+                }
+                mustWait = true;
               }
             }
           }
-        }
-        //有效性校验
-        //得到的连接不为空
-        if (conn != null) {
-          // ping to server and check the connection is valid or not
-            //校验连接是否失效,有效
-          if (conn.isValid()) {
-              //不会自动提交，回滚操作，当前连接遗留问题
-            if (!conn.getRealConnection().getAutoCommit()) {
-              conn.getRealConnection().rollback();
+          if (conn != null && waiter != null) {
+            // got one without a hand-over, connections are only handed over under the lock so none can arrive now
+            waiter.cancel();
+            state.waiters.remove(waiter);
+            waiter = null;
+          }
+          //有效性校验
+          //得到的连接不为空
+          if (conn != null) {
+            // ping to server and check the connection is valid or not
+              //校验连接是否失效,有效
+            if (conn.isValid()) {
+                //不会自动提交，回滚操作，当前连接遗留问题
+              if (!conn.getAutoCommit()) {
+                conn.getRealConnection().rollback();
+              }
+              conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+              conn.setCheckoutTimestamp(System.currentTimeMillis());
+              conn.setLastUsedTimestamp(System.currentTimeMillis());
+              //添加到活动连接队列
+              state.activeConnections.add(conn);
+              //请求计数++
+              state.requestCount++;
+              //累计请求时间
+              state.accumulatedRequestTime += System.currentTimeMillis() - t;
+
+              //连接无效
+            } else {
+              if (log.isDebugEnabled()) {
+                log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
+              }
+              state.badConnectionCount++;
+              localBadConnectionCount++;
+              conn = null;
+              if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
+                if (log.isDebugEnabled()) {
+                  log.debug("PooledDataSource: Could not get a good connection to the database.");
+                }
+                throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
+              }
             }
-            conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
-            conn.setCheckoutTimestamp(System.currentTimeMillis());
-            conn.setLastUsedTimestamp(System.currentTimeMillis());
-            //添加到活动连接队列
-            state.activeConnections.add(conn);
-            //请求计数++
-            state.requestCount++;
-            //累计请求时间
-            state.accumulatedRequestTime += System.currentTimeMillis() - t;
-
-            //连接无效
-          } else {
-            if (log.isDebugEnabled()) {
-              log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
+          }
+        }
+
+        if (mustWait) {
+          long timeToWait = poolTimeToWait;
+          if (poolMaximumWaitTime > 0) {
+            timeToWait = Math.min(timeToWait, t + poolMaximumWaitTime - System.currentTimeMillis());
+          }
+          if (log.isDebugEnabled()) {
+            log.debug("Waiting as long as " + timeToWait + " milliseconds for connection.");
+          }
+          long wt = System.currentTimeMillis();
+          try {
+            //等待连接，没等到时仍在队列中
+            waiter.park(timeToWait);
+          } catch (InterruptedException e) {
+            break;
+          } finally {
+            synchronized (state) {
+              //累积等待时间
+              state.accumulatedWaitTime += System.currentTimeMillis() - wt;
             }
-            state.badConnectionCount++;
-            localBadConnectionCount++;
-            conn = null;
-            if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
-              if (log.isDebugEnabled()) {
-                log.debug("PooledDataSource: Could not get a good connection to the database.");
+          }
+          if (waiter.getConnection() == null && poolMaximumWaitTime > 0 && System.currentTimeMillis() - t >= poolMaximumWaitTime) {
+            synchronized (state) {
+              // a connection handed over at the last moment is taken by the next round
+              if (waiter.cancel()) {
+                state.waiters.remove(waiter);
+                waiter = null;
+                if (log.isDebugEnabled()) {
+                  log.debug("PooledDataSource: Timed out waiting for a connection.");
+                }
+                state.metrics.recordTimeout();
+                throw new SQLException("PooledDataSource: Timed out after " + poolMaximumWaitTime + " milliseconds waiting for a connection.");
               }
-              throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
             }
           }
         }
       }
-
+    } finally {
+      //失败或中断时离开队列
+      if (waiter != null) {
+        boolean cancelled;
+        synchronized (state) {
+          cancelled = waiter.cancel();
+          state.waiters.remove(waiter);
+          if (!cancelled) {
+            pendingHandOffCount--;
+          }
+        }
+        if (!cancelled) {
+          // handed over but never taken
+          returnIdleConnection(waiter.getConnection());
+        }
+      }
     }
 
     if (conn == null) {
@@ -573,6 +1164,8 @@ public class PooledDataSource implements DataSource {
       throw new SQLException("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
     }
 
+    recordCheckoutSite(conn);
+    state.metrics.recordCheckout(System.nanoTime() - startNanos);
     return conn;
   }
 
@@ -599,7 +1192,7 @@ public class PooledDataSource implements DataSource {
         //可以经行Ping测试
       if (poolPingEnabled) {
           //不使用的池Ping连接，自上次使用以来的时间，只要能够正确执行就正确
-        if (poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
+        if (isPingDue(conn)) {
           try {
             if (log.isDebugEnabled()) {
               log.debug("Testing connection " + conn.getRealHashCode() + " ...");
@@ -609,16 +1202,18 @@ public class PooledDataSource implements DataSource {
             ResultSet rs = statement.executeQuery(poolPingQuery);
             rs.close();
             statement.close();
-            if (!realConn.getAutoCommit()) {
+            if (!conn.getAutoCommit()) {
               realConn.rollback();
             }
             result = true;
+            conn.setLastValidatedTimestamp(System.currentTimeMillis());
             if (log.isDebugEnabled()) {
               log.debug("Connection " + conn.getRealHashCode() + " is GOOD!");
             }
           } catch (Exception e) {
             log.warn("Execution of ping query '" + poolPingQuery + "' failed: " + e.getMessage());
             try {
+              conn.clearStatementCache();
               conn.getRealConnection().close();
             } catch (Exception e2) {
               //ignore
@@ -656,6 +1251,8 @@ public class PooledDataSource implements DataSource {
      */
   @Override
   protected void finalize() throws Throwable {
+    stopMaintenance();
+    unregisterMBean();
     forceCloseAll();
     super.finalize();
   }
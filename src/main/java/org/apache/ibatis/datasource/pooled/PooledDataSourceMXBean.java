@@ -0,0 +1,66 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * The management interface a {@link PooledDataSource} registers when poolJmxEnabled is set.
+ * Times are in microseconds.
+ *
+ * @since 3.4.6
+ */
+public interface PooledDataSourceMXBean {
+
+  int getActiveConnectionCount();
+
+  int getIdleConnectionCount();
+
+  int getWaitingThreadCount();
+
+  long getRequestCount();
+
+  long getHadToWaitCount();
+
+  long getBadConnectionCount();
+
+  long getClaimedOverdueConnectionCount();
+
+  long getTimeoutCount();
+
+  long getRejectedCount();
+
+  long getLeakCount();
+
+  long getSavedRoundTripCount();
+
+  long getCheckoutTimeMean();
+
+  long getCheckoutTime50thPercentile();
+
+  long getCheckoutTime99thPercentile();
+
+  long getCheckoutTimeMax();
+
+  long getHoldTimeMean();
+
+  long getHoldTime50thPercentile();
+
+  long getHoldTime99thPercentile();
+
+  long getHoldTimeMax();
+
+  void resetMetrics();
+
+}
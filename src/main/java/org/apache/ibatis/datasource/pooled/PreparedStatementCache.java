@@ -0,0 +1,333 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * An LRU cache of prepared statements bound to one physical connection. It is handed from one
+ * {@link PooledConnection} wrapper to the next, so statements survive the sessions that use the connection.
+ * <p>
+ * The application gets a proxy; closing it resets the statement and puts it back into the cache. A statement is only
+ * handed out to one caller at a time, a second prepare of the same SQL while the first one is open gets its own.
+ */
+class PreparedStatementCache {
+
+  private static final String PREPARE_STATEMENT = "prepareStatement";
+  private static final Class<?>[] IFACES = new Class<?>[] { PreparedStatement.class };
+
+  /**
+   * Setters whose value is restored from the matching getter when the statement goes back into the cache
+   */
+  private static final Map<String, String> RESTORABLE_PROPERTIES = new HashMap<String, String>();
+  /**
+   * Setters without a getter, a statement that had one of these called is closed instead of cached
+   */
+  private static final Set<String> UNRESTORABLE_PROPERTIES = new HashSet<String>();
+  /**
+   * Methods whose result set is closed when the statement goes back into the cache
+   */
+  private static final Set<String> RESULT_SET_METHODS = new HashSet<String>();
+
+  static {
+    RESTORABLE_PROPERTIES.put("setQueryTimeout", "getQueryTimeout");
+    RESTORABLE_PROPERTIES.put("setFetchSize", "getFetchSize");
+    RESTORABLE_PROPERTIES.put("setFetchDirection", "getFetchDirection");
+    RESTORABLE_PROPERTIES.put("setMaxRows", "getMaxRows");
+    RESTORABLE_PROPERTIES.put("setLargeMaxRows", "getLargeMaxRows");
+    RESTORABLE_PROPERTIES.put("setMaxFieldSize", "getMaxFieldSize");
+    RESTORABLE_PROPERTIES.put("setPoolable", "isPoolable");
+    UNRESTORABLE_PROPERTIES.add("setCursorName");
+    UNRESTORABLE_PROPERTIES.add("setEscapeProcessing");
+    UNRESTORABLE_PROPERTIES.add("closeOnCompletion");
+    RESULT_SET_METHODS.add("executeQuery");
+    RESULT_SET_METHODS.add("getResultSet");
+    RESULT_SET_METHODS.add("getGeneratedKeys");
+  }
+
+  private final Map<StatementKey, PreparedStatement> idleStatements;
+  private final Set<CachedStatement> statementsInUse = new HashSet<CachedStatement>();
+
+  PreparedStatementCache(final int size) {
+    this.idleStatements = new LinkedHashMap<StatementKey, PreparedStatement>(size, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<StatementKey, PreparedStatement> eldest) {
+        if (size() > size) {
+          closeQuietly(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  static boolean isCacheable(Method method) {
+    return PREPARE_STATEMENT.equals(method.getName());
+  }
+
+  /**
+   * Hands out a cached statement or prepares a new one
+   *
+   * @param realConnection - the physical connection
+   * @param method - one of the prepareStatement methods of {@link Connection}
+   * @param args - the arguments, the SQL first
+   * @return a proxy that returns the statement to the cache when closed
+   */
+  synchronized PreparedStatement prepare(Connection realConnection, Method method, Object[] args) throws Throwable {
+    StatementKey key = new StatementKey(args);
+    PreparedStatement statement = idleStatements.remove(key);
+    if (statement == null) {
+      try {
+        statement = (PreparedStatement) method.invoke(realConnection, args);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+    CachedStatement cached = new CachedStatement(key, statement);
+    statementsInUse.add(cached);
+    return cached.getProxy();
+  }
+
+  /**
+   * Takes a statement closed by the application back
+   */
+  synchronized void release(CachedStatement cached) {
+    if (!statementsInUse.remove(cached)) {
+      return;
+    }
+    PreparedStatement statement = cached.getStatement();
+    if (!cached.reset() || idleStatements.containsKey(cached.getKey())) {
+      closeQuietly(statement);
+    } else {
+      idleStatements.put(cached.getKey(), statement);
+    }
+  }
+
+  /**
+   * Closes the statements the application did not close before returning the connection. Cached statements are kept.
+   */
+  synchronized void reset() {
+    List<CachedStatement> leftOpen = new ArrayList<CachedStatement>(statementsInUse);
+    statementsInUse.clear();
+    for (CachedStatement cached : leftOpen) {
+      cached.invalidate();
+      cached.closeResultSets();
+      closeQuietly(cached.getStatement());
+    }
+  }
+
+  /**
+   * Closes every statement
+   */
+  synchronized void clear() {
+    reset();
+    for (Iterator<PreparedStatement> it = idleStatements.values().iterator(); it.hasNext();) {
+      closeQuietly(it.next());
+      it.remove();
+    }
+  }
+
+  synchronized int size() {
+    return idleStatements.size();
+  }
+
+  private static void closeQuietly(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      // ignore
+    }
+  }
+
+  private static final class StatementKey {
+
+    private final Object[] args;
+    private final int hashCode;
+
+    StatementKey(Object[] args) {
+      this.args = new Object[args.length];
+      for (int i = 0; i < args.length; i++) {
+        Object arg = args[i];
+        if (arg instanceof int[]) {
+          arg = ((int[]) arg).clone();
+        } else if (arg instanceof Object[]) {
+          arg = ((Object[]) arg).clone();
+        }
+        this.args[i] = arg;
+      }
+      this.hashCode = Arrays.deepHashCode(this.args);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof StatementKey && Arrays.deepEquals(args, ((StatementKey) obj).args);
+    }
+  }
+
+  /**
+   * The application's view of a cached statement, valid until it is closed
+   */
+  private final class CachedStatement implements InvocationHandler {
+
+    private final StatementKey key;
+    private final PreparedStatement statement;
+    private final PreparedStatement proxy;
+    private final Map<String, Object> originalProperties = new HashMap<String, Object>();
+    private final List<ResultSet> resultSets = new ArrayList<ResultSet>();
+    private boolean reusable = true;
+    private boolean pendingBatch;
+    private volatile boolean closed;
+
+    CachedStatement(StatementKey key, PreparedStatement statement) {
+      this.key = key;
+      this.statement = statement;
+      this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), IFACES, this);
+    }
+
+    StatementKey getKey() {
+      return key;
+    }
+
+    PreparedStatement getStatement() {
+      return statement;
+    }
+
+    PreparedStatement getProxy() {
+      return proxy;
+    }
+
+    void invalidate() {
+      closed = true;
+    }
+
+    /**
+     * Closes the result sets the application did not close, the driver only does so when the statement is closed
+     */
+    void closeResultSets() {
+      try {
+        resultSets.add(statement.getResultSet());
+      } catch (SQLException e) {
+        // ignore
+      }
+      for (ResultSet resultSet : resultSets) {
+        if (resultSet != null) {
+          try {
+            resultSet.close();
+          } catch (SQLException e) {
+            // ignore
+          }
+        }
+      }
+      resultSets.clear();
+    }
+
+    /**
+     * Restores the properties the application changed and drops open result sets, parameters and unexecuted batches
+     *
+     * @return True if the statement can be handed out again
+     */
+    boolean reset() {
+      closeResultSets();
+      if (!reusable) {
+        return false;
+      }
+      try {
+        for (Map.Entry<String, Object> property : originalProperties.entrySet()) {
+          String getter = RESTORABLE_PROPERTIES.get(property.getKey());
+          Class<?> type = PreparedStatement.class.getMethod(getter).getReturnType();
+          PreparedStatement.class.getMethod(property.getKey(), type).invoke(statement, property.getValue());
+        }
+        if (pendingBatch) {
+          statement.clearBatch();
+        }
+        statement.clearParameters();
+        return !statement.isClosed();
+      } catch (Exception e) {
+        return false;
+      }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String methodName = method.getName();
+      if (Object.class.equals(method.getDeclaringClass())) {
+        if ("equals".equals(methodName)) {
+          return proxy == args[0];
+        } else if ("hashCode".equals(methodName)) {
+          return System.identityHashCode(proxy);
+        }
+        return method.invoke(statement, args);
+      }
+      if ("close".equals(methodName)) {
+        if (!closed) {
+          closed = true;
+          release(this);
+        }
+        return null;
+      } else if ("isClosed".equals(methodName) && closed) {
+        return true;
+      } else if (closed) {
+        throw new SQLException("Error accessing a cached PreparedStatement. Statement is closed.");
+      }
+      try {
+        if (RESTORABLE_PROPERTIES.containsKey(methodName)) {
+          if (!originalProperties.containsKey(methodName)) {
+            Method getter = PreparedStatement.class.getMethod(RESTORABLE_PROPERTIES.get(methodName));
+            originalProperties.put(methodName, getter.invoke(statement));
+          }
+        } else if (UNRESTORABLE_PROPERTIES.contains(methodName)) {
+          reusable = false;
+        } else if ("addBatch".equals(methodName)) {
+          pendingBatch = true;
+        } else if ("executeBatch".equals(methodName) || "executeLargeBatch".equals(methodName) || "clearBatch".equals(methodName)) {
+          pendingBatch = false;
+        }
+        Object result = method.invoke(statement, args);
+        if (RESULT_SET_METHODS.contains(methodName)) {
+          resultSets.add((ResultSet) result);
+        }
+        return result;
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+  }
+
+}
@@ -65,8 +65,8 @@ public abstract class BaseExecutor implements Executor {
   protected BaseExecutor(Configuration configuration, Transaction transaction) {
     this.transaction = transaction;
     this.deferredLoads = new ConcurrentLinkedQueue<DeferredLoad>();
-    this.localCache = new PerpetualCache("LocalCache");
     this.localOutputParameterCache = new PerpetualCache("LocalOutputParameterCache");
+    this.localCache = newLocalCache(configuration, localOutputParameterCache);
     this.closed = false;
     this.configuration = configuration;
     this.wrapper = this;
@@ -167,6 +167,8 @@ public abstract class BaseExecutor implements Executor {
       if (configuration.getLocalCacheScope() == LocalCacheScope.STATEMENT) {
         // issue #482
         clearLocalCache();
+      } else if (localCache instanceof BoundedLocalCache) {
+        ((BoundedLocalCache) localCache).evict(key);
       }
     }
     return list;
@@ -196,12 +198,11 @@ public abstract class BaseExecutor implements Executor {
     if (closed) {
       throw new ExecutorException("Executor was closed.");
     }
-    CacheKey cacheKey = new CacheKey();
-    cacheKey.update(ms.getId());
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    CacheKey cacheKey = new CacheKey(parameterMappings.size() + 4);
+    cacheKey.update(ms.getCacheKeyPrefix(boundSql.getSql()));
     cacheKey.update(rowBounds.getOffset());
     cacheKey.update(rowBounds.getLimit());
-    cacheKey.update(boundSql.getSql());
-    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
     TypeHandlerRegistry typeHandlerRegistry = ms.getConfiguration().getTypeHandlerRegistry();
     // mimic DefaultParameterHandler logic
     for (ParameterMapping parameterMapping : parameterMappings) {
@@ -233,6 +234,21 @@ public abstract class BaseExecutor implements Executor {
     return localCache.getObject(key) != null;
   }
 
+  @Override
+  public void cacheLocally(MappedStatement ms, CacheKey key, List<?> list) {
+    if (closed) {
+      throw new ExecutorException("Executor was closed.");
+    }
+    //存储过程的输出参数不在list中，不能放入缓存
+    if (configuration.getLocalCacheScope() == LocalCacheScope.STATEMENT || ms.getStatementType() == StatementType.CALLABLE) {
+      return;
+    }
+    localCache.putObject(key, list);
+    if (localCache instanceof BoundedLocalCache) {
+      ((BoundedLocalCache) localCache).evict(key);
+    }
+  }
+
   @Override
   public void commit(boolean required) throws SQLException {
     if (closed) {
@@ -343,6 +359,16 @@ public abstract class BaseExecutor implements Executor {
     }
   }
 
+  private static PerpetualCache newLocalCache(Configuration configuration, PerpetualCache localOutputParameterCache) {
+    Integer maxEntries = configuration == null ? null : configuration.getLocalCacheMaxEntries();
+    Integer maxRows = configuration == null ? null : configuration.getLocalCacheMaxRows();
+    if (maxEntries == null && maxRows == null) {
+      return new PerpetualCache("LocalCache");
+    }
+    return new BoundedLocalCache("LocalCache", maxEntries == null ? 0 : maxEntries, maxRows == null ? 0 : maxRows,
+        localOutputParameterCache);
+  }
+
   @Override
   public void setExecutorWrapper(Executor wrapper) {
     this.wrapper = wrapper;
@@ -17,12 +17,17 @@ package org.apache.ibatis.executor;
 
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.ibatis.cache.ObjectSizeWeigher;
+import org.apache.ibatis.cache.Weigher;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -30,6 +35,7 @@ import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
@@ -44,11 +50,36 @@ public class BatchExecutor extends BaseExecutor {
 
   private final List<Statement> statementList = new ArrayList<Statement>();
   private final List<BatchResult> batchResultList = new ArrayList<BatchResult>();
+  //自动刷新时已执行的结果，在下次flushStatements时一并返回；不保留参数时每个语句只保留一个合并后的结果
+  private final List<BatchResult> executedResultList = new ArrayList<BatchResult>();
+  //分组模式下每个语句和SQL对应的批次下标，交替执行的语句不会打断批处理
+  private final Map<MappedStatement, Map<String, Integer>> batchIndexes;
+  //改写为多行insert的批次，这些批次在statementList中的语句为null
+  private final Map<BatchResult, MultiRowInsertBatch> multiRowInserts;
   private String currentSql;
   private MappedStatement currentStatement;
+  private int currentIndex;
+  private final int flushRows;
+  private final long flushBytes;
+  private final boolean retainParameters;
+  private final Weigher weigher;
+  private final int insertRows;
+  private final Integer insertParameters;
+  private long pendingBytes;
 
   public BatchExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
+    Integer batchFlushRows = configuration.getBatchFlushRows();
+    Long batchFlushBytes = configuration.getBatchFlushBytes();
+    this.flushRows = batchFlushRows == null ? 0 : batchFlushRows;
+    this.flushBytes = batchFlushBytes == null ? 0 : batchFlushBytes;
+    this.retainParameters = configuration.isBatchRetainParameters();
+    this.weigher = flushBytes > 0 ? new ObjectSizeWeigher() : null;
+    this.batchIndexes = configuration.isBatchGrouping() ? new HashMap<MappedStatement, Map<String, Integer>>() : null;
+    Integer batchInsertRows = configuration.getBatchInsertRows();
+    this.insertRows = batchInsertRows == null ? 0 : batchInsertRows;
+    this.insertParameters = configuration.getBatchInsertParameters();
+    this.multiRowInserts = insertRows > 1 ? new HashMap<BatchResult, MultiRowInsertBatch>() : null;
   }
 
   @Override
@@ -57,28 +88,92 @@ public class BatchExecutor extends BaseExecutor {
     final StatementHandler handler = configuration.newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, null);
     final BoundSql boundSql = handler.getBoundSql();
     final String sql = boundSql.getSql();
-    final Statement stmt;
-    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
-      int last = statementList.size() - 1;
-      stmt = statementList.get(last);
-      applyTransactionTimeout(stmt);
-     handler.parameterize(stmt);//fix Issues 322
-      BatchResult batchResult = batchResultList.get(last);
+    Statement stmt = null;
+    final BatchResult batchResult;
+    MultiRowInsertBatch multiRowInsert = null;
+    int index = indexOf(ms, sql);
+    if (index >= 0) {
+      batchResult = batchResultList.get(index);
       batchResult.addParameterObject(parameterObject);
+      if (multiRowInserts != null) {
+        multiRowInsert = multiRowInserts.get(batchResult);
+      }
+      if (multiRowInsert == null) {
+        stmt = statementList.get(index);
+        applyTransactionTimeout(stmt);
+       handler.parameterize(stmt);//fix Issues 322
+      }
     } else {
-      Connection connection = getConnection(ms.getStatementLog());
-      stmt = handler.prepare(connection, transaction.getTimeout());
-      handler.parameterize(stmt);    //fix Issues 322
-      currentSql = sql;
-      currentStatement = ms;
+      if (multiRowInserts != null) {
+        multiRowInsert = MultiRowInsertBatch.newInstance(this, ms, boundSql, insertRows, insertParameters);
+      }
+      if (multiRowInsert == null) {
+        Connection connection = getConnection(ms.getStatementLog());
+        stmt = handler.prepare(connection, transaction.getTimeout());
+        handler.parameterize(stmt);    //fix Issues 322
+      }
+      index = statementList.size();
       statementList.add(stmt);
-      batchResultList.add(new BatchResult(ms, sql, parameterObject));
+      batchResult = new BatchResult(ms, sql, parameterObject);
+      batchResultList.add(batchResult);
+      if (multiRowInsert != null) {
+        multiRowInserts.put(batchResult, multiRowInsert);
+      }
+      if (batchIndexes != null) {
+        Map<String, Integer> indexes = batchIndexes.get(ms);
+        if (indexes == null) {
+          indexes = new HashMap<String, Integer>();
+          batchIndexes.put(ms, indexes);
+        }
+        indexes.put(sql, index);
+      }
     }
+    currentSql = sql;
+    currentStatement = ms;
+    currentIndex = index;
   // handler.parameterize(stmt);
-    handler.batch(stmt);
+    if (multiRowInsert != null) {
+      multiRowInsert.addRow(parameterObject, boundSql);
+    } else {
+      handler.batch(stmt);
+    }
+    if (isFlushRequired(batchResult, parameterObject)) {
+      executeStatements(executedResultList, !retainParameters);
+    }
     return BATCH_UPDATE_RETURN_VALUE;
   }
 
+  /**
+   * The index of the pending batch the statement and SQL can be added to, -1 if a new one has to be started
+   */
+  private int indexOf(MappedStatement ms, String sql) {
+    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
+      return currentIndex;
+    }
+    if (batchIndexes != null) {
+      Map<String, Integer> indexes = batchIndexes.get(ms);
+      Integer index = indexes == null ? null : indexes.get(sql);
+      if (index != null) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Whether the statement holds enough rows, or the pending statements enough parameters, to execute them now
+   */
+  private boolean isFlushRequired(BatchResult batchResult, Object parameterObject) {
+    if (flushRows > 0 && batchResult.getParameterObjects().size() >= flushRows) {
+      return true;
+    }
+    if (flushBytes > 0) {
+      pendingBytes += weigher.weigh(parameterObject);
+      return pendingBytes >= flushBytes;
+    }
+    return false;
+  }
+
   @Override
   public <E> List<E> doQuery(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
       throws SQLException {
@@ -109,30 +204,42 @@ public class BatchExecutor extends BaseExecutor {
 
   @Override
   public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
+    List<BatchResult> results = new ArrayList<BatchResult>(executedResultList);
+    executedResultList.clear();
+    if (isRollback) {
+      closeStatements();
+      return Collections.emptyList();
+    }
+    executeStatements(results, false);
+    return results;
+  }
+
+  /**
+   * Executes the pending statements in order and adds their results to the list
+   *
+   * @param merge whether a result is merged into an earlier one of the same statement and SQL, adding up their update
+   *        counts, so that automatic flushes do not keep a result each
+   */
+  private void executeStatements(List<BatchResult> results, boolean merge) throws SQLException {
     try {
-      List<BatchResult> results = new ArrayList<BatchResult>();
-      if (isRollback) {
-        return Collections.emptyList();
-      }
-      for (int i = 0, n = statementList.size(); i < n; i++) {
-        Statement stmt = statementList.get(i);
-        applyTransactionTimeout(stmt);
-        BatchResult batchResult = batchResultList.get(i);
+      int[] order = executionOrder();
+      for (int i = 0, n = order.length; i < n; i++) {
+        Statement stmt = statementList.get(order[i]);
+        BatchResult batchResult = batchResultList.get(order[i]);
+        MultiRowInsertBatch multiRowInsert = multiRowInserts == null ? null : multiRowInserts.get(batchResult);
         try {
-          batchResult.setUpdateCounts(stmt.executeBatch());
-          MappedStatement ms = batchResult.getMappedStatement();
-          List<Object> parameterObjects = batchResult.getParameterObjects();
-          KeyGenerator keyGenerator = ms.getKeyGenerator();
-          if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
-            Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
-            jdbc3KeyGenerator.processBatch(ms, stmt, parameterObjects);
-          } else if (!NoKeyGenerator.class.equals(keyGenerator.getClass())) { //issue #141
-            for (Object parameter : parameterObjects) {
-              keyGenerator.processAfter(this, ms, stmt, parameter);
-            }
+          if (multiRowInsert != null) {
+            batchResult.setUpdateCounts(multiRowInsert.execute());
+          } else {
+            applyTransactionTimeout(stmt);
+            batchResult.setUpdateCounts(stmt.executeBatch());
+            generateKeys(batchResult.getMappedStatement(), stmt, batchResult.getParameterObjects());
+            // Close statement to close cursor #1109
+            closeStatement(stmt);
+          }
+          if (!retainParameters) {
+            batchResult.clearParameterObjects();
           }
-          // Close statement to close cursor #1109
-          closeStatement(stmt);
         } catch (BatchUpdateException e) {
           StringBuilder message = new StringBuilder();
           message.append(batchResult.getMappedStatement().getId())
@@ -145,18 +252,127 @@ public class BatchExecutor extends BaseExecutor {
                 .append(i)
                 .append(" prior sub executor(s) completed successfully, but will be rolled back.");
           }
-          throw new BatchExecutorException(message.toString(), e, results, batchResult);
+          // a copy, the executed results are cleared by the next flush or rollback
+          throw new BatchExecutorException(message.toString(), e, new ArrayList<BatchResult>(results), batchResult);
+        }
+        if (merge) {
+          addMerged(results, batchResult);
+        } else {
+          results.add(batchResult);
         }
-        results.add(batchResult);
       }
-      return results;
     } finally {
-      for (Statement stmt : statementList) {
-        closeStatement(stmt);
+      closeStatements();
+    }
+  }
+
+  private static void addMerged(List<BatchResult> results, BatchResult batchResult) {
+    int total = totalOf(batchResult.getUpdateCounts());
+    for (BatchResult executed : results) {
+      if (executed.getMappedStatement().equals(batchResult.getMappedStatement()) && executed.getSql().equals(batchResult.getSql())) {
+        int executedTotal = totalOf(executed.getUpdateCounts());
+        boolean known = total != Statement.SUCCESS_NO_INFO && executedTotal != Statement.SUCCESS_NO_INFO;
+        executed.setUpdateCounts(new int[] { known ? executedTotal + total : Statement.SUCCESS_NO_INFO });
+        return;
+      }
+    }
+    batchResult.setUpdateCounts(new int[] { total });
+    results.add(batchResult);
+  }
+
+  /**
+   * The sum of the update counts, {@link Statement#SUCCESS_NO_INFO} if one of them is unknown
+   */
+  private static int totalOf(int[] updateCounts) {
+    int total = 0;
+    for (int updateCount : updateCounts) {
+      if (updateCount < 0) {
+        return Statement.SUCCESS_NO_INFO;
+      }
+      total += updateCount;
+    }
+    return total;
+  }
+
+  void generateKeys(MappedStatement ms, Statement stmt, List<Object> parameterObjects) throws SQLException {
+    KeyGenerator keyGenerator = ms.getKeyGenerator();
+    if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
+      Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
+      jdbc3KeyGenerator.processBatch(ms, stmt, parameterObjects);
+    } else if (!NoKeyGenerator.class.equals(keyGenerator.getClass())) { //issue #141
+      for (Object parameter : parameterObjects) {
+        keyGenerator.processAfter(this, ms, stmt, parameter);
+      }
+    }
+  }
+
+  /**
+   * Prepares a statement for SQL derived from the statement's own, the parameters are bound by the caller
+   */
+  PreparedStatement prepareStatement(MappedStatement ms, String sql, Object parameterObject) throws SQLException {
+    BoundSql boundSql = new BoundSql(ms.getConfiguration(), sql, Collections.<ParameterMapping>emptyList(), parameterObject);
+    StatementHandler handler = ms.getConfiguration().newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, boundSql);
+    return (PreparedStatement) handler.prepare(getConnection(ms.getStatementLog()), transaction.getTimeout());
+  }
+
+  /**
+   * The pending batches in the order they were started. When statements are grouped, the batches of the statements
+   * named in {@link MappedStatement#getBatchAfter()} are moved before the batch that names them.
+   */
+  private int[] executionOrder() {
+    int n = statementList.size();
+    int[] order = new int[n];
+    if (batchIndexes == null) {
+      for (int i = 0; i < n; i++) {
+        order[i] = i;
+      }
+      return order;
+    }
+    boolean[] visited = new boolean[n];
+    int position = 0;
+    for (int i = 0; i < n; i++) {
+      position = addInOrder(i, visited, order, position);
+    }
+    return order;
+  }
+
+  private int addInOrder(int index, boolean[] visited, int[] order, int position) {
+    if (visited[index]) {
+      return position;
+    }
+    //先标记，循环依赖时按开始的顺序执行
+    visited[index] = true;
+    String[] batchAfter = batchResultList.get(index).getMappedStatement().getBatchAfter();
+    if (batchAfter != null) {
+      for (String statementId : batchAfter) {
+        for (int i = 0, n = batchResultList.size(); i < n; i++) {
+          if (statementId.equals(batchResultList.get(i).getMappedStatement().getId())) {
+            position = addInOrder(i, visited, order, position);
+          }
+        }
+      }
+    }
+    order[position] = index;
+    return position + 1;
+  }
+
+  private void closeStatements() {
+    for (Statement stmt : statementList) {
+      closeStatement(stmt);
+    }
+    currentSql = null;
+    currentStatement = null;
+    pendingBytes = 0;
+    statementList.clear();
+    batchResultList.clear();
+    if (batchIndexes != null) {
+      batchIndexes.clear();
+    }
+    if (multiRowInserts != null) {
+      for (MultiRowInsertBatch multiRowInsert : multiRowInserts.values()) {
+        multiRowInsert.close();
       }
-      currentSql = null;
-      statementList.clear();
-      batchResultList.clear();
+      multiRowInserts.clear();
     }
   }
 
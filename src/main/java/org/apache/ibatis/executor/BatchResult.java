@@ -27,7 +27,7 @@ public class BatchResult {
 
   private final MappedStatement mappedStatement;
   private final String sql;
-  private final List<Object> parameterObjects;
+  private final ArrayList<Object> parameterObjects;
 
   private int[] updateCounts;
 
@@ -72,4 +72,14 @@ public class BatchResult {
     this.parameterObjects.add(parameterObject);
   }
 
+  /**
+   * Drops the parameter objects, so a long batch does not keep every row in memory.
+   *
+   * @since 3.4.6
+   */
+  public void clearParameterObjects() {
+    this.parameterObjects.clear();
+    this.parameterObjects.trimToSize();
+  }
+
 }
@@ -0,0 +1,116 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+
+/**
+ * 有上限的一级缓存，按LRU淘汰
+ * A local cache that holds a limited number of entries and rows.
+ * <p>
+ * Entries are only evicted when {@link #evict(Object)} is called, which the executor does once the outermost query
+ * has completed. While a query runs, the cache holds execution placeholders and results that deferred loads
+ * still have to read, so nothing can be dropped before then.
+ *
+ * @since 3.4.6
+ */
+class BoundedLocalCache extends PerpetualCache {
+
+  private final Map<Object, Object> cache = new LinkedHashMap<Object, Object>(16, 0.75f, true);
+  private final int maxEntries;
+  private final int maxRows;
+  //淘汰时一并清除的缓存，如存储过程的输出参数
+  private final Cache companion;
+  private int rows;
+
+  /**
+   * @param maxEntries the number of entries to keep, zero or less for no limit
+   * @param maxRows the total number of rows of cached lists to keep, zero or less for no limit
+   * @param companion a cache whose entries are evicted together with these, null if none
+   */
+  BoundedLocalCache(String id, int maxEntries, int maxRows, Cache companion) {
+    super(id);
+    this.maxEntries = maxEntries;
+    this.maxRows = maxRows;
+    this.companion = companion;
+  }
+
+  @Override
+  public int getSize() {
+    return cache.size();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    rows += rowsOf(value) - rowsOf(cache.put(key, value));
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return cache.get(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Object value = cache.remove(key);
+    rows -= rowsOf(value);
+    return value;
+  }
+
+  @Override
+  public void clear() {
+    cache.clear();
+    rows = 0;
+  }
+
+  /**
+   * Drops the least recently used entries until the cache is within its limits.
+   *
+   * @param lastKey the key of the query that just completed, kept as the most recently used entry even though
+   *        its deferred loads read other entries after it
+   */
+  public void evict(Object lastKey) {
+    cache.get(lastKey);
+    Iterator<Map.Entry<Object, Object>> it = cache.entrySet().iterator();
+    while (it.hasNext() && exceeded()) {
+      Map.Entry<Object, Object> eldest = it.next();
+      rows -= rowsOf(eldest.getValue());
+      it.remove();
+      if (companion != null) {
+        companion.removeObject(eldest.getKey());
+      }
+    }
+  }
+
+  int getRows() {
+    return rows;
+  }
+
+  private boolean exceeded() {
+    return (maxEntries > 0 && cache.size() > maxEntries) || (maxRows > 0 && rows > maxRows);
+  }
+
+  private static int rowsOf(Object value) {
+    return value instanceof List ? ((List<?>) value).size() : 0;
+  }
+
+}
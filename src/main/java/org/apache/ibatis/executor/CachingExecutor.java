@@ -17,10 +17,13 @@ package org.apache.ibatis.executor;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CacheStatistics;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
@@ -39,10 +42,20 @@ import org.apache.ibatis.transaction.Transaction;
 public class CachingExecutor implements Executor {
 
   private final Executor delegate;
-  private final TransactionalCacheManager tcm = new TransactionalCacheManager();
+  private final TransactionalCacheManager tcm;
+  private final StatementRefresher refresher = new StatementRefresher();
 
   public CachingExecutor(Executor delegate) {
+    this(delegate, false);
+  }
+
+  /**
+   * @param writeThrough whether query results go straight into the caches until the transaction writes
+   * @since 3.4.6
+   */
+  public CachingExecutor(Executor delegate, boolean writeThrough) {
     this.delegate = delegate;
+    this.tcm = new TransactionalCacheManager(writeThrough);
     delegate.setExecutorWrapper(this);
   }
 
@@ -72,6 +85,7 @@ public class CachingExecutor implements Executor {
 
   @Override
   public int update(MappedStatement ms, Object parameterObject) throws SQLException {
+    tcm.markWritten();
     flushCacheIfRequired(ms);
     return delegate.update(ms, parameterObject);
   }
@@ -97,11 +111,14 @@ public class CachingExecutor implements Executor {
       flushCacheIfRequired(ms);
       if (ms.isUseCache() && resultHandler == null) {
         ensureNoOutParams(ms, boundSql);
-        @SuppressWarnings("unchecked")
-        List<E> list = (List<E>) tcm.getObject(cache, key);
+        List<E> list = getCachedList(cache, ms, parameterObject, rowBounds, key, boundSql);
         if (list == null) {
+          long start = System.nanoTime();
           list = delegate.<E> query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
-          tcm.putObject(cache, key, list); // issue #578 and #116
+          recordLoadTime(ms, cache, System.nanoTime() - start);
+          if (ms.isCacheEmptyResults() || !list.isEmpty()) {
+            tcm.putObject(cache, key, list, ms.getReadTables()); // issue #578 and #116
+          }
         }
         return list;
       }
@@ -131,6 +148,28 @@ public class CachingExecutor implements Executor {
     }
   }
 
+  /**
+   * Looks the query up, letting an {@link ExpiringCache} reload the entry in the background when it is about to expire
+   */
+  @SuppressWarnings("unchecked")
+  private <E> List<E> getCachedList(Cache cache, MappedStatement ms, Object parameterObject, RowBounds rowBounds, CacheKey key, BoundSql boundSql) {
+    refresher.prepare(ms, parameterObject, rowBounds, boundSql);
+    ExpiringCache.setRefresher(refresher);
+    try {
+      return (List<E>) tcm.getObject(cache, key);
+    } finally {
+      ExpiringCache.removeRefresher();
+      refresher.reset();
+    }
+  }
+
+  private void recordLoadTime(MappedStatement ms, Cache cache, long nanos) {
+    CacheStatistics statistics = ms.getConfiguration().getCacheStatistics(cache.getId());
+    if (statistics != null) {
+      statistics.recordLoadTime(nanos);
+    }
+  }
+
   private void ensureNoOutParams(MappedStatement ms, BoundSql boundSql) {
     if (ms.getStatementType() == StatementType.CALLABLE) {
       for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
@@ -151,6 +190,11 @@ public class CachingExecutor implements Executor {
     return delegate.isCached(ms, key);
   }
 
+  @Override
+  public void cacheLocally(MappedStatement ms, CacheKey key, List<?> list) {
+    delegate.cacheLocally(ms, key, list);
+  }
+
   @Override
   public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
     delegate.deferLoad(ms, resultObject, property, key, targetType);
@@ -163,8 +207,13 @@ public class CachingExecutor implements Executor {
 
   private void flushCacheIfRequired(MappedStatement ms) {
     Cache cache = ms.getCache();
-    if (cache != null && ms.isFlushCacheRequired()) {      
-      tcm.clear(cache);
+    if (cache != null && ms.isFlushCacheRequired()) {
+      Set<String> writtenTables = ms.getWrittenTables();
+      if (writtenTables != null) {
+        tcm.invalidate(cache, writtenTables);
+      } else {
+        tcm.clear(cache);
+      }
     }
   }
 
@@ -52,6 +52,14 @@ public interface Executor {
 
   boolean isCached(MappedStatement ms, CacheKey key);
 
+  /**
+   * Puts the result of a query run elsewhere, e.g. on another connection, into the local cache.
+   * Does nothing when the local cache only lives for a statement, or when the executor has no local cache.
+   * @since 3.4.6
+   */
+  default void cacheLocally(MappedStatement ms, CacheKey key, List<?> list) {
+  }
+
   void clearLocalCache();
 
   void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType);
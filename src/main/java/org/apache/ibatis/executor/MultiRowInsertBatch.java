@@ -0,0 +1,266 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * The batch of one insert statement, sent as multi-row {@code INSERT ... VALUES (...), (...)} statements.
+ * <p>
+ * Rows are collected until a statement is full, then bound to the multi-row statement, shifting each row's parameter
+ * indexes, and added to its JDBC batch. The rows left over at execution time go into one smaller statement.
+ * Parameter objects keep the order the rows were added in, so generated keys still map back to them.
+ *
+ * @since 3.4.6
+ */
+class MultiRowInsertBatch {
+
+  private final BatchExecutor executor;
+  private final MappedStatement ms;
+  private final String prefix;
+  private final String values;
+  private final int rowsPerStatement;
+  private final List<Object> pendingParameters = new ArrayList<Object>();
+  private final List<BoundSql> pendingBoundSqls = new ArrayList<BoundSql>();
+  private final List<Object> batchedParameters = new ArrayList<Object>();
+  private PreparedStatement batchedStatement;
+  private PreparedStatement remainderStatement;
+  private ParameterOffset batchedOffset;
+
+  private MultiRowInsertBatch(BatchExecutor executor, MappedStatement ms, String prefix, String values, int rowsPerStatement) {
+    this.executor = executor;
+    this.ms = ms;
+    this.prefix = prefix;
+    this.values = values;
+    this.rowsPerStatement = rowsPerStatement;
+  }
+
+  /**
+   * @return the batch, or null if the statement cannot be rewritten
+   */
+  static MultiRowInsertBatch newInstance(BatchExecutor executor, MappedStatement ms, BoundSql boundSql, int maxRows, Integer maxParameters) {
+    if (ms.getSqlCommandType() != SqlCommandType.INSERT || ms.getStatementType() != StatementType.PREPARED) {
+      return null;
+    }
+    //selectKey在多行语句里无法对应到每一行
+    KeyGenerator keyGenerator = ms.getKeyGenerator();
+    if (!Jdbc3KeyGenerator.class.equals(keyGenerator.getClass()) && !NoKeyGenerator.class.equals(keyGenerator.getClass())) {
+      return null;
+    }
+    String sql = boundSql.getSql();
+    int valuesStart = indexOfValues(sql);
+    if (valuesStart < 0) {
+      return null;
+    }
+    int parameters = boundSql.getParameterMappings().size();
+    int rows = maxRows;
+    if (maxParameters != null && parameters > 0) {
+      rows = Math.min(rows, maxParameters / parameters);
+    }
+    if (rows < 2) {
+      return null;
+    }
+    return new MultiRowInsertBatch(executor, ms, sql.substring(0, valuesStart), sql.substring(valuesStart).trim(), rows);
+  }
+
+  /**
+   * The start of the single parenthesized group after the VALUES keyword, -1 if the group is not the end of the SQL
+   */
+  static int indexOfValues(String sql) {
+    String upper = sql.toUpperCase(Locale.ENGLISH);
+    if (!upper.trim().startsWith("INSERT")) {
+      return -1;
+    }
+    int keyword = -1;
+    char quote = 0;
+    for (int i = 0, n = sql.length(); i < n; i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (upper.startsWith("VALUES", i) && isBoundary(sql, i - 1) && isBoundary(sql, i + 6)) {
+        keyword = i;
+        break;
+      }
+    }
+    if (keyword < 0) {
+      return -1;
+    }
+    int start = keyword + 6;
+    while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+      start++;
+    }
+    if (start == sql.length() || sql.charAt(start) != '(') {
+      return -1;
+    }
+    int depth = 0;
+    quote = 0;
+    for (int i = start, n = sql.length(); i < n; i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')' && --depth == 0) {
+        return sql.substring(i + 1).trim().isEmpty() ? start : -1;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isBoundary(String sql, int index) {
+    return index < 0 || index >= sql.length() || !Character.isLetterOrDigit(sql.charAt(index)) && sql.charAt(index) != '_';
+  }
+
+  MappedStatement getMappedStatement() {
+    return ms;
+  }
+
+  void addRow(Object parameterObject, BoundSql boundSql) throws SQLException {
+    pendingParameters.add(parameterObject);
+    pendingBoundSqls.add(boundSql);
+    if (pendingParameters.size() == rowsPerStatement) {
+      if (batchedStatement == null) {
+        batchedStatement = executor.prepareStatement(ms, multiRowSql(rowsPerStatement), parameterObject);
+        batchedOffset = new ParameterOffset(batchedStatement);
+      }
+      bindPendingRows(batchedOffset);
+      batchedStatement.addBatch();
+      batchedParameters.addAll(pendingParameters);
+      pendingParameters.clear();
+      pendingBoundSqls.clear();
+    }
+  }
+
+  /**
+   * Executes the multi-row statements and assigns the generated keys
+   *
+   * @return one update count per row, {@link Statement#SUCCESS_NO_INFO} for the rows of a statement that did not
+   *         report one per row
+   */
+  int[] execute() throws SQLException {
+    int[] updateCounts = new int[batchedParameters.size() + pendingParameters.size()];
+    int row = 0;
+    if (batchedStatement != null) {
+      row = execute(batchedStatement, rowsPerStatement, batchedParameters, updateCounts, row);
+    }
+    if (!pendingParameters.isEmpty()) {
+      int rows = pendingParameters.size();
+      remainderStatement = executor.prepareStatement(ms, multiRowSql(rows), pendingParameters.get(0));
+      bindPendingRows(new ParameterOffset(remainderStatement));
+      remainderStatement.addBatch();
+      execute(remainderStatement, rows, pendingParameters, updateCounts, row);
+    }
+    close();
+    return updateCounts;
+  }
+
+  private int execute(PreparedStatement stmt, int rows, List<Object> parameterObjects, int[] updateCounts, int row) throws SQLException {
+    executor.applyTransactionTimeout(stmt);
+    int[] statementCounts = stmt.executeBatch();
+    executor.generateKeys(ms, stmt, parameterObjects);
+    for (int count : statementCounts) {
+      int rowCount = count == rows ? 1 : Statement.SUCCESS_NO_INFO;
+      for (int i = 0; i < rows; i++) {
+        updateCounts[row++] = rowCount;
+      }
+    }
+    return row;
+  }
+
+  void close() {
+    executor.closeStatement(batchedStatement);
+    executor.closeStatement(remainderStatement);
+  }
+
+  private void bindPendingRows(ParameterOffset offset) throws SQLException {
+    for (int i = 0, n = pendingParameters.size(); i < n; i++) {
+      BoundSql boundSql = pendingBoundSqls.get(i);
+      offset.offset = i * boundSql.getParameterMappings().size();
+      ms.getConfiguration().newParameterHandler(ms, pendingParameters.get(i), boundSql).setParameters(offset.statement);
+    }
+  }
+
+  private String multiRowSql(int rows) {
+    StringBuilder sql = new StringBuilder(prefix.length() + (values.length() + 1) * rows);
+    sql.append(prefix);
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) {
+        sql.append(',');
+      }
+      sql.append(values);
+    }
+    return sql.toString();
+  }
+
+  /**
+   * Lets a parameter handler bind a row at its place in the multi-row statement
+   */
+  private static class ParameterOffset implements InvocationHandler {
+
+    private final PreparedStatement target;
+    private final PreparedStatement statement;
+    private int offset;
+
+    ParameterOffset(PreparedStatement target) {
+      this.target = target;
+      this.statement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+          new Class<?>[] { PreparedStatement.class }, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
+      try {
+        if (Object.class.equals(method.getDeclaringClass())) {
+          return method.invoke(this, params);
+        }
+        //PreparedStatement上声明的set方法第一个参数都是参数下标
+        if (PreparedStatement.class.equals(method.getDeclaringClass()) && method.getName().startsWith("set")
+            && params != null && params.length > 1 && params[0] instanceof Integer) {
+          params[0] = (Integer) params[0] + offset;
+        }
+        return method.invoke(target, params);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    }
+  }
+
+}
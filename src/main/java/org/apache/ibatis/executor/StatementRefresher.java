@@ -0,0 +1,130 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+/**
+ * Reloads a second level cache entry by running the statement of the current lookup again, in its own transaction.
+ * One instance per {@link CachingExecutor}, pointed at each cached query before the lookup.
+ * <p>
+ * The parameter values are copied when the reload is scheduled, since the caller may change its parameter object
+ * before the reload runs. The reload goes through a regular executor, so plugins see it; its lookup misses the entry
+ * being reloaded and its commit puts the new value into the cache. A failed reload drops the entry.
+ */
+class StatementRefresher implements ExpiringCache.Refresher {
+
+  private static final String SNAPSHOT_PREFIX = "__refresh_";
+
+  private MappedStatement ms;
+  private Object parameterObject;
+  private RowBounds rowBounds;
+  private BoundSql boundSql;
+
+  void prepare(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql) {
+    this.ms = ms;
+    this.parameterObject = parameterObject;
+    this.rowBounds = rowBounds;
+    this.boundSql = boundSql;
+  }
+
+  void reset() {
+    prepare(null, null, null, null);
+  }
+
+  @Override
+  public Runnable newRefreshTask(final Object key) {
+    final Configuration configuration = ms.getConfiguration();
+    final Environment environment = configuration.getEnvironment();
+    if (environment == null || !(key instanceof CacheKey) || ms.getStatementType() == StatementType.CALLABLE) {
+      return null;
+    }
+    final MappedStatement ms = this.ms;
+    final RowBounds rowBounds = this.rowBounds;
+    final BoundSql snapshot = snapshot(configuration);
+    return new Runnable() {
+      @Override
+      public void run() {
+        Transaction tx = environment.getTransactionFactory().newTransaction(environment.getDataSource(), null, false);
+        Executor executor = configuration.newExecutor(tx, ExecutorType.SIMPLE);
+        boolean committed = false;
+        try {
+          executor.query(ms, snapshot.getParameterObject(), rowBounds, Executor.NO_RESULT_HANDLER, (CacheKey) key, snapshot);
+          // only read, publishes the reloaded entry
+          executor.commit(false);
+          committed = true;
+        } catch (SQLException e) {
+          throw new ExecutorException("Error reloading cache entry of " + ms.getId() + ".  Cause: " + e, e);
+        } finally {
+          executor.close(!committed);
+        }
+      }
+    };
+  }
+
+  /**
+   * Copies the SQL with the values the parameters have now, the way the parameter handler reads them
+   */
+  private BoundSql snapshot(Configuration configuration) {
+    TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+    List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+    List<Object> values = new ArrayList<Object>();
+    for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+      Object value;
+      String propertyName = parameterMapping.getProperty();
+      if (boundSql.hasAdditionalParameter(propertyName)) {
+        value = boundSql.getAdditionalParameter(propertyName);
+      } else if (parameterObject == null) {
+        value = null;
+      } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+        value = parameterObject;
+      } else {
+        value = configuration.newMetaObject(parameterObject).getValue(propertyName);
+      }
+      values.add(value);
+      parameterMappings.add(new ParameterMapping.Builder(configuration, SNAPSHOT_PREFIX + parameterMappings.size(),
+          parameterMapping.getTypeHandler())
+          .javaType(parameterMapping.getJavaType())
+          .jdbcType(parameterMapping.getJdbcType())
+          .jdbcTypeName(parameterMapping.getJdbcTypeName())
+          .numericScale(parameterMapping.getNumericScale())
+          .mode(ParameterMode.IN)
+          .build());
+    }
+    BoundSql snapshot = new BoundSql(configuration, boundSql.getSql(), parameterMappings, values);
+    for (int i = 0; i < values.size(); i++) {
+      snapshot.setAdditionalParameter(SNAPSHOT_PREFIX + i, values.get(i));
+    }
+    return snapshot;
+  }
+
+}
@@ -18,7 +18,12 @@ package org.apache.ibatis.mapping;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheStatisticsRegistry;
+import org.apache.ibatis.cache.EvictingCache;
+import org.apache.ibatis.cache.ThreadSafeCache;
 import org.apache.ibatis.cache.decorators.*;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
@@ -42,6 +47,7 @@ public class CacheBuilder {
     private boolean readWrite;
     private Properties properties;
     private boolean blocking;
+    private CacheStatisticsRegistry statisticsRegistry;
 
     public CacheBuilder(String id) {
         this.id = id;
@@ -85,6 +91,15 @@ public class CacheBuilder {
         return this;
     }
 
+    /**
+     * @param statisticsRegistry where to register the statistics of the built cache
+     * @since 3.4.6
+     */
+    public CacheBuilder statisticsRegistry(CacheStatisticsRegistry statisticsRegistry) {
+        this.statisticsRegistry = statisticsRegistry;
+        return this;
+    }
+
     /**
      * 构建缓存，1.构建缓存实例，2.给缓存实例构建包装类，3.给包装类构建一个日志类
      * @return
@@ -96,22 +111,98 @@ public class CacheBuilder {
         Cache cache = newBaseCacheInstance(implementation, id);
         //设置Cache的参数
         setCacheProperties(cache);
+        //自带淘汰的缓存，淘汰数由LoggingCache统计
+        List<EvictingCache> evictingCaches = new ArrayList<EvictingCache>();
+        if (cache instanceof EvictingCache) {
+            evictingCaches.add((EvictingCache) cache);
+        }
         // issue #352, do not apply decorators to custom caches
         //自定义的缓存不需要初始化包装类
-        if (PerpetualCache.class.equals(cache.getClass())) {
+        if (PerpetualCache.class.equals(cache.getClass()) || ConcurrentPerpetualCache.class.equals(cache.getClass())
+                || OffHeapCache.class.equals(cache.getClass())) {
+            //所有包装类都是线程安全的时候不需要SynchronizedCache
+            boolean threadSafe = cache instanceof ThreadSafeCache;
+            //堆外缓存自带淘汰，不再叠加默认的LRU
+            boolean evictsItself = cache instanceof OffHeapCache;
+            //size直接交给堆外缓存，外面的包装类没有size属性
+            if (evictsItself && size != null) {
+                ((OffHeapCache) cache).setSize(size);
+            }
+            //自带淘汰的缓存不经过removeObject，通过监听告诉记录了key的包装类
+            EvictingCache evictingBase = cache instanceof EvictingCache ? (EvictingCache) cache : null;
+            //按表清除，索引放在最里层以便看到淘汰策略的删除
+            TableDependencyCache dependencies = null;
+            if (isTableInvalidation()) {
+                dependencies = new TableDependencyCache(cache);
+                cache = dependencies;
+                if (evictingBase != null) {
+                    evictingBase.addEvictionListener(dependencies);
+                }
+            }
+            //按条目过期，放在淘汰策略里面，淘汰时一起删除
+            if (isExpiring()) {
+                cache = new ExpiringCache(cache);
+                setCacheProperties(cache);
+                if (evictingBase != null) {
+                    evictingBase.addEvictionListener((ExpiringCache) cache);
+                }
+            }
             for (Class<? extends Cache> decorator : decorators) {
+                if (evictsItself && LruCache.class.equals(decorator)) {
+                    continue;
+                }
                 cache = newCacheDecoratorInstance(decorator, cache);
                 setCacheProperties(cache);
+                threadSafe &= cache instanceof ThreadSafeCache;
+                if (cache instanceof EvictingCache) {
+                    evictingCaches.add((EvictingCache) cache);
+                }
             }
             //根据配置，设置Cache包装类型
-            cache = setStandardDecorators(cache);
+            cache = setStandardDecorators(cache, threadSafe, evictingCaches);
+            if (dependencies != null) {
+                cache = new TableInvalidatingCache(cache, dependencies);
+            }
         } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
             //日志记录包装，主要是在自定义包装类的时候使用
-            cache = new LoggingCache(cache);
+            cache = newLoggingCache(cache, evictingCaches);
+        } else {
+            registerStatistics((LoggingCache) cache);
         }
         return cache;
     }
 
+    private LoggingCache newLoggingCache(Cache delegate, List<EvictingCache> evictingCaches) {
+        LoggingCache cache = new LoggingCache(delegate);
+        //可通过metricsClass属性把统计事件转给监控系统
+        setCacheProperties(cache);
+        for (EvictingCache evictingCache : evictingCaches) {
+            evictingCache.addEvictionListener(cache);
+        }
+        registerStatistics(cache);
+        return cache;
+    }
+
+    private void registerStatistics(LoggingCache cache) {
+        if (statisticsRegistry != null) {
+            statisticsRegistry.register(cache.getStatistics());
+        }
+    }
+
+    private boolean isTableInvalidation() {
+        return properties != null && Boolean.valueOf(properties.getProperty("tableInvalidation"));
+    }
+
+    private boolean isNegativeCaching() {
+        return properties != null
+                && (properties.containsKey("negativeSize") || properties.containsKey("negativeExpireAfterWrite"));
+    }
+
+    private boolean isExpiring() {
+        return properties != null
+                && (properties.containsKey("expireAfterWrite") || properties.containsKey("expireAfterAccess"));
+    }
+
     /**
      * 设置默认的实现Cache
      */
@@ -127,9 +218,10 @@ public class CacheBuilder {
     /**
      * 根据配置的信息，给缓存一个标准的包装类
      * @param cache
+     * @param threadSafe 基础缓存及其包装类是否都是线程安全的
      * @return
      */
-    private Cache setStandardDecorators(Cache cache) {
+    private Cache setStandardDecorators(Cache cache, boolean threadSafe, List<EvictingCache> evictingCaches) {
         try {
             MetaObject metaCache = SystemMetaObject.forObject(cache);
             if (size != null && metaCache.hasSetter("size")) {
@@ -141,11 +233,23 @@ public class CacheBuilder {
             }
             if (readWrite) {
                 cache = new SerializedCache(cache);
+                //可通过serializerClass属性替换序列化方式
+                setCacheProperties(cache);
+            }
+            if (isNegativeCaching()) {
+                //在序列化之上，才能看出结果是否为空
+                cache = new NegativeResultCache(cache);
+                setCacheProperties(cache);
+                evictingCaches.add((EvictingCache) cache);
+            }
+            cache = newLoggingCache(cache, evictingCaches);
+            if (!threadSafe) {
+                cache = new SynchronizedCache(cache);
             }
-            cache = new LoggingCache(cache);
-            cache = new SynchronizedCache(cache);
             if (blocking) {
                 cache = new BlockingCache(cache);
+                //只读缓存共享对象，可直接把加载的值交给等待的线程
+                ((BlockingCache) cache).setHandOff(!readWrite);
             }
             return cache;
         } catch (Exception e) {
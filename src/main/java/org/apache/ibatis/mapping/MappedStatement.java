@@ -18,8 +18,12 @@ package org.apache.ibatis.mapping;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheKeyPrefix;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
@@ -33,6 +37,10 @@ import org.apache.ibatis.session.Configuration;
  * @author Clinton Begin
  */
 public final class MappedStatement {
+
+  //超过后不再缓存，如${}拼出的SQL
+  private static final int MAX_CACHE_KEY_PREFIXES = 256;
+
     /**
      * 节点中Id属性，包括命名空间
      */
@@ -68,6 +76,11 @@ public final class MappedStatement {
      */
   private LanguageDriver lang;
   private String[] resultSets;
+  private Set<String> readTables;
+  private Set<String> writtenTables;
+  private boolean cacheEmptyResults = true;
+  private String[] batchAfter;
+  private final ConcurrentMap<String, CacheKeyPrefix> cacheKeyPrefixes = new ConcurrentHashMap<String, CacheKeyPrefix>();
 
   MappedStatement() {
     // constructor disabled
@@ -180,6 +193,42 @@ public final class MappedStatement {
       return this;
     }
 
+    /**
+     * @param readTables the tables the statement reads, null if not known
+     * @since 3.4.6
+     */
+    public Builder readTables(Set<String> readTables) {
+      mappedStatement.readTables = readTables;
+      return this;
+    }
+
+    /**
+     * @param writtenTables the tables the statement writes, null if not known
+     * @since 3.4.6
+     */
+    public Builder writtenTables(Set<String> writtenTables) {
+      mappedStatement.writtenTables = writtenTables;
+      return this;
+    }
+
+    /**
+     * @param cacheEmptyResults whether an empty result of the statement goes into the second level cache
+     * @since 3.4.6
+     */
+    public Builder cacheEmptyResults(boolean cacheEmptyResults) {
+      mappedStatement.cacheEmptyResults = cacheEmptyResults;
+      return this;
+    }
+
+    /**
+     * @param batchAfter ids of the statements whose batches execute before the batch of this statement
+     * @since 3.4.6
+     */
+    public Builder batchAfter(String[] batchAfter) {
+      mappedStatement.batchAfter = batchAfter;
+      return this;
+    }
+
     public Builder resultSets(String resultSet) {
       mappedStatement.resultSets = delimitedStringToArray(resultSet);
       return this;
@@ -258,6 +307,64 @@ public final class MappedStatement {
     return cache;
   }
 
+  /**
+   * The tables the statement reads, cached results of the statement depend on them
+   *
+   * @return the lower-case table names, or null if they are not known
+   * @since 3.4.6
+   */
+  public Set<String> getReadTables() {
+    return readTables;
+  }
+
+  /**
+   * The tables the statement writes, only cache entries that depend on them need to be flushed
+   *
+   * @return the lower-case table names, or null if they are not known
+   * @since 3.4.6
+   */
+  public Set<String> getWrittenTables() {
+    return writtenTables;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public boolean isCacheEmptyResults() {
+    return cacheEmptyResults;
+  }
+
+  /**
+   * Ids of the statements whose pending batches have to be executed first when a grouping batch executor flushes,
+   * e.g. the insert of the parent rows for an insert of child rows.
+   *
+   * @return the fully qualified statement ids, or null
+   * @since 3.4.6
+   */
+  public String[] getBatchAfter() {
+    return batchAfter;
+  }
+
+  /**
+   * The prefix of the cache keys of this statement for the SQL. The same instance is returned for the same SQL,
+   * except for statements that produce a great many different SQL strings.
+   *
+   * @since 3.4.6
+   */
+  public CacheKeyPrefix getCacheKeyPrefix(String sql) {
+    CacheKeyPrefix prefix = cacheKeyPrefixes.get(sql);
+    if (prefix == null) {
+      prefix = new CacheKeyPrefix(id, sql);
+      if (cacheKeyPrefixes.size() < MAX_CACHE_KEY_PREFIXES) {
+        CacheKeyPrefix existing = cacheKeyPrefixes.putIfAbsent(sql, prefix);
+        if (existing != null) {
+          prefix = existing;
+        }
+      }
+    }
+    return prefix;
+  }
+
   public boolean isFlushCacheRequired() {
     return flushCacheRequired;
   }
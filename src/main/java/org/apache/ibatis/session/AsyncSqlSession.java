@@ -0,0 +1,89 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.ibatis.executor.BatchResult;
+
+/**
+ * A {@link SqlSession} whose operations run on the executor of the {@link SqlSessionFactory} and return
+ * {@link CompletableFuture}s, for callers that must not block such as event loops.
+ * <p>
+ * The operations of one session run one after the other, in the order they were called, on the same underlying
+ * SqlSession, that is the same connection and transaction. They may run on different threads but never at the same
+ * time, so a chain of futures obtained from one session works like a sequence of calls on a regular session.
+ * An operation still runs when the one before it failed. Use separate sessions for operations that should run in
+ * parallel.
+ *
+ * @since 3.4.6
+ */
+public interface AsyncSqlSession {
+
+  <T> CompletableFuture<T> selectOne(String statement);
+
+  <T> CompletableFuture<T> selectOne(String statement, Object parameter);
+
+  <E> CompletableFuture<List<E>> selectList(String statement);
+
+  <E> CompletableFuture<List<E>> selectList(String statement, Object parameter);
+
+  <E> CompletableFuture<List<E>> selectList(String statement, Object parameter, RowBounds rowBounds);
+
+  <K, V> CompletableFuture<Map<K, V>> selectMap(String statement, Object parameter, String mapKey);
+
+  CompletableFuture<Integer> insert(String statement);
+
+  CompletableFuture<Integer> insert(String statement, Object parameter);
+
+  CompletableFuture<Integer> update(String statement);
+
+  CompletableFuture<Integer> update(String statement, Object parameter);
+
+  CompletableFuture<Integer> delete(String statement);
+
+  CompletableFuture<Integer> delete(String statement, Object parameter);
+
+  CompletableFuture<Void> commit();
+
+  CompletableFuture<Void> commit(boolean force);
+
+  CompletableFuture<Void> rollback();
+
+  CompletableFuture<Void> rollback(boolean force);
+
+  CompletableFuture<List<BatchResult>> flushStatements();
+
+  /**
+   * Closes the underlying session once the operations called before have completed.
+   * Operations called afterwards fail with a {@link SqlSessionException}.
+   */
+  CompletableFuture<Void> close();
+
+  Configuration getConfiguration();
+
+  /**
+   * Retrieves a mapper whose methods run on this session. The methods must return {@link CompletableFuture}, the
+   * mapper methods themselves are the same as the ones used through a regular {@link SqlSession}.
+   * @param <T> the mapper type
+   * @param type Mapper interface class
+   * @return a mapper bound to this session
+   */
+  <T> T getMapper(Class<T> type);
+
+}
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.session;
 
+import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -24,6 +25,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
 
 import org.apache.ibatis.binding.MapperRegistry;
 import org.apache.ibatis.builder.CacheRefResolver;
@@ -31,12 +41,21 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStatistics;
+import org.apache.ibatis.cache.CacheStatisticsRegistry;
+import org.apache.ibatis.cache.decorators.ConcurrentLruCache;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
+import org.apache.ibatis.datasource.pooled.ConcurrentPooledDataSourceFactory;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 import org.apache.ibatis.executor.BatchExecutor;
@@ -107,6 +126,7 @@ public class Configuration {
   protected boolean useGeneratedKeys;
   protected boolean useColumnLabel = true;
   protected boolean cacheEnabled = true;
+  protected boolean cacheWriteThrough;
   protected boolean callSettersOnNulls;
   protected boolean useActualParamName = true;
   protected boolean returnInstanceForEmptyRow;
@@ -115,11 +135,24 @@ public class Configuration {
   protected Class <? extends Log> logImpl;
   protected Class <? extends VFS> vfsImpl;
   protected LocalCacheScope localCacheScope = LocalCacheScope.SESSION;
+  protected Integer localCacheMaxEntries;
+  protected Integer localCacheMaxRows;
   protected JdbcType jdbcTypeForNull = JdbcType.OTHER;
   protected Set<String> lazyLoadTriggerMethods = new HashSet<String>(Arrays.asList(new String[] { "equals", "clone", "hashCode", "toString" }));
   protected Integer defaultStatementTimeout;
   protected Integer defaultFetchSize;
   protected ExecutorType defaultExecutorType = ExecutorType.SIMPLE;
+  protected Integer batchFlushRows;
+  protected Long batchFlushBytes;
+  protected boolean batchRetainParameters = true;
+  protected boolean batchGrouping;
+  protected Integer batchInsertRows;
+  protected Integer batchInsertParameters;
+  protected ExecutorService asyncExecutor;
+  protected Integer asyncMaxConcurrency;
+  private ExecutorService asyncExecutorInstance;
+  private Semaphore asyncPermits;
+  private int asyncPermitCount;
   protected AutoMappingBehavior autoMappingBehavior = AutoMappingBehavior.PARTIAL;
   protected AutoMappingUnknownColumnBehavior autoMappingUnknownColumnBehavior = AutoMappingUnknownColumnBehavior.NONE;
 
@@ -158,6 +191,7 @@ public class Configuration {
      * 缓存集合
      */
   protected final Map<String, Cache> caches = new StrictMap<Cache>("Caches collection");
+  protected final CacheStatisticsRegistry cacheStatisticsRegistry = new CacheStatisticsRegistry();
   protected final Map<String, ResultMap> resultMaps = new StrictMap<ResultMap>("Result Maps collection");
   protected final Map<String, ParameterMap> parameterMaps = new StrictMap<ParameterMap>("Parameter Maps collection");
   /**
@@ -194,6 +228,7 @@ public class Configuration {
 
     typeAliasRegistry.registerAlias("JNDI", JndiDataSourceFactory.class);
     typeAliasRegistry.registerAlias("POOLED", PooledDataSourceFactory.class);
+    typeAliasRegistry.registerAlias("CONCURRENT_POOLED", ConcurrentPooledDataSourceFactory.class);
     typeAliasRegistry.registerAlias("UNPOOLED", UnpooledDataSourceFactory.class);
 
     typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
@@ -201,6 +236,11 @@ public class Configuration {
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
+    typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+    typeAliasRegistry.registerAlias("WEIGHTED", WeightedCache.class);
+    typeAliasRegistry.registerAlias("CONCURRENT_PERPETUAL", ConcurrentPerpetualCache.class);
+    typeAliasRegistry.registerAlias("CONCURRENT_LRU", ConcurrentLruCache.class);
+    typeAliasRegistry.registerAlias("OFF_HEAP", OffHeapCache.class);
 
     typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
@@ -413,6 +453,225 @@ public class Configuration {
     this.defaultExecutorType = defaultExecutorType;
   }
 
+  /**
+   * @since 3.4.6
+   */
+  public Integer getBatchFlushRows() {
+    return batchFlushRows;
+  }
+
+  /**
+   * @param batchFlushRows the number of rows after which a batch executor executes its pending statements, null to
+   *        wait for the flush
+   * @since 3.4.6
+   */
+  public void setBatchFlushRows(Integer batchFlushRows) {
+    this.batchFlushRows = batchFlushRows;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public Long getBatchFlushBytes() {
+    return batchFlushBytes;
+  }
+
+  /**
+   * @param batchFlushBytes the estimated size of the pending parameters after which a batch executor executes its
+   *        pending statements, null to wait for the flush
+   * @since 3.4.6
+   */
+  public void setBatchFlushBytes(Long batchFlushBytes) {
+    this.batchFlushBytes = batchFlushBytes;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public boolean isBatchRetainParameters() {
+    return batchRetainParameters;
+  }
+
+  /**
+   * @param batchRetainParameters whether batch results keep the parameter objects once the statements were executed.
+   *        When false, the batches executed by batchFlushRows or batchFlushBytes are also merged into one result per
+   *        statement, holding the sum of their update counts, so the executed results do not grow with the rows.
+   * @since 3.4.6
+   */
+  public void setBatchRetainParameters(boolean batchRetainParameters) {
+    this.batchRetainParameters = batchRetainParameters;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public boolean isBatchGrouping() {
+    return batchGrouping;
+  }
+
+  /**
+   * @param batchGrouping whether a batch executor keeps adding to the open batch of a statement when other
+   *        statements were executed in between, instead of starting a new one
+   * @since 3.4.6
+   */
+  public void setBatchGrouping(boolean batchGrouping) {
+    this.batchGrouping = batchGrouping;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public Integer getBatchInsertRows() {
+    return batchInsertRows;
+  }
+
+  /**
+   * @param batchInsertRows the number of rows a batch executor puts into one multi-row insert statement, null to
+   *        batch inserts one row per statement
+   * @since 3.4.6
+   */
+  public void setBatchInsertRows(Integer batchInsertRows) {
+    this.batchInsertRows = batchInsertRows;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public Integer getBatchInsertParameters() {
+    return batchInsertParameters;
+  }
+
+  /**
+   * @param batchInsertParameters the maximum number of bind parameters of a multi-row insert statement, null for
+   *        no limit other than batchInsertRows
+   * @since 3.4.6
+   */
+  public void setBatchInsertParameters(Integer batchInsertParameters) {
+    this.batchInsertParameters = batchInsertParameters;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public ExecutorService getAsyncExecutor() {
+    return asyncExecutor;
+  }
+
+  /**
+   * Each open asynchronous session keeps a thread of the executor until it is closed, so a session that is never closed
+   * never gives its thread back. A bounded executor must have a thread for each of the asyncMaxConcurrency sessions,
+   * otherwise opening an asynchronous session fails.
+   *
+   * @param asyncExecutor runs the operations of asynchronous sessions, null to use virtual threads when available
+   *        and a pool of daemon threads otherwise
+   * @since 3.4.6
+   */
+  public void setAsyncExecutor(ExecutorService asyncExecutor) {
+    this.asyncExecutor = asyncExecutor;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public Integer getAsyncMaxConcurrency() {
+    return asyncMaxConcurrency;
+  }
+
+  /**
+   * @param asyncMaxConcurrency the number of asynchronous sessions that run at the same time, null to use the maximum
+   *        active connections of a pooled data source
+   * @since 3.4.6
+   */
+  public void setAsyncMaxConcurrency(Integer asyncMaxConcurrency) {
+    this.asyncMaxConcurrency = asyncMaxConcurrency;
+  }
+
+  /**
+   * The executor that runs asynchronous sessions and parallel queries: the configured one, or virtual threads when
+   * the JVM has them and a pool of daemon threads otherwise, created on first use.
+   *
+   * @since 3.4.6
+   */
+  public synchronized ExecutorService getAsyncExecutorInstance() {
+    if (asyncExecutorInstance == null) {
+      asyncExecutorInstance = asyncExecutor != null ? asyncExecutor : newAsyncExecutor();
+      Integer maxConcurrency = asyncMaxConcurrency;
+      if (maxConcurrency == null && environment != null) {
+        DataSource dataSource = environment.getDataSource();
+        if (dataSource instanceof PooledDataSource) {
+          maxConcurrency = ((PooledDataSource) dataSource).getPoolMaximumActiveConnections();
+        }
+      }
+      if (maxConcurrency != null && maxConcurrency > 0) {
+        asyncPermits = new Semaphore(maxConcurrency, true);
+        asyncPermitCount = maxConcurrency;
+      }
+    }
+    return asyncExecutorInstance;
+  }
+
+  /**
+   * The executor of asynchronous sessions, checked to have a thread for each session that may run at the same time,
+   * as a session keeps its thread until it is closed.
+   *
+   * @throws SqlSessionException if a bounded executor has fewer threads than the asyncMaxConcurrency
+   * @since 3.4.6
+   */
+  public synchronized ExecutorService getAsyncSessionExecutorInstance() {
+    ExecutorService executor = getAsyncExecutorInstance();
+    int threads = maximumThreadsOf(executor);
+    if (threads < Integer.MAX_VALUE && (asyncPermits == null || asyncPermitCount > threads)) {
+      String sessions = asyncPermits == null ? "any number of asynchronous sessions"
+          : asyncPermitCount + " asynchronous sessions";
+      throw new SqlSessionException("The asyncExecutor runs at most " + threads + " threads but " + sessions
+          + " may run at the same time.  Each open AsyncSqlSession keeps a thread until it is closed,"
+          + " set asyncMaxConcurrency to at most " + threads + ".");
+    }
+    return executor;
+  }
+
+  private static int maximumThreadsOf(ExecutorService executor) {
+    if (executor instanceof ThreadPoolExecutor) {
+      ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+      // past the core threads the tasks are queued, unless the queue hands them over directly
+      return pool.getQueue().remainingCapacity() == 0 ? pool.getMaximumPoolSize() : pool.getCorePoolSize();
+    } else if (executor instanceof ForkJoinPool) {
+      return ((ForkJoinPool) executor).getParallelism();
+    }
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Limits the asynchronous sessions and parallel queries running on {@link #getAsyncExecutorInstance()} at the same
+   * time, to asyncMaxConcurrency or the maximum active connections of a pooled data source. An asynchronous session
+   * holds its permit from its first operation until it is closed, as long as it holds its connection.
+   *
+   * @return the permits, or null if the operations are not limited
+   * @since 3.4.6
+   */
+  public synchronized Semaphore getAsyncPermits() {
+    getAsyncExecutorInstance();
+    return asyncPermits;
+  }
+
+  private static ExecutorService newAsyncExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (Exception e) {
+      // Java 20 and earlier
+      final AtomicInteger threadNumber = new AtomicInteger();
+      return Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "mybatis-async-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+  }
+
   public boolean isCacheEnabled() {
     return cacheEnabled;
   }
@@ -421,6 +680,36 @@ public class Configuration {
     this.cacheEnabled = cacheEnabled;
   }
 
+  /**
+   * @since 3.4.6
+   */
+  public boolean isCacheWriteThrough() {
+    return cacheWriteThrough;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public void setCacheWriteThrough(boolean cacheWriteThrough) {
+    this.cacheWriteThrough = cacheWriteThrough;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public boolean isCacheJmxEnabled() {
+    return cacheStatisticsRegistry.isJmxEnabled();
+  }
+
+  /**
+   * Registers the statistics of every cache as an MBean with the platform MBean server.
+   *
+   * @since 3.4.6
+   */
+  public void setCacheJmxEnabled(boolean cacheJmxEnabled) {
+    cacheStatisticsRegistry.setJmxEnabled(cacheJmxEnabled);
+  }
+
   public Integer getDefaultStatementTimeout() {
     return defaultStatementTimeout;
   }
@@ -459,6 +748,34 @@ public class Configuration {
     this.localCacheScope = localCacheScope;
   }
 
+  /**
+   * @since 3.4.6
+   */
+  public Integer getLocalCacheMaxEntries() {
+    return localCacheMaxEntries;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public void setLocalCacheMaxEntries(Integer localCacheMaxEntries) {
+    this.localCacheMaxEntries = localCacheMaxEntries;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public Integer getLocalCacheMaxRows() {
+    return localCacheMaxRows;
+  }
+
+  /**
+   * @since 3.4.6
+   */
+  public void setLocalCacheMaxRows(Integer localCacheMaxRows) {
+    this.localCacheMaxRows = localCacheMaxRows;
+  }
+
   public JdbcType getJdbcTypeForNull() {
     return jdbcTypeForNull;
   }
@@ -593,7 +910,7 @@ public class Configuration {
       executor = new SimpleExecutor(this, transaction);
     }
     if (cacheEnabled) {
-      executor = new CachingExecutor(executor);
+      executor = new CachingExecutor(executor, cacheWriteThrough);
     }
     executor = (Executor) interceptorChain.pluginAll(executor);
     return executor;
@@ -639,6 +956,21 @@ public class Configuration {
     return caches.containsKey(id);
   }
 
+  /**
+   * @since 3.4.6
+   */
+  public CacheStatisticsRegistry getCacheStatisticsRegistry() {
+    return cacheStatisticsRegistry;
+  }
+
+  /**
+   * @return the hits, misses, puts, evictions and load times of the cache, null if it was not built from a mapper
+   * @since 3.4.6
+   */
+  public CacheStatistics getCacheStatistics(String id) {
+    return cacheStatisticsRegistry.getStatistics(id);
+  }
+
   public void addResultMap(ResultMap rm) {
     resultMaps.put(rm.getId(), rm);
     checkLocallyForDiscriminatedNestedResultMaps(rm);
@@ -0,0 +1,77 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Independent queries for {@link SqlSession#selectAll(QueryBatch)}, which may run them at the same time.
+ *
+ * @since 3.4.6
+ */
+public class QueryBatch {
+
+  private final List<Query> queries = new ArrayList<Query>();
+
+  public QueryBatch add(String statement) {
+    return add(statement, null, RowBounds.DEFAULT);
+  }
+
+  public QueryBatch add(String statement, Object parameter) {
+    return add(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  public QueryBatch add(String statement, Object parameter, RowBounds rowBounds) {
+    queries.add(new Query(statement, parameter, rowBounds));
+    return this;
+  }
+
+  public List<Query> getQueries() {
+    return Collections.unmodifiableList(queries);
+  }
+
+  public int size() {
+    return queries.size();
+  }
+
+  public static class Query {
+
+    private final String statement;
+    private final Object parameter;
+    private final RowBounds rowBounds;
+
+    Query(String statement, Object parameter, RowBounds rowBounds) {
+      this.statement = statement;
+      this.parameter = parameter;
+      this.rowBounds = rowBounds;
+    }
+
+    public String getStatement() {
+      return statement;
+    }
+
+    public Object getParameter() {
+      return parameter;
+    }
+
+    public RowBounds getRowBounds() {
+      return rowBounds;
+    }
+  }
+
+}
@@ -17,6 +17,7 @@ package org.apache.ibatis.session;
 
 import java.io.Closeable;
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -76,6 +77,29 @@ public interface SqlSession extends Closeable {
    */
   <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds);
 
+  /**
+   * Retrieve the lists of several independent queries, running them at the same time where possible.
+   * <p>
+   * The first query and the ones found in the local cache run on this session. The others run on the async executor
+   * of the configuration, each on its own connection taken from the data source, as long as permits are available,
+   * and their results go into the local cache of this session. A query that no thread started by the time its result
+   * is needed runs on this session. Each of these queries reads the data committed when it
+   * runs; together they are not a consistent snapshot. When the session has uncommitted changes, all the queries run
+   * one after the other on this session so they see those changes.
+   * <p>
+   * The default implementation runs the queries one after the other with {@link #selectList(String, Object, RowBounds)}.
+   * @param batch the queries
+   * @return the lists of the queries, in the order they were added to the batch
+   * @since 3.4.6
+   */
+  default List<List<?>> selectAll(QueryBatch batch) {
+    List<List<?>> results = new ArrayList<List<?>>(batch.size());
+    for (QueryBatch.Query query : batch.getQueries()) {
+      results.add(this.<Object>selectList(query.getStatement(), query.getParameter(), query.getRowBounds()));
+    }
+    return results;
+  }
+
   /**
    * The selectMap is a special case in that it is designed to convert a list
    * of results into a Map based on one of the properties in the resulting
@@ -35,6 +35,30 @@ public interface SqlSessionFactory {
   SqlSession openSession(ExecutorType execType, TransactionIsolationLevel level);
   SqlSession openSession(ExecutorType execType, Connection connection);
 
+  /**
+   * The default implementation throws {@link UnsupportedOperationException}.
+   * @since 3.4.6
+   */
+  default AsyncSqlSession openAsyncSession() {
+    throw new UnsupportedOperationException(getClass().getName() + " does not open asynchronous sessions.");
+  }
+
+  /**
+   * The default implementation throws {@link UnsupportedOperationException}.
+   * @since 3.4.6
+   */
+  default AsyncSqlSession openAsyncSession(boolean autoCommit) {
+    throw new UnsupportedOperationException(getClass().getName() + " does not open asynchronous sessions.");
+  }
+
+  /**
+   * The default implementation throws {@link UnsupportedOperationException}.
+   * @since 3.4.6
+   */
+  default AsyncSqlSession openAsyncSession(ExecutorType execType) {
+    throw new UnsupportedOperationException(getClass().getName() + " does not open asynchronous sessions.");
+  }
+
   Configuration getConfiguration();
 
 }
@@ -0,0 +1,360 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session.defaults;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.AsyncSqlSession;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionException;
+
+/**
+ * The default implementation of {@link AsyncSqlSession}. The operations are queued and run one after the other by a
+ * worker that takes a thread of the executor from the first operation until the session is closed. The worker holds
+ * a permit of the factory for as long, because the session keeps its connection until it is closed. Keeping one
+ * thread matters to the caches that belong to the thread which missed a key, like the blocking cache, whose lock is
+ * released by the commit of the same session.
+ * <p>
+ * The futures are completed on that thread, so their non async callbacks must not wait for later operations of the
+ * session.
+ *
+ * @since 3.4.6
+ */
+public class DefaultAsyncSqlSession implements AsyncSqlSession {
+
+  private final SqlSession sqlSession;
+  private final Executor executor;
+  private final Semaphore permits;
+  //等待执行的操作，由同一个线程依次执行
+  private final BlockingQueue<Task<?>> tasks = new LinkedBlockingQueue<Task<?>>();
+  private boolean started;
+  private CompletableFuture<Void> closed;
+
+  /**
+   * @param sqlSession the session the operations run on
+   * @param executor runs the operations
+   * @param permits bounds the sessions running at the same time, null for no bound
+   */
+  public DefaultAsyncSqlSession(SqlSession sqlSession, Executor executor, Semaphore permits) {
+    this.sqlSession = sqlSession;
+    this.executor = executor;
+    this.permits = permits;
+  }
+
+  @Override
+  public <T> CompletableFuture<T> selectOne(String statement) {
+    return selectOne(statement, null);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> selectOne(final String statement, final Object parameter) {
+    return submit(new Operation<T>() {
+      @Override
+      public T run(SqlSession sqlSession) {
+        return sqlSession.<T>selectOne(statement, parameter);
+      }
+    });
+  }
+
+  @Override
+  public <E> CompletableFuture<List<E>> selectList(String statement) {
+    return selectList(statement, null, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <E> CompletableFuture<List<E>> selectList(String statement, Object parameter) {
+    return selectList(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  @Override
+  public <E> CompletableFuture<List<E>> selectList(final String statement, final Object parameter, final RowBounds rowBounds) {
+    return submit(new Operation<List<E>>() {
+      @Override
+      public List<E> run(SqlSession sqlSession) {
+        return sqlSession.<E>selectList(statement, parameter, rowBounds);
+      }
+    });
+  }
+
+  @Override
+  public <K, V> CompletableFuture<Map<K, V>> selectMap(final String statement, final Object parameter, final String mapKey) {
+    return submit(new Operation<Map<K, V>>() {
+      @Override
+      public Map<K, V> run(SqlSession sqlSession) {
+        return sqlSession.<K, V>selectMap(statement, parameter, mapKey);
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<Integer> insert(String statement) {
+    return insert(statement, null);
+  }
+
+  @Override
+  public CompletableFuture<Integer> insert(final String statement, final Object parameter) {
+    return submit(new Operation<Integer>() {
+      @Override
+      public Integer run(SqlSession sqlSession) {
+        return sqlSession.insert(statement, parameter);
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<Integer> update(String statement) {
+    return update(statement, null);
+  }
+
+  @Override
+  public CompletableFuture<Integer> update(final String statement, final Object parameter) {
+    return submit(new Operation<Integer>() {
+      @Override
+      public Integer run(SqlSession sqlSession) {
+        return sqlSession.update(statement, parameter);
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<Integer> delete(String statement) {
+    return delete(statement, null);
+  }
+
+  @Override
+  public CompletableFuture<Integer> delete(final String statement, final Object parameter) {
+    return submit(new Operation<Integer>() {
+      @Override
+      public Integer run(SqlSession sqlSession) {
+        return sqlSession.delete(statement, parameter);
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> commit() {
+    return commit(false);
+  }
+
+  @Override
+  public CompletableFuture<Void> commit(final boolean force) {
+    return submit(new Operation<Void>() {
+      @Override
+      public Void run(SqlSession sqlSession) {
+        sqlSession.commit(force);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> rollback() {
+    return rollback(false);
+  }
+
+  @Override
+  public CompletableFuture<Void> rollback(final boolean force) {
+    return submit(new Operation<Void>() {
+      @Override
+      public Void run(SqlSession sqlSession) {
+        sqlSession.rollback(force);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<List<BatchResult>> flushStatements() {
+    return submit(new Operation<List<BatchResult>>() {
+      @Override
+      public List<BatchResult> run(SqlSession sqlSession) {
+        return sqlSession.flushStatements();
+      }
+    });
+  }
+
+  @Override
+  public synchronized CompletableFuture<Void> close() {
+    if (closed == null) {
+      closed = submit(new Operation<Void>() {
+        @Override
+        public Void run(SqlSession sqlSession) {
+          sqlSession.close();
+          return null;
+        }
+      }, true);
+    }
+    return closed;
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return sqlSession.getConfiguration();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> T getMapper(Class<T> type) {
+    if (!getConfiguration().hasMapper(type)) {
+      throw new BindingException("Type " + type + " is not known to the MapperRegistry.");
+    }
+    return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new AsyncMapperProxy<T>(type));
+  }
+
+  private <T> CompletableFuture<T> submit(Operation<T> operation) {
+    return submit(operation, false);
+  }
+
+  private synchronized <T> CompletableFuture<T> submit(Operation<T> operation, boolean last) {
+    Task<T> task = new Task<T>(operation, last);
+    if (closed != null) {
+      task.future.completeExceptionally(new SqlSessionException("The session is closed."));
+      return task.future;
+    }
+    tasks.add(task);
+    if (!started) {
+      try {
+        executor.execute(new Worker());
+        started = true;
+      } catch (RejectedExecutionException e) {
+        tasks.remove(task);
+        task.future.completeExceptionally(new SqlSessionException("The session could not run the operation.  Cause: " + e, e));
+      }
+    }
+    return task.future;
+  }
+
+  private interface Operation<T> {
+    T run(SqlSession sqlSession);
+  }
+
+  private class Task<T> {
+
+    private final Operation<T> operation;
+    private final boolean last;
+    private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+    Task(Operation<T> operation, boolean last) {
+      this.operation = operation;
+      this.last = last;
+    }
+
+    void run() {
+      T result;
+      try {
+        result = operation.run(sqlSession);
+      } catch (Throwable e) {
+        future.completeExceptionally(e);
+        return;
+      }
+      future.complete(result);
+    }
+  }
+
+  /**
+   * Runs the queued operations on one thread until the session is closed, holding a permit all along
+   */
+  private class Worker implements Runnable {
+
+    @Override
+    public void run() {
+      boolean permitted = false;
+      try {
+        if (permits != null) {
+          permits.acquire();
+          permitted = true;
+        }
+        Task<?> task;
+        do {
+          task = tasks.take();
+          task.run();
+        } while (!task.last);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        // the executor is shutting down, the session is not usable anymore
+        synchronized (DefaultAsyncSqlSession.this) {
+          if (closed == null) {
+            closed = new CompletableFuture<Void>();
+            closed.completeExceptionally(new SqlSessionException("The session was interrupted.", e));
+          }
+        }
+        Task<?> task;
+        while ((task = tasks.poll()) != null) {
+          task.future.completeExceptionally(new SqlSessionException("The session was interrupted.", e));
+        }
+        sqlSession.close();
+      } finally {
+        if (permitted) {
+          permits.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs each mapper method on the mapper of the underlying session, the method returns a completed future there
+   */
+  private class AsyncMapperProxy<T> implements InvocationHandler {
+
+    private final Class<T> mapperInterface;
+
+    AsyncMapperProxy(Class<T> mapperInterface) {
+      this.mapperInterface = mapperInterface;
+    }
+
+    @Override
+    public Object invoke(Object proxy, final Method method, final Object[] args) throws Throwable {
+      if (Object.class.equals(method.getDeclaringClass())) {
+        return method.invoke(this, args);
+      }
+      if (!CompletableFuture.class.equals(method.getReturnType())) {
+        throw new BindingException("Mapper method '" + mapperInterface.getName() + "." + method.getName()
+            + "' must return CompletableFuture to be called through an AsyncSqlSession.");
+      }
+      return submit(new Operation<Object>() {
+        @Override
+        public Object run(SqlSession sqlSession) {
+          T mapper = sqlSession.getMapper(mapperInterface);
+          try {
+            return ((CompletableFuture<?>) method.invoke(mapper, args)).join();
+          } catch (InvocationTargetException e) {
+            Throwable cause = e.getTargetException();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+          } catch (IllegalAccessException e) {
+            throw new BindingException("Could not invoke mapper method '" + method.getName() + "'.", e);
+          }
+        }
+      });
+    }
+  }
+
+}
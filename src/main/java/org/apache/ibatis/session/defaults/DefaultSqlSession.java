@@ -23,8 +23,16 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.exceptions.TooManyResultsException;
@@ -33,11 +41,16 @@ import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.result.DefaultMapResultHandler;
 import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.QueryBatch;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.transaction.Transaction;
 
 /**
  *
@@ -153,6 +166,84 @@ public class DefaultSqlSession implements SqlSession {
     }
   }
 
+  @Override
+  public List<List<?>> selectAll(QueryBatch batch) {
+    List<QueryBatch.Query> queries = batch.getQueries();
+    List<List<?>> results = new ArrayList<List<?>>(queries.size());
+    Environment environment = configuration.getEnvironment();
+    //未提交的修改只有本会话的连接能看到，这时按顺序在本会话执行
+    if (queries.size() < 2 || isCommitOrRollbackRequired(false)
+        || environment == null || environment.getTransactionFactory() == null) {
+      for (QueryBatch.Query query : queries) {
+        results.add(selectList(query.getStatement(), query.getParameter(), query.getRowBounds()));
+      }
+      return results;
+    }
+    try {
+      ExecutorService queryExecutor = configuration.getAsyncExecutorInstance();
+      Semaphore permits = configuration.getAsyncPermits();
+      int size = queries.size();
+      MappedStatement[] statements = new MappedStatement[size];
+      Object[] parameters = new Object[size];
+      BoundSql[] boundSqls = new BoundSql[size];
+      CacheKey[] keys = new CacheKey[size];
+      ParallelQuery[] parallelQueries = new ParallelQuery[size];
+      List<Future<List<Object>>> futures = new ArrayList<Future<List<Object>>>(size);
+      try {
+        for (int i = 0; i < size; i++) {
+          QueryBatch.Query query = queries.get(i);
+          statements[i] = configuration.getMappedStatement(query.getStatement());
+          parameters[i] = wrapCollection(query.getParameter());
+          boundSqls[i] = statements[i].getBoundSql(parameters[i]);
+          keys[i] = executor.createCacheKey(statements[i], parameters[i], query.getRowBounds(), boundSqls[i]);
+          futures.add(null);
+          // the first query, cached ones and the ones without a free permit run on this session
+          if (i > 0 && !executor.isCached(statements[i], keys[i]) && (permits == null || permits.tryAcquire())) {
+            parallelQueries[i] = new ParallelQuery(environment, statements[i], parameters[i], query.getRowBounds(), permits);
+            try {
+              futures.set(i, queryExecutor.submit(parallelQueries[i]));
+            } catch (RejectedExecutionException e) {
+              parallelQueries[i].cancel();
+              parallelQueries[i] = null;
+            }
+          }
+        }
+        for (int i = 0; i < size; i++) {
+          Future<List<Object>> future = futures.get(i);
+          // a query still waiting for a thread runs on this session instead of waiting longer
+          if (future == null || parallelQueries[i].cancel()) {
+            results.add(executor.query(statements[i], parameters[i], queries.get(i).getRowBounds(),
+                Executor.NO_RESULT_HANDLER, keys[i], boundSqls[i]));
+          } else {
+            List<Object> list = future.get();
+            if (!statements[i].isFlushCacheRequired()) {
+              executor.cacheLocally(statements[i], keys[i], list);
+            }
+            results.add(list);
+          }
+        }
+        return results;
+      } finally {
+        // stops the other queries when one failed
+        for (int i = 0; i < size; i++) {
+          if (parallelQueries[i] != null && !parallelQueries[i].cancel()) {
+            futures.get(i).cancel(true);
+          }
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw ExceptionFactory.wrapException("Error querying database.  Cause: " + cause, cause instanceof Exception ? (Exception) cause : e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw ExceptionFactory.wrapException("Interrupted while querying database.  Cause: " + e, e);
+    } catch (Exception e) {
+      throw ExceptionFactory.wrapException("Error querying database.  Cause: " + e, e);
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
+
   @Override
   public void select(String statement, Object parameter, ResultHandler handler) {
     select(statement, parameter, RowBounds.DEFAULT, handler);
@@ -317,6 +408,68 @@ public class DefaultSqlSession implements SqlSession {
     return (!autoCommit && dirty) || force;
   }
 
+  /**
+   * A query of {@link #selectAll(QueryBatch)} that runs with its own connection and releases its permit when done,
+   * unless it is cancelled before it starts
+   */
+  private class ParallelQuery implements Callable<List<Object>> {
+
+    private final Environment environment;
+    private final MappedStatement ms;
+    private final Object parameter;
+    private final RowBounds rowBounds;
+    private final Semaphore permits;
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    ParallelQuery(Environment environment, MappedStatement ms, Object parameter, RowBounds rowBounds, Semaphore permits) {
+      this.environment = environment;
+      this.ms = ms;
+      this.parameter = parameter;
+      this.rowBounds = rowBounds;
+      this.permits = permits;
+    }
+
+    @Override
+    public List<Object> call() throws Exception {
+      if (!started.compareAndSet(false, true)) {
+        // cancelled, the permit was released already
+        return null;
+      }
+      try {
+        Transaction tx = environment.getTransactionFactory().newTransaction(environment.getDataSource(), null, false);
+        Executor queryExecutor = configuration.newExecutor(tx, ExecutorType.SIMPLE);
+        try {
+          List<Object> list = queryExecutor.query(ms, parameter, rowBounds, Executor.NO_RESULT_HANDLER);
+          // only read, commits the second level cache entries but not the connection
+          queryExecutor.commit(false);
+          return list;
+        } finally {
+          queryExecutor.close(false);
+        }
+      } finally {
+        if (permits != null) {
+          permits.release();
+        }
+        ErrorContext.instance().reset();
+      }
+    }
+
+    /**
+     * Keeps the query from starting and releases its permit
+     *
+     * @return True if the query had not started yet
+     */
+    boolean cancel() {
+      if (!started.compareAndSet(false, true)) {
+        return false;
+      }
+      if (permits != null) {
+        permits.release();
+      }
+      return true;
+    }
+  }
+
   private Object wrapCollection(final Object object) {
     if (object instanceof Collection) {
       StrictMap<Object> map = new StrictMap<Object>();
@@ -17,11 +17,13 @@ package org.apache.ibatis.session.defaults;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.AsyncSqlSession;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
@@ -86,11 +88,32 @@ public class DefaultSqlSessionFactory implements SqlSessionFactory {
     return openSessionFromConnection(execType, connection);
   }
 
+  @Override
+  public AsyncSqlSession openAsyncSession() {
+    return openAsyncSession(configuration.getDefaultExecutorType(), false);
+  }
+
+  @Override
+  public AsyncSqlSession openAsyncSession(boolean autoCommit) {
+    return openAsyncSession(configuration.getDefaultExecutorType(), autoCommit);
+  }
+
+  @Override
+  public AsyncSqlSession openAsyncSession(ExecutorType execType) {
+    return openAsyncSession(execType, false);
+  }
+
   @Override
   public Configuration getConfiguration() {
     return configuration;
   }
 
+  private AsyncSqlSession openAsyncSession(ExecutorType execType, boolean autoCommit) {
+    ExecutorService executor = configuration.getAsyncSessionExecutorInstance();
+    return new DefaultAsyncSqlSession(openSessionFromDataSource(execType, null, autoCommit), executor,
+        configuration.getAsyncPermits());
+  }
+
     /**
      * 打开session
      * @param execType
@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class SqlTableScannerTest {
+
+  @Test
+  public void shouldFindTablesOfSelect() {
+    assertThat(SqlTableScanner.readTables("select * from blog b join author a on a.id = b.author_id where b.id = #{id}"))
+        .containsExactly("blog", "author");
+    assertThat(SqlTableScanner.readTables("SELECT id FROM Blog AS b, \"Post\" p, app.comment WHERE b.id = p.blog_id"))
+        .containsExactly("blog", "post", "comment");
+    assertThat(SqlTableScanner.readTables("select * from blog where author_id in (select id from author)"))
+        .containsExactly("blog", "author");
+  }
+
+  @Test
+  public void shouldFindTablesOfWrites() {
+    assertThat(SqlTableScanner.writtenTables("insert into blog (id, title) values (#{id}, #{title})"))
+        .containsExactly("blog");
+    assertThat(SqlTableScanner.writtenTables("update `blog` set title = #{title} where id = #{id}"))
+        .containsExactly("blog");
+    assertThat(SqlTableScanner.writtenTables("delete from blog where id = #{id}")).containsExactly("blog");
+    assertThat(SqlTableScanner.writtenTables("insert into archive select * from blog")).containsExactly("archive");
+    assertThat(SqlTableScanner.readTables("insert into archive select * from blog")).containsExactly("blog");
+    assertThat(SqlTableScanner.writtenTables("merge into blog b using staging s on b.id = s.id when matched then update set b.title = s.title"))
+        .containsExactly("blog");
+  }
+
+  @Test
+  public void shouldIgnoreLiteralsCommentsAndLockClauses() {
+    assertThat(SqlTableScanner.readTables("select 'from x' from blog -- from y\n where id = 1 for update"))
+        .containsExactly("blog");
+    assertThat(SqlTableScanner.readTables("select /* from z */ * from blog")).containsExactly("blog");
+  }
+
+  @Test
+  public void shouldGiveUpOnDynamicTableNamesAndCalls() {
+    assertThat(SqlTableScanner.readTables("select * from ${table}")).isNull();
+    assertThat(SqlTableScanner.writtenTables("{call update_blog(#{id})}")).isNull();
+    assertThat(SqlTableScanner.readTables("select next value for seq")).isNull();
+  }
+
+  @Test
+  public void shouldScanScriptAnnotations() {
+    assertThat(SqlTableScanner.readTables("<script>select * from blog <where><if test=\"id != null\">id = #{id}</if></where></script>"))
+        .containsExactly("blog");
+  }
+
+  @Test
+  public void shouldParseExplicitTables() {
+    assertThat(SqlTableScanner.parseTables("Blog, app.Author")).containsExactly("blog", "author");
+    assertThat(SqlTableScanner.parseTables(" ")).isNull();
+  }
+
+}
@@ -79,6 +79,8 @@ public class XmlConfigBuilderTest {
     assertThat(config.getAutoMappingBehavior()).isEqualTo(AutoMappingBehavior.PARTIAL);
     assertThat(config.getAutoMappingUnknownColumnBehavior()).isEqualTo(AutoMappingUnknownColumnBehavior.NONE);
     assertThat(config.isCacheEnabled()).isTrue();
+    assertThat(config.isCacheWriteThrough()).isFalse();
+    assertThat(config.isCacheJmxEnabled()).isFalse();
     assertThat(config.getProxyFactory()).isInstanceOf(JavassistProxyFactory.class);
     assertThat(config.isLazyLoadingEnabled()).isFalse();
     assertThat(config.isAggressiveLazyLoading()).isFalse();
@@ -86,11 +88,20 @@ public class XmlConfigBuilderTest {
     assertThat(config.isUseColumnLabel()).isTrue();
     assertThat(config.isUseGeneratedKeys()).isFalse();
     assertThat(config.getDefaultExecutorType()).isEqualTo(ExecutorType.SIMPLE);
+    assertNull(config.getBatchFlushRows());
+    assertNull(config.getBatchFlushBytes());
+    assertTrue(config.isBatchRetainParameters());
+    assertThat(config.isBatchGrouping()).isFalse();
+    assertNull(config.getBatchInsertRows());
+    assertNull(config.getBatchInsertParameters());
+    assertNull(config.getAsyncMaxConcurrency());
     assertNull(config.getDefaultStatementTimeout());
     assertNull(config.getDefaultFetchSize());
     assertThat(config.isMapUnderscoreToCamelCase()).isFalse();
     assertThat(config.isSafeRowBoundsEnabled()).isFalse();
     assertThat(config.getLocalCacheScope()).isEqualTo(LocalCacheScope.SESSION);
+    assertNull(config.getLocalCacheMaxEntries());
+    assertNull(config.getLocalCacheMaxRows());
     assertThat(config.getJdbcTypeForNull()).isEqualTo(JdbcType.OTHER);
     assertThat(config.getLazyLoadTriggerMethods()).isEqualTo((Set<String>) new HashSet<String>(Arrays.asList("equals", "clone", "hashCode", "toString")));
     assertThat(config.isSafeResultHandlerEnabled()).isTrue();
@@ -172,6 +183,7 @@ public class XmlConfigBuilderTest {
       assertThat(config.getAutoMappingBehavior()).isEqualTo(AutoMappingBehavior.NONE);
       assertThat(config.getAutoMappingUnknownColumnBehavior()).isEqualTo(AutoMappingUnknownColumnBehavior.WARNING);
       assertThat(config.isCacheEnabled()).isFalse();
+      assertThat(config.isCacheWriteThrough()).isTrue();
       assertThat(config.getProxyFactory()).isInstanceOf(CglibProxyFactory.class);
       assertThat(config.isLazyLoadingEnabled()).isTrue();
       assertThat(config.isAggressiveLazyLoading()).isTrue();
@@ -179,11 +191,20 @@ public class XmlConfigBuilderTest {
       assertThat(config.isUseColumnLabel()).isFalse();
       assertThat(config.isUseGeneratedKeys()).isTrue();
       assertThat(config.getDefaultExecutorType()).isEqualTo(ExecutorType.BATCH);
+      assertThat(config.getBatchFlushRows()).isEqualTo(500);
+      assertThat(config.getBatchFlushBytes()).isEqualTo(1048576L);
+      assertThat(config.isBatchRetainParameters()).isFalse();
+      assertThat(config.isBatchGrouping()).isTrue();
+      assertThat(config.getBatchInsertRows()).isEqualTo(100);
+      assertThat(config.getBatchInsertParameters()).isEqualTo(2000);
+      assertThat(config.getAsyncMaxConcurrency()).isEqualTo(8);
       assertThat(config.getDefaultStatementTimeout()).isEqualTo(10);
       assertThat(config.getDefaultFetchSize()).isEqualTo(100);
       assertThat(config.isMapUnderscoreToCamelCase()).isTrue();
       assertThat(config.isSafeRowBoundsEnabled()).isTrue();
       assertThat(config.getLocalCacheScope()).isEqualTo(LocalCacheScope.STATEMENT);
+      assertThat(config.getLocalCacheMaxEntries()).isEqualTo(100);
+      assertThat(config.getLocalCacheMaxRows()).isEqualTo(10000);
       assertThat(config.getJdbcTypeForNull()).isEqualTo(JdbcType.NULL);
       assertThat(config.getLazyLoadTriggerMethods()).isEqualTo((Set<String>) new HashSet<String>(Arrays.asList("equals", "clone", "hashCode", "toString", "xxx")));
       assertThat(config.isSafeResultHandlerEnabled()).isFalse();
@@ -67,6 +67,20 @@ public class XmlMapperBuilderTest {
     inputStream.close();
   }
 
+  @Test
+  public void shouldNotScanTablesOfDynamicStatements() throws Exception {
+    Configuration configuration = new Configuration();
+    String resource = "org/apache/ibatis/builder/AuthorMapper.xml";
+    InputStream inputStream = Resources.getResourceAsStream(resource);
+    XMLMapperBuilder builder = new XMLMapperBuilder(inputStream, configuration, resource, configuration.getSqlFragments());
+    builder.parse();
+
+    assertThat(configuration.getMappedStatement("selectAllAuthors").getReadTables()).isNotNull();
+    MappedStatement dynamicStatement = configuration.getMappedStatement("updateAuthorIfNecessary");
+    assertThat(dynamicStatement.getReadTables()).isNull();
+    assertThat(dynamicStatement.getWrittenTables()).isNull();
+  }
+
   @Test
   public void parseExpression() {
     BaseBuilder builder = new BaseBuilder(new Configuration()){{}};
@@ -0,0 +1,146 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.After;
+import org.junit.Test;
+
+public class BlockingCacheTest {
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldRemoveLocksOnRelease() throws Exception {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    for (int i = 0; i < 100; i++) {
+      assertNull(cache.getObject(i));
+      cache.putObject(i, i);
+      assertEquals(i, cache.getObject(i));
+    }
+    assertNull(cache.getObject("rolled back"));
+    cache.removeObject("rolled back");
+    assertEquals(0, locks(cache).size());
+  }
+
+  @Test
+  public void shouldIgnoreReleaseOfUnlockedKey() {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.removeObject("never read");
+    cache.putObject("never read", "value");
+    assertEquals("value", cache.getObject("never read"));
+  }
+
+  @Test
+  public void shouldKeepLockReleasedByAnotherThread() throws Exception {
+    final BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    assertNull(cache.getObject("key"));
+    executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        cache.removeObject("key");
+      }
+    }).get(5, TimeUnit.SECONDS);
+    assertEquals(1, locks(cache).size());
+    cache.removeObject("key");
+    assertEquals(0, locks(cache).size());
+  }
+
+  @Test
+  public void shouldHandLoadedValueToWaitingReader() throws Exception {
+    // a cache that forgets every put, so the waiting reader can only get the value from the loading thread
+    final BlockingCache cache = new BlockingCache(new PerpetualCache("default") {
+      @Override
+      public void putObject(Object key, Object value) {
+      }
+    });
+    cache.setHandOff(true);
+    assertNull(cache.getObject("key"));
+    Future<Object> waiting = executor.submit(new Callable<Object>() {
+      @Override
+      public Object call() {
+        return cache.getObject("key");
+      }
+    });
+    Thread.sleep(100);
+    assertFalse(waiting.isDone());
+    cache.putObject("key", "loaded");
+    assertEquals("loaded", waiting.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void shouldLetWaitingReaderLoadWhenReleasedWithoutValue() throws Exception {
+    final BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.setHandOff(true);
+    assertNull(cache.getObject("key"));
+    Future<Object> waiting = executor.submit(new Callable<Object>() {
+      @Override
+      public Object call() {
+        Object value = cache.getObject("key");
+        cache.putObject("key", "loaded by waiter");
+        return value;
+      }
+    });
+    Thread.sleep(100);
+    cache.removeObject("key");
+    assertNull(waiting.get(5, TimeUnit.SECONDS));
+    assertEquals("loaded by waiter", cache.getObject("key"));
+  }
+
+  @Test
+  public void shouldTimeOutWaitingForLoad() throws Exception {
+    final BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.setTimeout(50);
+    assertNull(cache.getObject("key"));
+    Future<Object> waiting = executor.submit(new Callable<Object>() {
+      @Override
+      public Object call() {
+        return cache.getObject("key");
+      }
+    });
+    try {
+      waiting.get(5, TimeUnit.SECONDS);
+      fail("Should have timed out");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof CacheException);
+    }
+    cache.removeObject("key");
+  }
+
+  private Map<?, ?> locks(BlockingCache cache) throws Exception {
+    Field field = BlockingCache.class.getDeclaredField("locks");
+    field.setAccessible(true);
+    return (Map<?, ?>) field.get(cache);
+  }
+
+}
@@ -104,6 +104,47 @@ public class CacheKeyTest {
     Assert.assertEquals(cacheKey, serialize(cacheKey));
   }
 
+  @Test
+  public void shouldGrowBeyondExpectedUpdates() {
+    CacheKey key1 = new CacheKey(1);
+    CacheKey key2 = new CacheKey();
+    for (int i = 0; i < 20; i++) {
+      key1.update(i);
+      key2.update(i);
+    }
+    assertEquals(key1, key2);
+    assertEquals(key1.hashCode(), key2.hashCode());
+    assertEquals(20, key1.getUpdateCount());
+  }
+
+  @Test
+  public void shouldKeepClonesIndependent() throws Exception {
+    CacheKey key = new CacheKey();
+    key.update("a");
+    CacheKey clone = key.clone();
+    clone.update("b");
+    assertEquals(1, key.getUpdateCount());
+    assertFalse(key.equals(clone));
+    key.update("b");
+    assertEquals(key, clone);
+  }
+
+  @Test
+  public void shouldMatchEqualPrefixesOfDifferentInstances() {
+    CacheKey key1 = new CacheKey();
+    key1.update(new CacheKeyPrefix("ns.select", "select * from blog where id = ?"));
+    key1.update(1);
+    CacheKey key2 = new CacheKey();
+    key2.update(new CacheKeyPrefix("ns.select", "select * from blog where id = ?"));
+    key2.update(1);
+    CacheKey key3 = new CacheKey();
+    key3.update(new CacheKeyPrefix("ns.other", "select * from blog where id = ?"));
+    key3.update(1);
+    assertEquals(key1, key2);
+    assertEquals(key1.hashCode(), key2.hashCode());
+    assertFalse(key1.equals(key3));
+  }
+
   private static <T> T serialize(T object) throws Exception {
       ByteArrayOutputStream baos = new ByteArrayOutputStream();
       new ObjectOutputStream(baos).writeObject(object);
@@ -0,0 +1,223 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class CacheStatisticsTest {
+
+  @Test
+  public void shouldCountHitsMissesPutsAndEvictions() {
+    CacheStatisticsRegistry registry = new CacheStatisticsRegistry();
+    Cache cache = new CacheBuilder("counted").addDecorator(LruCache.class).size(2).statisticsRegistry(registry).build();
+    cache.putObject("a", "a");
+    cache.putObject("b", "b");
+    cache.putObject("c", "c");
+    cache.getObject("a");
+    cache.getObject("c");
+
+    CacheStatistics statistics = registry.getStatistics("counted");
+    assertEquals(3, statistics.getPutCount());
+    assertEquals(1, statistics.getEvictionCount());
+    assertEquals(1, statistics.getHitCount());
+    assertEquals(1, statistics.getMissCount());
+    assertEquals(0.5, statistics.getHitRatio(), 0);
+    assertEquals(2, statistics.getSize());
+
+    statistics.recordLoadTime(3000000);
+    statistics.recordLoadTime(1000000);
+    assertEquals(2, statistics.getLoadCount());
+    assertEquals(2000, statistics.getLoadTimeMean());
+    assertEquals(4000, statistics.getLoadTimeTotal());
+
+    statistics.resetStatistics();
+    assertEquals(0, statistics.getPutCount());
+    assertEquals(0, statistics.getHitRatio(), 0);
+  }
+
+  @Test
+  public void shouldNotCountReplacedValuesAsEvictions() {
+    CacheStatisticsRegistry registry = new CacheStatisticsRegistry();
+    Cache cache = new CacheBuilder("replaced").addDecorator(LruCache.class).size(2).statisticsRegistry(registry).build();
+    cache.putObject("a", "a");
+    cache.putObject("b", "b");
+    cache.putObject("a", "a2");
+    cache.putObject("b", null);
+
+    CacheStatistics statistics = registry.getStatistics("replaced");
+    assertEquals(0, statistics.getEvictionCount());
+    cache.putObject("c", "c");
+    assertEquals(1, statistics.getEvictionCount());
+  }
+
+  @Test
+  public void shouldCountEvictionsOfTheBaseCache() {
+    CacheStatisticsRegistry registry = new CacheStatisticsRegistry();
+    Cache cache = new CacheBuilder("offheap").implementation(OffHeapCache.class).size(4)
+        .statisticsRegistry(registry).build();
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(100 - cache.getSize(), registry.getStatistics("offheap").getEvictionCount());
+  }
+
+  @Test
+  public void shouldCountThroughSubclassesOfLoggingCache() {
+    CacheStatisticsRegistry registry = new CacheStatisticsRegistry();
+    Cache cache = new CacheBuilder("subclass").implementation(CustomLoggingCache.class)
+        .statisticsRegistry(registry).build();
+    assertTrue(cache instanceof CustomLoggingCache);
+    cache.putObject("a", "a");
+    cache.getObject("a");
+    cache.getObject("b");
+
+    assertEquals(0.5, ((CustomLoggingCache) cache).getHitRatio(), 0);
+    assertEquals(1, registry.getStatistics("subclass").getHitCount());
+    assertEquals(1, registry.getStatistics("subclass").getMissCount());
+  }
+
+  @Test
+  public void shouldPassEventsToConfiguredMetrics() {
+    Properties properties = new Properties();
+    properties.setProperty("metricsClass", CountingMetrics.class.getName());
+    CacheStatisticsRegistry registry = new CacheStatisticsRegistry();
+    Cache cache = new CacheBuilder("forwarded").properties(properties).statisticsRegistry(registry).build();
+    cache.putObject("a", "a");
+    cache.getObject("a");
+    cache.getObject("b");
+
+    CountingMetrics metrics = (CountingMetrics) registry.getStatistics("forwarded").getMetrics();
+    assertEquals(3, metrics.events.get());
+  }
+
+  @Test
+  public void shouldRegisterMBeansWhenEnabled() throws Exception {
+    CacheStatisticsRegistry registry = new CacheStatisticsRegistry();
+    Cache cache = new CacheBuilder("org.apache.ibatis.jmx").statisticsRegistry(registry).build();
+    cache.getObject("a");
+    assertNull(registry.getRegisteredName("org.apache.ibatis.jmx"));
+
+    registry.setJmxEnabled(true);
+    ObjectName name = registry.getRegisteredName("org.apache.ibatis.jmx");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      assertEquals(1L, server.getAttribute(name, "MissCount"));
+      assertEquals("org.apache.ibatis.jmx", server.getAttribute(name, "Id"));
+    } finally {
+      registry.setJmxEnabled(false);
+    }
+    assertFalse(server.isRegistered(name));
+  }
+
+  @Test
+  public void shouldRegisterCachesOfAnotherConfigurationUnderTheirOwnName() throws Exception {
+    CacheStatisticsRegistry first = new CacheStatisticsRegistry();
+    CacheStatisticsRegistry second = new CacheStatisticsRegistry();
+    new CacheBuilder("org.apache.ibatis.jmx.shared").statisticsRegistry(first).build();
+    new CacheBuilder("org.apache.ibatis.jmx.shared").statisticsRegistry(second).build();
+    first.setJmxEnabled(true);
+    second.setJmxEnabled(true);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName firstName = first.getRegisteredName("org.apache.ibatis.jmx.shared");
+      ObjectName secondName = second.getRegisteredName("org.apache.ibatis.jmx.shared");
+      assertNotNull(secondName);
+      assertNotEquals(firstName, secondName);
+      assertTrue(server.isRegistered(firstName));
+      assertTrue(server.isRegistered(secondName));
+    } finally {
+      first.setJmxEnabled(false);
+      second.setJmxEnabled(false);
+    }
+  }
+
+  @Test
+  public void shouldUnregisterMBeanOfDiscardedConfiguration() throws Exception {
+    ObjectName name = registerDiscardedCache("org.apache.ibatis.jmx.discarded");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertTrue(server.isRegistered(name));
+    for (int i = 0; i < 50 && server.isRegistered(name); i++) {
+      System.gc();
+      Thread.sleep(10);
+      try {
+        // a read finds the statistics gone
+        server.getAttribute(name, "Size");
+      } catch (InstanceNotFoundException e) {
+        // unregistered by another registry
+      }
+    }
+    assertFalse(server.isRegistered(name));
+  }
+
+  private static ObjectName registerDiscardedCache(String id) {
+    CacheStatisticsRegistry registry = new CacheStatisticsRegistry();
+    Cache cache = new CacheBuilder(id).statisticsRegistry(registry).build();
+    cache.putObject("a", "a");
+    registry.setJmxEnabled(true);
+    return registry.getRegisteredName(id);
+  }
+
+  public static class CountingMetrics implements CacheMetrics {
+    private final AtomicInteger events = new AtomicInteger();
+
+    @Override
+    public void recordHit() {
+      events.incrementAndGet();
+    }
+
+    @Override
+    public void recordMiss() {
+      events.incrementAndGet();
+    }
+
+    @Override
+    public void recordPut() {
+      events.incrementAndGet();
+    }
+
+    @Override
+    public void recordEvictions(int count) {
+      events.addAndGet(count);
+    }
+
+    @Override
+    public void recordLoadTime(long nanos) {
+      events.incrementAndGet();
+    }
+  }
+
+  public static class CustomLoggingCache extends LoggingCache {
+    public CustomLoggingCache(String id) {
+      super(new PerpetualCache(id));
+    }
+  }
+
+}
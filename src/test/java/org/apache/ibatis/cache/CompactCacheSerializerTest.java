@@ -0,0 +1,242 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class CompactCacheSerializerTest {
+
+  private final CompactCacheSerializer serializer = new CompactCacheSerializer();
+
+  @Test
+  public void shouldCopyBeanGraph() throws Exception {
+    Author author = new Author(1, "jane", Kind.EDITOR);
+    Blog blog = new Blog(7L, "Título", author);
+    blog.tags = new String[] { "java", null, "sql" };
+    blog.ratings = new int[] { 5, -3, Integer.MIN_VALUE };
+    blog.price = new BigDecimal("-12.3400");
+    blog.views = new BigInteger("123456789012345678901234567890");
+    blog.published = new Date(1234567890L);
+    Timestamp updated = new Timestamp(1234567890L);
+    updated.setNanos(123456789);
+    blog.updated = updated;
+    blog.day = java.sql.Date.valueOf("2018-01-02");
+    blog.properties.put("score", 4.5d);
+    blog.properties.put("initial", 'j');
+    blog.properties.put("flag", Boolean.TRUE);
+    blog.properties.put("small", (short) -2);
+    blog.properties.put("tiny", (byte) 3);
+    blog.properties.put("ratio", 0.5f);
+    blog.properties.put("id", Long.MAX_VALUE);
+
+    Blog copy = roundTrip(blog);
+
+    assertNotSame(blog, copy);
+    assertEquals(blog.id, copy.id);
+    assertEquals("Título", copy.title);
+    assertEquals(Kind.EDITOR, copy.author.kind);
+    assertEquals("jane", copy.author.name);
+    assertThat(copy.tags).containsExactly("java", null, "sql");
+    assertThat(copy.ratings).containsExactly(5, -3, Integer.MIN_VALUE);
+    assertEquals(blog.price, copy.price);
+    assertEquals(blog.views, copy.views);
+    assertEquals(blog.published, copy.published);
+    assertEquals(blog.updated, copy.updated);
+    assertEquals(java.sql.Date.class, copy.day.getClass());
+    assertEquals(blog.day, copy.day);
+    assertEquals(blog.properties, copy.properties);
+    assertEquals(LinkedHashMap.class, copy.properties.getClass());
+  }
+
+  @Test
+  public void shouldKeepSharedAndCyclicReferences() throws Exception {
+    Author author = new Author(1, "jane", Kind.WRITER);
+    List<Blog> blogs = new ArrayList<Blog>();
+    blogs.add(new Blog(1L, "one", author));
+    blogs.add(new Blog(2L, "two", author));
+    author.blogs.addAll(blogs);
+
+    List<Blog> copy = roundTrip((Serializable) blogs);
+
+    Author copiedAuthor = copy.get(0).author;
+    assertSame(copiedAuthor, copy.get(1).author);
+    assertSame(copy.get(0), copiedAuthor.blogs.get(0));
+    assertSame(copy.get(1), copiedAuthor.blogs.get(1));
+  }
+
+  @Test
+  public void shouldCopyCollections() throws Exception {
+    HashMap<Object, Object> map = new HashMap<Object, Object>();
+    map.put("set", new HashSet<Object>(Arrays.asList(1, 2, 3)));
+    TreeMap<String, Integer> sorted = new TreeMap<String, Integer>();
+    sorted.put("b", 2);
+    sorted.put("a", 1);
+    map.put("sorted", sorted);
+    map.put("bytes", new byte[] { 1, 2, 3 });
+    map.put("longs", new long[] { Long.MIN_VALUE, 0, Long.MAX_VALUE });
+    map.put("empty", new ArrayList<Object>());
+
+    HashMap<Object, Object> copy = roundTrip(map);
+
+    assertEquals(map.keySet(), copy.keySet());
+    assertEquals(map.get("set"), copy.get("set"));
+    assertEquals(sorted, copy.get("sorted"));
+    assertEquals(TreeMap.class, copy.get("sorted").getClass());
+    assertThat((byte[]) copy.get("bytes")).containsExactly(new byte[] { 1, 2, 3 });
+    assertThat((long[]) copy.get("longs")).containsExactly(Long.MIN_VALUE, 0, Long.MAX_VALUE);
+    assertEquals(new ArrayList<Object>(), copy.get("empty"));
+  }
+
+  @Test
+  public void shouldUseJavaSerializationForCustomizedClasses() throws Exception {
+    Customized customized = new Customized();
+    customized.value = "x";
+
+    Customized copy = roundTrip(customized);
+
+    assertEquals("x-written", copy.value);
+  }
+
+  @Test(expected = NotSerializableException.class)
+  public void shouldRejectNonSerializableFields() throws Exception {
+    Blog blog = new Blog(1L, "one", null);
+    blog.properties.put("bad", new Object());
+    serializer.serialize(blog);
+  }
+
+  @Test
+  public void shouldBeSmallerThanJavaSerialization() throws Exception {
+    List<Blog> blogs = new ArrayList<Blog>();
+    for (int i = 0; i < 100; i++) {
+      blogs.add(new Blog((long) i, "blog " + i, new Author(i, "author " + i, Kind.WRITER)));
+    }
+    byte[] compact = serializer.serialize((Serializable) blogs);
+    byte[] java = new JavaCacheSerializer().serialize((Serializable) blogs);
+
+    assertThat(compact.length).isLessThan(java.length / 2);
+    assertEquals(100, ((List<?>) serializer.deserialize(compact)).size());
+  }
+
+  @Test
+  public void shouldBeConfigurablePerCache() {
+    Cache cache = new CacheBuilder("test").readWrite(true)
+        .properties(properties("serializerClass", CompactCacheSerializer.class.getName())).build();
+    Author author = new Author(1, "jane", Kind.WRITER);
+    author.cachedDisplayName = "stale";
+    cache.putObject("key", author);
+
+    Author copy = (Author) cache.getObject("key");
+
+    assertEquals("jane", copy.name);
+    // the transient field keeps the constructor value, Java serialization would leave it null
+    assertEquals("none", copy.cachedDisplayName);
+  }
+
+  private static Properties properties(String name, String value) {
+    Properties properties = new Properties();
+    properties.setProperty(name, value);
+    return properties;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T roundTrip(Serializable value) throws Exception {
+    return (T) serializer.deserialize(serializer.serialize(value));
+  }
+
+  enum Kind {
+    WRITER, EDITOR {
+      @Override
+      public String toString() {
+        return "editor";
+      }
+    }
+  }
+
+  static class Author implements Serializable {
+    private final int id;
+    private final String name;
+    private final Kind kind;
+    private final List<Blog> blogs = new ArrayList<Blog>();
+    private transient String cachedDisplayName = "none";
+
+    Author() {
+      this(0, null, null);
+    }
+
+    Author(int id, String name, Kind kind) {
+      this.id = id;
+      this.name = name;
+      this.kind = kind;
+    }
+  }
+
+  static class Blog implements Serializable {
+    private long id;
+    private String title;
+    private Author author;
+    private String[] tags;
+    private int[] ratings;
+    private BigDecimal price;
+    private BigInteger views;
+    private Date published;
+    private Date updated;
+    private Date day;
+    private Map<String, Object> properties = new LinkedHashMap<String, Object>();
+
+    Blog() {
+    }
+
+    Blog(long id, String title, Author author) {
+      this.id = id;
+      this.title = title;
+      this.author = author;
+    }
+  }
+
+  static class Customized implements Serializable {
+    private String value;
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      value = value + "-written";
+      out.defaultWriteObject();
+    }
+  }
+
+}
@@ -0,0 +1,156 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.ibatis.cache.decorators.ConcurrentLruCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import org.junit.Test;
+
+public class ConcurrentLruCacheTest {
+
+  @Test
+  public void shouldRemoveLeastRecentlyUsedItemInBeyondFiveEntries() {
+    ConcurrentLruCache cache = new ConcurrentLruCache(new ConcurrentPerpetualCache("default"));
+    cache.setSegments(1);
+    cache.setSize(5);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(0, cache.getObject(0));
+    cache.putObject(5, 5);
+    assertNull(cache.getObject(1));
+    assertEquals(5, cache.getSize());
+  }
+
+  @Test
+  public void shouldNotGrowBeyondSizeWithSegments() {
+    ConcurrentLruCache cache = new ConcurrentLruCache(new ConcurrentPerpetualCache("default"));
+    cache.setSize(64);
+    for (int i = 0; i < 10000; i++) {
+      cache.putObject(i, i);
+    }
+    assertTrue(cache.getSize() <= 64);
+  }
+
+  @Test
+  public void shouldRemoveItemOnDemand() {
+    Cache cache = new ConcurrentLruCache(new ConcurrentPerpetualCache("default"));
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  public void shouldFlushAllItemsOnDemand() {
+    Cache cache = new ConcurrentLruCache(new ConcurrentPerpetualCache("default"));
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(4));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+  }
+
+  @Test
+  public void shouldEvictItemPutWhileClearing() throws Exception {
+    final CountDownLatch cleared = new CountDownLatch(1);
+    final CountDownLatch resume = new CountDownLatch(1);
+    final ConcurrentLruCache cache = new ConcurrentLruCache(new ConcurrentPerpetualCache("default") {
+      @Override
+      public void clear() {
+        super.clear();
+        cleared.countDown();
+        try {
+          resume.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    cache.setSegments(1);
+    cache.setSize(2);
+    Thread clearing = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        cache.clear();
+      }
+    });
+    clearing.start();
+    assertTrue(cleared.await(5, TimeUnit.SECONDS));
+    Thread putting = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        cache.putObject(0, 0);
+      }
+    });
+    putting.start();
+    putting.join(200);
+    resume.countDown();
+    clearing.join();
+    putting.join();
+    cache.putObject(1, 1);
+    cache.putObject(2, 2);
+    assertEquals(2, cache.getSize());
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  public void shouldStayBoundedUnderConcurrentAccess() throws Exception {
+    final ConcurrentLruCache cache = new ConcurrentLruCache(new ConcurrentPerpetualCache("default"));
+    cache.setSize(100);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 8; t++) {
+      final int offset = t * 1000;
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 5000; i++) {
+              int key = offset + (i % 1000);
+              cache.putObject(key, key);
+              Object value = cache.getObject(key);
+              if (value != null && !value.equals(key)) {
+                throw new IllegalStateException("Wrong value for " + key);
+              }
+            }
+          } catch (Throwable e) {
+            failure.set(e);
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure.get());
+    assertTrue(cache.getSize() <= 100);
+  }
+
+}
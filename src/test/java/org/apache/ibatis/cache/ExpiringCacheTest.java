@@ -0,0 +1,129 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class ExpiringCacheTest {
+
+  @Test
+  public void shouldExpireEntryAfterWrite() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setExpireAfterWrite(100);
+    cache.putObject(0, 0);
+    Thread.sleep(50);
+    cache.putObject(1, 1);
+    assertEquals(0, cache.getObject(0));
+    Thread.sleep(60);
+    assertNull(cache.getObject(0));
+    assertEquals(1, cache.getObject(1));
+  }
+
+  @Test
+  public void shouldExpireIdleEntry() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setExpireAfterAccess(100);
+    cache.putObject(0, 0);
+    cache.putObject(1, 1);
+    for (int i = 0; i < 3; i++) {
+      Thread.sleep(50);
+      assertEquals(0, cache.getObject(0));
+    }
+    assertNull(cache.getObject(1));
+  }
+
+  @Test
+  public void shouldServeOldValueWhileRefreshingAhead() throws Exception {
+    final ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setExpireAfterWrite(1000);
+    cache.setRefreshAhead(950);
+    cache.putObject(0, "old");
+    Thread.sleep(60);
+    final CountDownLatch refreshed = new CountDownLatch(1);
+    ExpiringCache.setRefresher(new ExpiringCache.Refresher() {
+      @Override
+      public Runnable newRefreshTask(final Object key) {
+        return new Runnable() {
+          @Override
+          public void run() {
+            cache.putObject(key, "new");
+            refreshed.countDown();
+          }
+        };
+      }
+    });
+    try {
+      assertEquals("old", cache.getObject(0));
+    } finally {
+      ExpiringCache.removeRefresher();
+    }
+    assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+    assertEquals("new", cache.getObject(0));
+  }
+
+  @Test
+  public void shouldDiscardRefreshOfFlushedEntry() throws Exception {
+    final ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setExpireAfterWrite(1000);
+    cache.setRefreshAhead(1000);
+    cache.putObject(0, "old");
+    final CountDownLatch flushed = new CountDownLatch(1);
+    final CountDownLatch refreshed = new CountDownLatch(1);
+    ExpiringCache.setRefresher(new ExpiringCache.Refresher() {
+      @Override
+      public Runnable newRefreshTask(final Object key) {
+        return new Runnable() {
+          @Override
+          public void run() {
+            try {
+              flushed.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            cache.putObject(key, "stale");
+            refreshed.countDown();
+          }
+        };
+      }
+    });
+    try {
+      assertEquals("old", cache.getObject(0));
+    } finally {
+      ExpiringCache.removeRefresher();
+    }
+    cache.clear();
+    flushed.countDown();
+    assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  public void shouldRemoveItemOnDemand() {
+    Cache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+  }
+
+}
@@ -0,0 +1,95 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.NegativeResultCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class NegativeResultCacheTest {
+
+  @Test
+  public void shouldKeepEmptyResultsApart() {
+    Cache delegate = new PerpetualCache("default");
+    NegativeResultCache cache = new NegativeResultCache(delegate);
+    cache.putObject("empty", new ArrayList<Object>());
+    cache.putObject("full", Arrays.asList(1));
+    assertEquals(1, delegate.getSize());
+    assertEquals(2, cache.getSize());
+    assertEquals(Collections.emptyList(), cache.getObject("empty"));
+    assertEquals(Arrays.asList(1), cache.getObject("full"));
+  }
+
+  @Test
+  public void shouldReturnAFreshListOnEachHit() {
+    NegativeResultCache cache = new NegativeResultCache(new PerpetualCache("default"));
+    cache.putObject("empty", new ArrayList<Object>());
+    @SuppressWarnings("unchecked")
+    List<Object> first = (List<Object>) cache.getObject("empty");
+    first.add("changed by the caller");
+    assertEquals(Collections.emptyList(), cache.getObject("empty"));
+  }
+
+  @Test
+  public void shouldEvictOldestEmptyResultsWithoutTouchingOthers() {
+    Cache delegate = new LruCache(new PerpetualCache("default"));
+    NegativeResultCache cache = new NegativeResultCache(delegate);
+    cache.setNegativeSize(2);
+    cache.putObject("full", Arrays.asList(1));
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, new ArrayList<Object>());
+    }
+    assertEquals(3, cache.getSize());
+    assertNull(cache.getObject(7));
+    assertNotNull(cache.getObject(8));
+    assertNotNull(cache.getObject(9));
+    assertNotNull(cache.getObject("full"));
+  }
+
+  @Test
+  public void shouldExpireEmptyResults() throws Exception {
+    NegativeResultCache cache = new NegativeResultCache(new PerpetualCache("default"));
+    cache.setNegativeExpireAfterWrite(50);
+    cache.putObject("empty", new ArrayList<Object>());
+    assertNotNull(cache.getObject("empty"));
+    Thread.sleep(100);
+    assertNull(cache.getObject("empty"));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void shouldReplaceResultsOfTheSameKey() {
+    Cache delegate = new PerpetualCache("default");
+    NegativeResultCache cache = new NegativeResultCache(delegate);
+    cache.putObject("key", Arrays.asList(1));
+    cache.putObject("key", new ArrayList<Object>());
+    assertNull(delegate.getObject("key"));
+    assertEquals(Collections.emptyList(), cache.getObject("key"));
+    cache.putObject("key", Arrays.asList(2));
+    assertEquals(Arrays.asList(2), cache.getObject("key"));
+    cache.removeObject("key");
+    assertNull(cache.getObject("key"));
+  }
+
+}
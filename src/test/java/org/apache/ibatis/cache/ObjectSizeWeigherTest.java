@@ -0,0 +1,77 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.executor.loader.ResultLoaderMap;
+import org.apache.ibatis.executor.loader.javassist.JavassistProxyFactory;
+import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+public class ObjectSizeWeigherTest {
+
+  private final ObjectSizeWeigher weigher = new ObjectSizeWeigher();
+
+  @Test
+  public void shouldWeighByteArraysByTheirLength() {
+    assertEquals(100, weigher.weigh(new byte[100]));
+  }
+
+  @Test
+  public void shouldNotWalkIntoTheHandlerOfLazyLoadingProxies() {
+    Author author = new Author(101, "jim", "******", "jim@ibatis.apache.org", "Something...", Section.NEWS);
+    ResultLoaderMap loader = new ResultLoaderMap();
+    loader.addLoader("id", null, null);
+    Object proxy = new JavassistProxyFactory().createProxy(author, loader, new Configuration(), new DefaultObjectFactory(),
+        new ArrayList<Class<?>>(), new ArrayList<Object>());
+    assertTrue(weigher.weigh(proxy) < weigher.weigh(author) + 64);
+  }
+
+  @Test
+  public void shouldNotWalkIntoTheHandlerOfJdkProxies() {
+    final byte[] state = new byte[100000];
+    Runnable proxy = (Runnable) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Runnable.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            return state;
+          }
+        });
+    assertTrue(weigher.weigh(proxy) < 64);
+  }
+
+  @Test
+  public void shouldNotCountTheConfiguration() {
+    Holder holder = new Holder();
+    long empty = weigher.weigh(holder);
+    holder.configuration = new Configuration();
+    assertEquals(empty, weigher.weigh(holder));
+  }
+
+  private static class Holder {
+    private Configuration configuration;
+  }
+
+}
@@ -0,0 +1,235 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.TableDependencyCache;
+import org.apache.ibatis.cache.decorators.TableInvalidatingCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OffHeapCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldKeepCopiesOfObjects() {
+    Cache cache = new OffHeapCache("default");
+    List<String> value = new ArrayList<String>(Arrays.asList("a", "b"));
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, i);
+    }
+    cache.putObject("list", value);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, cache.getObject(i));
+    }
+    assertEquals(value, cache.getObject("list"));
+    assertNotSame(cache.getObject("list"), cache.getObject("list"));
+    assertEquals(1001, cache.getSize());
+  }
+
+  @Test
+  public void shouldStoreSerializedCacheBytesAsTheyAre() {
+    Cache cache = new SerializedCache(new OffHeapCache("default"));
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+  }
+
+  @Test
+  public void shouldRemoveItemOnDemand() {
+    Cache cache = new OffHeapCache("default");
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+    cache.putObject(1, 1);
+    cache.putObject(1, null);
+    assertNull(cache.getObject(1));
+  }
+
+  @Test
+  public void shouldFlushAllItemsOnDemand() {
+    Cache cache = new OffHeapCache("default");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+    assertEquals(0, cache.getSize());
+    cache.putObject(0, 0);
+    assertEquals(0, cache.getObject(0));
+  }
+
+  @Test
+  public void shouldKeepEntriesReadSinceTheyWereWritten() {
+    OffHeapCache cache = smallCache();
+    for (int i = 0; i < 500; i++) {
+      cache.putObject(i, new byte[100]);
+      assertNotNull(cache.getObject(0));
+    }
+    assertNotNull(cache.getObject(0));
+    assertNull(cache.getObject(1));
+    assertNotNull(cache.getObject(499));
+    assertTrue(cache.getSize() <= 80);
+  }
+
+  @Test
+  public void shouldLimitNumberOfEntries() {
+    OffHeapCache cache = smallCache();
+    cache.setSize(10);
+    for (int i = 0; i < 30; i++) {
+      cache.putObject(i, new byte[10]);
+    }
+    assertEquals(10, cache.getSize());
+    assertNull(cache.getObject(19));
+    assertNotNull(cache.getObject(20));
+    assertNotNull(cache.getObject(29));
+  }
+
+  @Test
+  public void shouldNotCacheValuesLargerThanASlab() {
+    OffHeapCache cache = smallCache();
+    cache.putObject("small", new byte[10]);
+    cache.putObject("small", new byte[2000]);
+    assertNull(cache.getObject("small"));
+  }
+
+  @Test
+  public void shouldUseMemoryMappedFile() throws Exception {
+    File file = new File(folder.getRoot(), "cache.bin");
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setCapacity(1024 * 1024);
+    cache.setFile(file.getAbsolutePath());
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, "value " + i);
+    }
+    assertEquals("value 42", cache.getObject(42));
+    assertEquals(1024 * 1024, file.length());
+  }
+
+  @Test
+  public void shouldSupportConcurrentAccess() throws Exception {
+    final OffHeapCache cache = smallCache();
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int offset = t * 10000;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 5000; i++) {
+              cache.putObject(offset + i, offset + i);
+              Object value = cache.getObject(offset + i / 2);
+              if (value != null && !value.equals(offset + i / 2)) {
+                throw new AssertionError("Read " + value + " for key " + (offset + i / 2));
+              }
+            }
+          } catch (Throwable e) {
+            failure.set(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure.get());
+  }
+
+  @Test
+  public void shouldBeBuiltWithoutLruOrSynchronization() {
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class)
+        .addDecorator(LruCache.class).readWrite(true).size(100).build();
+    assertTrue(cache instanceof LoggingCache);
+    for (int i = 0; i < 200; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(100, cache.getSize());
+  }
+
+  @Test
+  public void shouldReportEvictedKeys() {
+    OffHeapCache cache = smallCache();
+    cache.setSize(10);
+    final List<Object> evicted = new ArrayList<Object>();
+    cache.addEvictionListener(new EvictionListener() {
+      @Override
+      public void onEviction(Object key) {
+        evicted.add(key);
+      }
+    });
+    for (int i = 0; i < 30; i++) {
+      cache.putObject(i, new byte[10]);
+    }
+    cache.removeObject(29);
+    assertEquals(20, evicted.size());
+    assertEquals(0, evicted.get(0));
+    assertEquals(19, evicted.get(19));
+  }
+
+  @Test
+  public void shouldLetTableDependenciesForgetEvictedKeys() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("tableInvalidation", "true");
+    properties.setProperty("expireAfterWrite", "60000");
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).size(10)
+        .properties(properties).build();
+    assertTrue(cache instanceof TableInvalidatingCache);
+    for (int i = 0; i < 100; i++) {
+      ((TableInvalidatingCache) cache).putObject(i, i, Collections.singleton("blog"));
+    }
+    // the size is shared out between the segments, rounded up
+    assertTrue(cache.getSize() <= 12);
+    TableDependencyCache dependencies = (TableDependencyCache) field(cache, TableInvalidatingCache.class, "dependencies");
+    assertEquals(cache.getSize(), ((Map<?, ?>) field(dependencies, TableDependencyCache.class, "tablesByKey")).size());
+  }
+
+  private static Object field(Object target, Class<?> type, String name) throws Exception {
+    Field field = type.getDeclaredField(name);
+    field.setAccessible(true);
+    return field.get(target);
+  }
+
+  private OffHeapCache smallCache() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setSegments(1);
+    cache.setCapacity(8 * 1024);
+    cache.setSlabSize(1024);
+    return cache;
+  }
+
+}
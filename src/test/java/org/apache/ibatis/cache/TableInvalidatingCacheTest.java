@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.ibatis.cache.decorators.TableDependencyCache;
+import org.apache.ibatis.cache.decorators.TableInvalidatingCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class TableInvalidatingCacheTest {
+
+  private static final Set<String> PERSON = Collections.singleton("person");
+  private static final Set<String> PET = Collections.singleton("pet");
+
+  @Test
+  public void shouldOnlyRemoveEntriesOfInvalidatedTables() {
+    TableDependencyCache dependencies = new TableDependencyCache(new PerpetualCache("default"));
+    TableInvalidatingCache cache = new TableInvalidatingCache(dependencies, dependencies);
+    cache.putObject("person", "Jane", PERSON);
+    cache.putObject("pet", "Rex", PET);
+    cache.putObject("unknown", "?", null);
+    cache.invalidate(PERSON);
+    assertNull(cache.getObject("person"));
+    assertNull(cache.getObject("unknown"));
+    assertEquals("Rex", cache.getObject("pet"));
+  }
+
+  @Test
+  public void shouldRemoveEntryPutWhileInvalidating() {
+    final TableInvalidatingCache[] holder = new TableInvalidatingCache[1];
+    final TableDependencyCache dependencies = new TableDependencyCache(new PerpetualCache("default"));
+    Cache invalidatingDuringPut = new PerpetualCache("default") {
+      @Override
+      public void putObject(Object key, Object value) {
+        dependencies.putObject(key, value);
+        // a write commits between the put and the registration of its tables
+        holder[0].invalidate(PERSON);
+      }
+
+      @Override
+      public Object getObject(Object key) {
+        return dependencies.getObject(key);
+      }
+
+      @Override
+      public Object removeObject(Object key) {
+        return dependencies.removeObject(key);
+      }
+    };
+    holder[0] = new TableInvalidatingCache(invalidatingDuringPut, dependencies);
+    holder[0].putObject("person", "Jane", PERSON);
+    assertNull(holder[0].getObject("person"));
+  }
+
+}
@@ -0,0 +1,115 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class TinyLfuCacheTest {
+
+  @Test
+  public void shouldNotGrowBeyondSize() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(100);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, i);
+    }
+    assertTrue(cache.getSize() <= 100);
+  }
+
+  @Test
+  public void shouldKeepFrequentlyUsedItemsDuringScan() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(100);
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 50; i++) {
+        if (cache.getObject(i) == null) {
+          cache.putObject(i, i);
+        }
+      }
+    }
+    for (int i = 1000; i < 2000; i++) {
+      cache.putObject(i, i);
+    }
+    for (int i = 0; i < 50; i++) {
+      assertEquals(i, cache.getObject(i));
+    }
+  }
+
+  @Test
+  public void shouldReportBetterHitRatioThanLruWhenScanned() {
+    LoggingCache tinyLfu = new LoggingCache(sized(new TinyLfuCache(new PerpetualCache("tinylfu"))));
+    LoggingCache lru = new LoggingCache(sized(new LruCache(new PerpetualCache("lru"))));
+    runHotLookupsWithReports(tinyLfu);
+    runHotLookupsWithReports(lru);
+    assertTrue(tinyLfu.getHitRatio() > lru.getHitRatio());
+  }
+
+  @Test
+  public void shouldRemoveItemOnDemand() {
+    Cache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  public void shouldFlushAllItemsOnDemand() {
+    Cache cache = new TinyLfuCache(new PerpetualCache("default"));
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(4));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+  }
+
+  private static Cache sized(Cache cache) {
+    if (cache instanceof TinyLfuCache) {
+      ((TinyLfuCache) cache).setSize(100);
+    } else {
+      ((LruCache) cache).setSize(100);
+    }
+    return cache;
+  }
+
+  private static void runHotLookupsWithReports(Cache cache) {
+    int report = 10000;
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 80; i++) {
+        getOrLoad(cache, i);
+      }
+      for (int i = 0; i < 200; i++) {
+        getOrLoad(cache, report++);
+      }
+    }
+  }
+
+  private static void getOrLoad(Cache cache, int key) {
+    if (cache.getObject(key) == null) {
+      cache.putObject(key, key);
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class TransactionalCacheManagerTest {
+
+  @Test
+  public void shouldHoldEntriesUntilCommitByDefault() {
+    Cache cache = new PerpetualCache("default");
+    TransactionalCacheManager tcm = new TransactionalCacheManager();
+    tcm.putObject(cache, key("a"), "value", null);
+    assertNull(cache.getObject(key("a")));
+    tcm.commit();
+    assertEquals("value", cache.getObject(key("a")));
+  }
+
+  @Test
+  public void shouldWriteThroughWhileNothingWasWritten() {
+    Cache cache = new PerpetualCache("default");
+    TransactionalCacheManager tcm = new TransactionalCacheManager(true);
+    tcm.putObject(cache, key("a"), "value", null);
+    assertEquals("value", cache.getObject(key("a")));
+    tcm.rollback();
+    assertEquals("value", cache.getObject(key("a")));
+  }
+
+  @Test
+  public void shouldHoldEntriesBackOnceWritten() {
+    Cache cache = new PerpetualCache("default");
+    TransactionalCacheManager tcm = new TransactionalCacheManager(true);
+    tcm.markWritten();
+    tcm.putObject(cache, key("a"), "value", null);
+    assertNull(cache.getObject(key("a")));
+    tcm.rollback();
+    assertNull(cache.getObject(key("a")));
+    tcm.putObject(cache, key("b"), "value", null);
+    assertEquals("value", cache.getObject(key("b")));
+  }
+
+  @Test
+  public void shouldNotWriteThroughAfterCacheWasFlushed() {
+    Cache cache = new PerpetualCache("default");
+    cache.putObject(key("old"), "old");
+    TransactionalCacheManager tcm = new TransactionalCacheManager(true);
+    tcm.invalidate(cache, Collections.singleton("blog"));
+    tcm.putObject(cache, key("a"), "value", null);
+    assertNull(cache.getObject(key("a")));
+    tcm.commit();
+    assertNull(cache.getObject(key("old")));
+    assertEquals("value", cache.getObject(key("a")));
+  }
+
+  @Test
+  public void shouldReleaseBlockingCacheLockBeforeCommit() throws Exception {
+    final BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    TransactionalCacheManager tcm = new TransactionalCacheManager(true);
+    assertNull(tcm.getObject(cache, key("a")));
+    tcm.putObject(cache, key("a"), "value", null);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> other = executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() {
+          return cache.getObject(key("a"));
+        }
+      });
+      assertEquals("value", other.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+    tcm.commit();
+  }
+
+  private static CacheKey key(String value) {
+    return new CacheKey(new Object[] { value });
+  }
+
+}
@@ -0,0 +1,109 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class WeightedCacheTest {
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedWhenOverWeight() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setMaxWeight(3000);
+    cache.putObject(0, new byte[1000]);
+    cache.putObject(1, new byte[1000]);
+    cache.putObject(2, new byte[1000]);
+    assertNotNull(cache.getObject(0));
+    cache.putObject(3, new byte[1000]);
+    assertNull(cache.getObject(1));
+    assertNotNull(cache.getObject(0));
+    assertEquals(3000, cache.getWeight());
+  }
+
+  @Test
+  public void shouldCountLargeListMoreThanSingleRow() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    List<String> rows = new ArrayList<String>();
+    for (int i = 0; i < 50000; i++) {
+      rows.add("row " + i);
+    }
+    cache.putObject("list", rows);
+    long listWeight = cache.getWeight();
+    cache.putObject("single", Collections.singletonList("row 0"));
+    long singleWeight = cache.getWeight() - listWeight;
+    assertTrue(listWeight > 1000 * singleWeight);
+  }
+
+  @Test
+  public void shouldNotCacheValueHeavierThanBudget() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setMaxWeight(100);
+    cache.putObject(0, new byte[50]);
+    cache.putObject(1, new byte[200]);
+    assertNull(cache.getObject(1));
+    assertNotNull(cache.getObject(0));
+    assertEquals(50, cache.getWeight());
+  }
+
+  @Test
+  public void shouldWeighSerializedLength() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    Cache readWrite = new SerializedCache(cache);
+    readWrite.putObject(0, "value");
+    assertTrue(cache.getWeight() > 0);
+    assertTrue(cache.getWeight() < 100);
+  }
+
+  @Test
+  public void shouldTrackWeightOnReplaceRemoveAndClear() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.putObject(0, new byte[10]);
+    cache.putObject(0, new byte[30]);
+    assertEquals(30, cache.getWeight());
+    cache.putObject(1, new byte[5]);
+    cache.removeObject(0);
+    assertEquals(5, cache.getWeight());
+    cache.clear();
+    assertEquals(0, cache.getWeight());
+    assertNull(cache.getObject(1));
+  }
+
+  @Test
+  public void shouldUseConfiguredWeigher() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setWeigherClass(UnitWeigher.class.getName());
+    cache.putObject(0, "a");
+    cache.putObject(1, "b");
+    assertEquals(2, cache.getWeight());
+  }
+
+  public static class UnitWeigher implements Weigher {
+    @Override
+    public long weigh(Object value) {
+      return 1;
+    }
+  }
+
+}
@@ -0,0 +1,67 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void shouldEstimatePercentilesFromBuckets() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 10);
+    }
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(100, snapshot.getCount());
+    assertEquals(505, snapshot.getMean());
+    assertEquals(1000, snapshot.getMax());
+    // 500us falls into [256, 512)
+    assertEquals(511, snapshot.get50thPercentile());
+    // capped at the maximum rather than the bucket bound of 1023
+    assertEquals(1000, snapshot.get99thPercentile());
+    assertTrue(snapshot.get50thPercentile() <= snapshot.get90thPercentile());
+  }
+
+  @Test
+  public void shouldHandleEmptyNegativeAndHugeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.snapshot().get99thPercentile());
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE / 2);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(2, snapshot.getCount());
+    assertEquals(0, snapshot.getPercentile(0));
+    assertEquals(Long.MAX_VALUE / 2, snapshot.getPercentile(100));
+    long[] buckets = snapshot.getBucketCounts();
+    assertEquals(1, buckets[0]);
+    assertEquals(1, buckets[buckets.length - 1]);
+  }
+
+  @Test
+  public void shouldKeepSnapshotIndependentOfLaterRecords() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(3);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    histogram.record(3);
+    histogram.reset();
+    assertEquals(1, snapshot.getCount());
+    assertEquals(0, histogram.snapshot().getCount());
+  }
+
+}
@@ -15,7 +15,23 @@
  */
 package org.apache.ibatis.executor;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
 import org.junit.Test;
 
 public class BatchExecutorTest extends BaseExecutorTest {
@@ -24,6 +40,180 @@ public class BatchExecutorTest extends BaseExecutorTest {
   public void dummy() {
   }
 
+  @Test
+  public void shouldExecuteBatchWhenRowLimitIsReached() throws Exception {
+    config.setBatchFlushRows(2);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      MappedStatement selectStatement = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      for (int i = 0; i < 3; i++) {
+        executor.update(insertStatement, new Author(200 + i, "someone", "******", "someone@apache.org", null, Section.NEWS));
+      }
+      // the first two rows were executed by the second update, the third one waited for the flush
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals(2, results.get(0).getUpdateCounts().length);
+      assertEquals(1, results.get(1).getUpdateCounts().length);
+      assertEquals(2, results.get(0).getParameterObjects().size());
+      List<Author> authors = executor.query(selectStatement, 202, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertEquals(1, authors.size());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldExecuteBatchWhenByteLimitIsReached() throws Exception {
+    config.setBatchFlushBytes(1L);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      for (int i = 0; i < 3; i++) {
+        executor.update(insertStatement, new Author(200 + i, "someone", "******", "someone@apache.org", null, Section.NEWS));
+      }
+      assertEquals(3, executor.flushStatements().size());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldDropParametersOfExecutedBatches() throws Exception {
+    config.setBatchRetainParameters(false);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      executor.update(insertStatement, new Author(200, "someone", "******", "someone@apache.org", null, Section.NEWS));
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(1, results.size());
+      assertEquals(1, results.get(0).getUpdateCounts().length);
+      assertTrue(results.get(0).getParameterObjects().isEmpty());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldMergeExecutedBatchesWhenParametersAreDropped() throws Exception {
+    config.setBatchFlushRows(2);
+    config.setBatchRetainParameters(false);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      for (int i = 0; i < 5; i++) {
+        executor.update(insertStatement, new Author(200 + i, "someone", "******", "someone@apache.org", null, Section.NEWS));
+      }
+      // the two automatic flushes were merged, the fifth row waited for this one
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(2, results.size());
+      assertArrayEquals(new int[] { 4 }, results.get(0).getUpdateCounts());
+      assertArrayEquals(new int[] { 1 }, results.get(1).getUpdateCounts());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldKeepSuccessfulResultsOfFailedFlushAfterRollback() throws Exception {
+    config.setBatchFlushRows(2);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      executor.update(insertStatement, new Author(200, "someone", "******", "someone@apache.org", null, Section.NEWS));
+      executor.update(insertStatement, new Author(201, "someone", "******", "someone@apache.org", null, Section.NEWS));
+      executor.update(insertStatement, new Author(202, "someone", "******", "someone@apache.org", null, Section.NEWS));
+      try {
+        executor.update(insertStatement, new Author(200, "someone", "******", "someone@apache.org", null, Section.NEWS));
+        fail("Expected the duplicate key to fail the batch");
+      } catch (BatchExecutorException e) {
+        executor.rollback(true);
+        assertEquals(1, e.getSuccessfulBatchResults().size());
+      }
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldKeepOneBatchPerStatementWhenGrouping() throws Exception {
+    config.setBatchGrouping(true);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      MappedStatement updateStatement = ExecutorTestHelper.prepareUpdateAuthorMappedStatement(config);
+      for (int i = 0; i < 3; i++) {
+        Author author = new Author(300 + i, "someone", "******", "someone@apache.org", null, Section.NEWS);
+        executor.update(insertStatement, author);
+        executor.update(updateStatement, author);
+      }
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals(insertStatement, results.get(0).getMappedStatement());
+      assertEquals(3, results.get(0).getUpdateCounts().length);
+      assertEquals(updateStatement, results.get(1).getMappedStatement());
+      assertEquals(3, results.get(1).getUpdateCounts().length);
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldExecuteBatchesAfterTheOnesTheyDependOn() throws Exception {
+    config.setBatchGrouping(true);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+      parameterMappings.add(new ParameterMapping.Builder(config, "username", String.class).build());
+      parameterMappings.add(new ParameterMapping.Builder(config, "id", int.class).build());
+      MappedStatement renameStatement = new MappedStatement.Builder(config, "renameAuthor",
+          new StaticSqlSource(config, "UPDATE author SET username = ? WHERE id = ?", parameterMappings), SqlCommandType.UPDATE)
+          .batchAfter(new String[] { insertStatement.getId() }).build();
+      Author author = new Author(300, "someone", "******", "someone@apache.org", null, Section.NEWS);
+      executor.update(renameStatement, author);
+      executor.update(insertStatement, author);
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals(insertStatement, results.get(0).getMappedStatement());
+      assertEquals(renameStatement, results.get(1).getMappedStatement());
+      assertEquals(1, results.get(1).getUpdateCounts()[0]);
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldInsertSeveralRowsPerStatement() throws Exception {
+    config.setBatchInsertRows(2);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      MappedStatement selectStatement = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      for (int i = 0; i < 3; i++) {
+        executor.update(insertStatement, new Author(400 + i, "someone" + i, "******", "someone@apache.org", null, Section.NEWS));
+      }
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(1, results.size());
+      assertEquals(3, results.get(0).getParameterObjects().size());
+      assertEquals(3, results.get(0).getUpdateCounts().length);
+      for (int i = 0; i < 3; i++) {
+        List<Author> authors = executor.query(selectStatement, 400 + i, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+        assertEquals("someone" + i, authors.get(0).getUsername());
+      }
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
   @Override
   protected Executor createExecutor(Transaction transaction) {
     return new BatchExecutor(config,transaction);
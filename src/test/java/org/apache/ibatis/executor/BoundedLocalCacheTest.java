@@ -0,0 +1,78 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.apache.ibatis.executor.ExecutionPlaceholder.EXECUTION_PLACEHOLDER;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class BoundedLocalCacheTest {
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedEntriesOnlyWhenAsked() {
+    BoundedLocalCache cache = new BoundedLocalCache("LocalCache", 2, 0, null);
+    cache.putObject("a", Collections.emptyList());
+    cache.putObject("b", Collections.emptyList());
+    cache.putObject("c", EXECUTION_PLACEHOLDER);
+    assertEquals(3, cache.getSize());
+    cache.getObject("a");
+    cache.removeObject("c");
+    cache.putObject("c", Collections.emptyList());
+    cache.evict("none");
+    assertEquals(2, cache.getSize());
+    assertNull(cache.getObject("b"));
+    assertNotNull(cache.getObject("a"));
+    assertNotNull(cache.getObject("c"));
+  }
+
+  @Test
+  public void shouldLimitTotalRows() {
+    BoundedLocalCache cache = new BoundedLocalCache("LocalCache", 0, 5, null);
+    cache.putObject("a", Arrays.asList(1, 2, 3));
+    cache.putObject("b", Arrays.asList(1, 2));
+    cache.evict("none");
+    assertEquals(5, cache.getRows());
+    cache.putObject("b", Arrays.asList(1, 2, 3));
+    assertEquals(6, cache.getRows());
+    cache.evict("none");
+    assertNull(cache.getObject("a"));
+    assertEquals(3, cache.getRows());
+    cache.putObject("big", Arrays.asList(1, 2, 3, 4, 5, 6));
+    cache.evict("none");
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.getRows());
+  }
+
+  @Test
+  public void shouldEvictCompanionEntries() {
+    Cache outputParameters = new PerpetualCache("LocalOutputParameterCache");
+    BoundedLocalCache cache = new BoundedLocalCache("LocalCache", 1, 0, outputParameters);
+    cache.putObject("a", Collections.emptyList());
+    outputParameters.putObject("a", "parameter");
+    cache.putObject("b", Collections.emptyList());
+    cache.evict("none");
+    assertNull(outputParameters.getObject("a"));
+    cache.clear();
+    assertEquals(0, cache.getSize());
+  }
+
+}
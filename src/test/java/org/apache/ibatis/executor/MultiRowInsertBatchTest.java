@@ -0,0 +1,43 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MultiRowInsertBatchTest {
+
+  @Test
+  public void shouldFindValuesGroupAtTheEnd() {
+    String sql = "insert into users (id, name) values (?, ?)";
+    assertEquals(sql.indexOf("(?"), MultiRowInsertBatch.indexOfValues(sql));
+    sql = "INSERT INTO author (id,bio) VALUES(?, 'a (values) b')  ";
+    assertEquals(sql.indexOf("(?"), MultiRowInsertBatch.indexOfValues(sql));
+    sql = "insert into t (a, b) values (?, coalesce(?, 'x'))";
+    assertEquals(sql.indexOf("(?"), MultiRowInsertBatch.indexOfValues(sql));
+  }
+
+  @Test
+  public void shouldRejectStatementsThatCannotBeRepeated() {
+    assertEquals(-1, MultiRowInsertBatch.indexOfValues("update t set values_count = ? where id = ?"));
+    assertEquals(-1, MultiRowInsertBatch.indexOfValues("insert into t (a) select a from s"));
+    assertEquals(-1, MultiRowInsertBatch.indexOfValues("insert into t (a) values (?), (?)"));
+    assertEquals(-1, MultiRowInsertBatch.indexOfValues("insert into t (a) values (?) on duplicate key update a = ?"));
+    assertEquals(-1, MultiRowInsertBatch.indexOfValues("insert into t (a) values (?"));
+  }
+
+}
@@ -0,0 +1,261 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.ConcurrentPooledDataSource;
+import org.apache.ibatis.datasource.pooled.ConcurrentPooledDataSourceFactory;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.junit.Test;
+
+public class ConcurrentPooledDataSourceTest extends BaseDataTest {
+
+  @Test
+  public void shouldProperlyMaintainPoolOf3ActiveAnd2IdleConnections() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setDefaultAutoCommit(false);
+      ds.setPoolMaximumActiveConnections(3);
+      ds.setPoolMaximumIdleConnections(2);
+      ds.setPoolMaximumCheckoutTime(10000);
+      ds.setPoolPingConnectionsNotUsedFor(1);
+      ds.setPoolPingEnabled(true);
+      ds.setPoolPingQuery("SELECT * FROM PRODUCT");
+      ds.setPoolTimeToWait(10000);
+      List<Connection> connections = new ArrayList<Connection>();
+      for (int i = 0; i < 3; i++) {
+        connections.add(ds.getConnection());
+      }
+      assertEquals(3, ds.getPoolState().getActiveConnectionCount());
+      for (Connection c : connections) {
+        c.close();
+      }
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(4, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+      assertEquals(0, ds.getPoolState().getHadToWaitCount());
+      assertNotNull(ds.getPoolState().toString());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReuseTheConnectionReturnedLastByTheSameThread() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    try {
+      Connection first = ds.getConnection();
+      Connection second = ds.getConnection();
+      Connection realSecond = PooledDataSource.unwrapConnection(second);
+      first.close();
+      second.close();
+      Connection c = ds.getConnection();
+      assertSame(realSecond, PooledDataSource.unwrapConnection(c));
+      c.close();
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldHandOffReturnedConnectionToWaitingThread() throws Exception {
+    final ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolTimeToWait(10000);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Connection c = ds.getConnection();
+      Connection real = PooledDataSource.unwrapConnection(c);
+      Future<Connection> waiting = executor.submit(new Callable<Connection>() {
+        @Override
+        public Connection call() throws SQLException {
+          Connection handedOver = ds.getConnection();
+          Connection result = PooledDataSource.unwrapConnection(handedOver);
+          handedOver.close();
+          return result;
+        }
+      });
+      while (ds.getPoolState().getHadToWaitCount() == 0) {
+        Thread.sleep(10);
+      }
+      c.close();
+      assertSame(real, waiting.get(5, TimeUnit.SECONDS));
+      assertEquals(1, ds.getPoolState().getHadToWaitCount());
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldTimeOutWhenNoConnectionBecomesAvailable() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolMaximumWaitTime(100);
+    Connection c = ds.getConnection();
+    try {
+      ds.getConnection();
+      fail("Expected the checkout to time out");
+    } catch (SQLException e) {
+      assertTrue(e.getMessage().contains("Timed out"));
+    } finally {
+      c.close();
+      ds.forceCloseAll();
+    }
+    assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+    assertEquals(1, ds.getPoolState().getMetrics().getTimeoutCount());
+  }
+
+  @Test
+  public void shouldNeverExceedMaximumActiveConnectionsUnderContention() throws Exception {
+    final ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    ds.setPoolMaximumActiveConnections(4);
+    ds.setPoolMaximumIdleConnections(4);
+    final int threads = 16;
+    final int iterations = 200;
+    final AtomicInteger inUse = new AtomicInteger();
+    final AtomicInteger maxInUse = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            start.await();
+            for (int j = 0; j < iterations; j++) {
+              Connection c = ds.getConnection();
+              int current = inUse.incrementAndGet();
+              int max;
+              while (current > (max = maxInUse.get()) && !maxInUse.compareAndSet(max, current)) {
+                // retry
+              }
+              inUse.decrementAndGet();
+              c.close();
+            }
+            return null;
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<Void> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+      assertTrue(maxInUse.get() <= 4);
+      assertEquals(threads * iterations, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+      assertTrue(ds.getPoolState().getIdleConnectionCount() <= 4);
+      assertEquals(threads * iterations, ds.getPoolState().getMetrics().getCheckoutTime().getCount());
+      assertEquals(threads * iterations, ds.getPoolState().getMetrics().getHoldTime().getCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldWarmUpPoolAndEvictUnusedIdleConnectionsInBackground() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    ds.setPoolMinimumIdleConnections(2);
+    ds.setPoolMaximumIdleTime(50);
+    ds.setPoolMaintenanceInterval(20);
+    try {
+      ds.startMaintenance();
+      PooledDataSourceTest.waitForIdleConnections(ds, 2);
+      List<Connection> connections = new ArrayList<Connection>();
+      for (int i = 0; i < 4; i++) {
+        connections.add(ds.getConnection());
+      }
+      for (Connection c : connections) {
+        c.close();
+      }
+      PooledDataSourceTest.waitForIdleConnections(ds, 2);
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+    } finally {
+      ds.stopMaintenance();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReportConnectionsHeldPastLeakDetectionThreshold() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    ds.setPoolLeakDetectionThreshold(50);
+    ds.setPoolLeakDetectionSamplingRate(1000000);
+    try {
+      Connection c = ds.getConnection();
+      Connection other = ds.getConnection();
+      other.close();
+      PooledDataSourceTest.waitForLeaks(ds, 1);
+      assertTrue(ds.getPoolState().toString().contains("SUSPECTED LEAKS"));
+      c.close();
+      assertFalse(ds.getPoolState().toString().contains("SUSPECTED LEAKS"));
+    } finally {
+      ds.stopMaintenance();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldAcceptTheSamePropertiesAsPooledDataSourceFactory() throws Exception {
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    props.setProperty("poolMaximumActiveConnections", "3");
+    props.setProperty("poolMaximumIdleConnections", "2");
+    props.setProperty("poolPingEnabled", "true");
+    props.setProperty("poolPingQuery", "SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS");
+    ConcurrentPooledDataSourceFactory factory = new ConcurrentPooledDataSourceFactory();
+    factory.setProperties(props);
+    ConcurrentPooledDataSource ds = (ConcurrentPooledDataSource) factory.getDataSource();
+    assertEquals(3, ds.getPoolMaximumActiveConnections());
+    assertEquals(2, ds.getPoolMaximumIdleConnections());
+    assertTrue(ds.isPoolPingEnabled());
+    Connection c = ds.getConnection();
+    c.close();
+    ds.forceCloseAll();
+  }
+
+  private ConcurrentPooledDataSource createConcurrentPooledDataSource() throws Exception {
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    ConcurrentPooledDataSource ds = new ConcurrentPooledDataSource();
+    ds.setDriver(props.getProperty("driver"));
+    ds.setUrl(props.getProperty("url"));
+    ds.setUsername(props.getProperty("username"));
+    ds.setPassword(props.getProperty("password"));
+    return ds;
+  }
+}
@@ -17,23 +17,44 @@ package org.apache.ibatis.jdbc;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.LatencyHistogram;
+import org.apache.ibatis.datasource.pooled.PoolMetrics;
 import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
 import org.hsqldb.jdbc.JDBCConnection;
 import org.junit.Ignore;
 import org.junit.Test;
 
 public class PooledDataSourceTest extends BaseDataTest {
 
+  private static final String PING_SQL = "SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+
   @Test
   public void shouldProperlyMaintainPoolOf3ActiveAnd2IdleConnections() throws Exception {
     PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
@@ -91,6 +112,473 @@ public class PooledDataSourceTest extends BaseDataTest {
     c.close();
   }
 
+  @Test
+  public void shouldTimeOutWhenNoConnectionBecomesAvailable() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolMaximumWaitTime(100);
+    Connection c = ds.getConnection();
+    try {
+      ds.getConnection();
+      fail("Expected the checkout to time out");
+    } catch (SQLException e) {
+      assertTrue(e.getMessage().contains("Timed out"));
+    } finally {
+      c.close();
+    }
+    assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+    assertEquals(1, ds.getPoolState().getHadToWaitCount());
+    assertEquals(1, ds.getPoolState().getMetrics().getTimeoutCount());
+    c = ds.getConnection();
+    c.close();
+    ds.forceCloseAll();
+  }
+
+  @Test
+  public void shouldFailFastWhenTooManyThreadsAreWaiting() throws Exception {
+    final PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolMaximumWaitingThreads(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Connection c = ds.getConnection();
+    try {
+      Future<Void> waiting = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws SQLException {
+          ds.getConnection().close();
+          return null;
+        }
+      });
+      while (ds.getPoolState().getWaitingThreadCount() == 0) {
+        Thread.sleep(10);
+      }
+      long start = System.currentTimeMillis();
+      try {
+        ds.getConnection();
+        fail("Expected the checkout to be rejected");
+      } catch (SQLException e) {
+        assertTrue(e.getMessage().contains("Too many threads"));
+      }
+      assertTrue(System.currentTimeMillis() - start < ds.getPoolTimeToWait());
+      assertEquals(1, ds.getPoolState().getMetrics().getRejectedCount());
+      c.close();
+      waiting.get(5, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldHandOverReturnedConnectionsToWaitersInArrivalOrder() throws Exception {
+    final PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMaximumActiveConnections(1);
+    final List<Integer> order = new ArrayList<Integer>();
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    Connection c = ds.getConnection();
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < 3; i++) {
+        final int id = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws SQLException {
+            Connection conn = ds.getConnection();
+            synchronized (order) {
+              order.add(id);
+            }
+            conn.close();
+            return null;
+          }
+        }));
+        while (ds.getPoolState().getWaitingThreadCount() < i + 1) {
+          Thread.sleep(10);
+        }
+      }
+      c.close();
+      for (Future<Void> future : futures) {
+        future.get(5, TimeUnit.SECONDS);
+      }
+      assertEquals(Arrays.asList(0, 1, 2), order);
+      assertEquals(3, ds.getPoolState().getHadToWaitCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldKeepWaitersQueuedAcrossWaitSlices() throws Exception {
+    final PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolTimeToWait(5);
+    ds.setPoolMaximumWaitingThreads(3);
+    final List<Integer> order = new ArrayList<Integer>();
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    Connection c = ds.getConnection();
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < 3; i++) {
+        final int id = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws SQLException {
+            Connection conn = ds.getConnection();
+            synchronized (order) {
+              order.add(id);
+            }
+            conn.close();
+            return null;
+          }
+        }));
+        while (ds.getPoolState().getWaitingThreadCount() < i + 1) {
+          Thread.sleep(10);
+        }
+        Thread.sleep(50);
+      }
+      for (int i = 0; i < 20; i++) {
+        assertEquals(3, ds.getPoolState().getWaitingThreadCount());
+        try {
+          ds.getConnection();
+          fail("Expected the checkout to be rejected");
+        } catch (SQLException e) {
+          assertTrue(e.getMessage().contains("Too many threads"));
+        }
+        Thread.sleep(5);
+      }
+      c.close();
+      for (Future<Void> future : futures) {
+        future.get(5, TimeUnit.SECONDS);
+      }
+      assertEquals(Arrays.asList(0, 1, 2), order);
+      assertEquals(3, ds.getPoolState().getHadToWaitCount());
+      assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldWarmUpPoolAndEvictUnusedIdleConnectionsInBackground() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMinimumIdleConnections(2);
+    ds.setPoolMaximumIdleTime(50);
+    ds.setPoolMaintenanceInterval(20);
+    try {
+      ds.startMaintenance();
+      waitForIdleConnections(ds, 2);
+      assertEquals(0, ds.getPoolState().getRequestCount());
+      List<Connection> connections = new ArrayList<Connection>();
+      for (int i = 0; i < 4; i++) {
+        connections.add(ds.getConnection());
+      }
+      for (Connection c : connections) {
+        c.close();
+      }
+      waitForIdleConnections(ds, 2);
+    } finally {
+      ds.stopMaintenance();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldCloseConnectionsOlderThanMaximumLifetimeOnReturn() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMaximumLifetime(50);
+    Connection c = ds.getConnection();
+    Thread.sleep(100);
+    c.close();
+    assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+    c = ds.getConnection();
+    c.close();
+    assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+    ds.forceCloseAll();
+  }
+
+  @Test
+  public void shouldRecordCheckoutAndHoldTimes() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      for (int i = 0; i < 3; i++) {
+        Connection c = ds.getConnection();
+        Thread.sleep(5);
+        c.close();
+      }
+      PoolMetrics metrics = ds.getPoolState().getMetrics();
+      LatencyHistogram.Snapshot checkoutTime = metrics.getCheckoutTime();
+      LatencyHistogram.Snapshot holdTime = metrics.getHoldTime();
+      assertEquals(3, checkoutTime.getCount());
+      assertEquals(3, holdTime.getCount());
+      assertTrue(holdTime.get50thPercentile() >= 4000);
+      assertTrue(holdTime.getMax() >= holdTime.get99thPercentile());
+      assertEquals(0, metrics.getTimeoutCount());
+      metrics.reset();
+      assertEquals(0, metrics.getHoldTime().getCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldExposeMetricsThroughJmx() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolJmxEnabled(true);
+    ds.setPoolName("jpetstore");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      Connection c = ds.getConnection();
+      ObjectName name = ds.getRegisteredName();
+      assertEquals(new ObjectName("org.apache.ibatis.datasource.pooled:type=PooledDataSource,name=\"jpetstore\""), name);
+      assertEquals(1, server.getAttribute(name, "ActiveConnectionCount"));
+      c.close();
+      assertEquals(1L, server.getAttribute(name, "RequestCount"));
+      assertEquals(1, server.getAttribute(name, "IdleConnectionCount"));
+      assertEquals(0L, server.getAttribute(name, "TimeoutCount"));
+      assertNotNull(server.getAttribute(name, "HoldTime99thPercentile"));
+      ds.unregisterMBean();
+      assertFalse(server.isRegistered(name));
+    } finally {
+      ds.unregisterMBean();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReportConnectionsHeldPastLeakDetectionThreshold() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolLeakDetectionThreshold(50);
+    try {
+      Connection c = ds.getConnection();
+      waitForLeaks(ds, 1);
+      String state = ds.getPoolState().toString();
+      assertTrue(state.contains("SUSPECTED LEAKS"));
+      assertTrue(state.contains("shouldReportConnectionsHeldPastLeakDetectionThreshold"));
+      c.close();
+      assertFalse(ds.getPoolState().toString().contains("SUSPECTED LEAKS"));
+      assertEquals(1, ds.getPoolState().getMetrics().getLeakCount());
+    } finally {
+      ds.stopMaintenance();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReusePreparedStatementsAcrossCheckouts() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolPreparedStatementCacheSize(2);
+    try {
+      Connection c = ds.getConnection();
+      PreparedStatement ps = c.prepareStatement(PING_SQL);
+      ps.setMaxRows(1);
+      PreparedStatement real = ps.unwrap(PreparedStatement.class);
+      ps.close();
+      assertTrue(ps.isClosed());
+      c.close();
+      c = ds.getConnection();
+      ps = c.prepareStatement(PING_SQL);
+      assertSame(real, ps.unwrap(PreparedStatement.class));
+      assertEquals(0, ps.getMaxRows());
+      PreparedStatement nested = c.prepareStatement(PING_SQL);
+      assertNotSame(real, nested.unwrap(PreparedStatement.class));
+      nested.close();
+      ps.close();
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedPreparedStatement() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolPreparedStatementCacheSize(1);
+    try {
+      Connection c = ds.getConnection();
+      PreparedStatement first = c.prepareStatement(PING_SQL);
+      PreparedStatement realFirst = first.unwrap(PreparedStatement.class);
+      first.close();
+      c.prepareStatement("SELECT 2 FROM INFORMATION_SCHEMA.SYSTEM_USERS").close();
+      assertTrue(realFirst.isClosed());
+      PreparedStatement again = c.prepareStatement(PING_SQL);
+      assertNotSame(realFirst, again.unwrap(PreparedStatement.class));
+      again.close();
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldCloseStatementsLeftOpenWhenConnectionIsReturned() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolPreparedStatementCacheSize(2);
+    try {
+      Connection c = ds.getConnection();
+      PreparedStatement ps = c.prepareStatement(PING_SQL);
+      PreparedStatement real = ps.unwrap(PreparedStatement.class);
+      c.close();
+      assertTrue(ps.isClosed());
+      assertTrue(real.isClosed());
+      try {
+        ps.executeQuery();
+        fail("Expected the statement to be closed");
+      } catch (SQLException e) {
+        assertTrue(e.getMessage().contains("closed"));
+      }
+      c = ds.getConnection();
+      ps = c.prepareStatement(PING_SQL);
+      ResultSet rs = ps.executeQuery();
+      assertTrue(rs.next());
+      rs.close();
+      ps.close();
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldCloseResultSetsLeftOpenWhenStatementIsReturned() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolPreparedStatementCacheSize(2);
+    try {
+      Connection c = ds.getConnection();
+      PreparedStatement ps = c.prepareStatement(PING_SQL);
+      ResultSet queried = ps.executeQuery();
+      assertTrue(ps.execute());
+      ResultSet executed = ps.getResultSet();
+      ps.close();
+      assertTrue(queried.isClosed());
+      assertTrue(executed.isClosed());
+      ps = c.prepareStatement(PING_SQL);
+      ResultSet leftOpen = ps.executeQuery();
+      c.close();
+      assertTrue(leftOpen.isClosed());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldCloseCachedStatementsWhenConnectionIsClosed() throws Exception {
+    final AtomicInteger closedStatements = new AtomicInteger();
+    UnpooledDataSource unpooled = new UnpooledDataSource() {
+      @Override
+      public Connection getConnection() throws SQLException {
+        return countingStatementCloses(super.getConnection(), closedStatements);
+      }
+    };
+    UnpooledDataSource settings = createUnpooledDataSource(JPETSTORE_PROPERTIES);
+    unpooled.setDriver(settings.getDriver());
+    unpooled.setUrl(settings.getUrl());
+    unpooled.setUsername(settings.getUsername());
+    unpooled.setPassword(settings.getPassword());
+    PooledDataSource ds = new PooledDataSource(unpooled);
+    ds.setPoolPreparedStatementCacheSize(2);
+    try {
+      Connection c = ds.getConnection();
+      c.prepareStatement(PING_SQL).close();
+      c.close();
+      assertEquals(0, closedStatements.get());
+    } finally {
+      ds.forceCloseAll();
+    }
+    assertEquals(1, closedStatements.get());
+  }
+
+  private static Connection countingStatementCloses(final Connection connection, final AtomicInteger closedStatements) {
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = invokeOn(connection, method, args);
+            if ("prepareStatement".equals(method.getName())) {
+              final Object statement = result;
+              return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                  new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                      if ("close".equals(method.getName())) {
+                        closedStatements.incrementAndGet();
+                      }
+                      return invokeOn(statement, method, args);
+                    }
+                  });
+            }
+            return result;
+          }
+        });
+  }
+
+  private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getTargetException();
+    }
+  }
+
+  @Test
+  public void shouldSkipRedundantConnectionStateRoundTrips() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolTrackConnectionState(true);
+    try {
+      JdbcTransaction tx = new JdbcTransaction(ds, TransactionIsolationLevel.READ_COMMITTED, false);
+      Connection c = tx.getConnection();
+      assertFalse(PooledDataSource.unwrapConnection(c).getAutoCommit());
+      tx.close();
+      long saved = ds.getPoolState().getMetrics().getSavedRoundTripCount();
+      tx = new JdbcTransaction(ds, TransactionIsolationLevel.READ_COMMITTED, false);
+      c = tx.getConnection();
+      assertTrue(ds.getPoolState().getMetrics().getSavedRoundTripCount() > saved);
+      Connection real = PooledDataSource.unwrapConnection(c);
+      assertFalse(real.getAutoCommit());
+      assertFalse(c.getAutoCommit());
+      assertEquals(Connection.TRANSACTION_READ_COMMITTED, real.getTransactionIsolation());
+      c.setReadOnly(false);
+      assertFalse(c.isReadOnly());
+      tx.close();
+      assertTrue(real.getAutoCommit());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldAlwaysAskTheDriverWhenConnectionStateIsNotTracked() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    assertFalse(ds.isPoolTrackConnectionState());
+    try {
+      for (int i = 0; i < 2; i++) {
+        JdbcTransaction tx = new JdbcTransaction(ds, null, false);
+        tx.getConnection();
+        tx.close();
+      }
+      assertEquals(0, ds.getPoolState().getMetrics().getSavedRoundTripCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  static void waitForLeaks(PooledDataSource ds, long expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (ds.getPoolState().getMetrics().getLeakCount() != expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, ds.getPoolState().getMetrics().getLeakCount());
+  }
+
+  static void waitForIdleConnections(PooledDataSource ds, int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (ds.getPoolState().getIdleConnectionCount() != expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, ds.getPoolState().getIdleConnectionCount());
+  }
+
   @Ignore("See the comments")
   @Test
   public void shouldReconnectWhenServerKilledLeakedConnection() throws Exception {
@@ -0,0 +1,215 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.async_session;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.AsyncSqlSession;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionException;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncSessionTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/async_session/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/async_session/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    conn.close();
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldRunMapperMethodsInOrderOnOneTransaction() throws Exception {
+    AsyncSqlSession session = sqlSessionFactory.openAsyncSession();
+    PersonMapper mapper = session.getMapper(PersonMapper.class);
+    CompletableFuture<Integer> inserted = mapper.insert(2, "John");
+    CompletableFuture<Void> insertedQuietly = mapper.insertQuietly(3, "Jill");
+    // the uncommitted rows are visible to the later operations of the same session
+    CompletableFuture<String> name = mapper.findName(2);
+    session.rollback();
+    CompletableFuture<String> rolledBack = mapper.findName(2);
+    session.close().get(5, TimeUnit.SECONDS);
+
+    assertEquals(Integer.valueOf(1), inserted.get());
+    assertNull(insertedQuietly.get());
+    assertEquals("John", name.get());
+    assertNull(rolledBack.get());
+  }
+
+  @Test
+  public void shouldRunStatementsAndCommit() throws Exception {
+    AsyncSqlSession session = sqlSessionFactory.openAsyncSession();
+    session.insert("org.apache.ibatis.submitted.async_session.PersonMapper.insert", param(2, "John"));
+    session.commit();
+    session.close().get(5, TimeUnit.SECONDS);
+
+    session = sqlSessionFactory.openAsyncSession();
+    CompletableFuture<List<String>> names = session.getMapper(PersonMapper.class).findNames();
+    session.close();
+    assertEquals(Arrays.asList("Jane", "John"), names.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void shouldKeepRunningAfterFailedOperation() throws Exception {
+    AsyncSqlSession session = sqlSessionFactory.openAsyncSession();
+    CompletableFuture<Object> failed = session.selectOne("unknownStatement");
+    CompletableFuture<String> name = session.getMapper(PersonMapper.class).findName(1);
+    session.close();
+    try {
+      failed.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof PersistenceException);
+    }
+    assertEquals("Jane", name.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void shouldRejectOperationsAfterClose() throws Exception {
+    AsyncSqlSession session = sqlSessionFactory.openAsyncSession();
+    session.close().get(5, TimeUnit.SECONDS);
+    try {
+      session.getMapper(PersonMapper.class).findName(1).get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof SqlSessionException);
+    }
+  }
+
+  @Test(expected = BindingException.class)
+  public void shouldRejectBlockingMapperMethods() {
+    AsyncSqlSession session = sqlSessionFactory.openAsyncSession();
+    try {
+      session.getMapper(PersonMapper.class).count();
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  public void shouldReleaseBlockingCacheLocksOnRollback() throws Exception {
+    // a pool hands each new task to a new thread until it is full
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    sqlSessionFactory.getConfiguration().setAsyncExecutor(executor);
+    sqlSessionFactory.getConfiguration().setAsyncMaxConcurrency(4);
+    try {
+      AsyncSqlSession session = sqlSessionFactory.openAsyncSession();
+      CompletableFuture<String> missed = session.getMapper(CachedPersonMapper.class).findName(1);
+      // releases the lock of the missed key without a value
+      session.rollback(true);
+      session.close().get(5, TimeUnit.SECONDS);
+      assertEquals("Jane", missed.get());
+
+      session = sqlSessionFactory.openAsyncSession();
+      CompletableFuture<String> cached = session.getMapper(CachedPersonMapper.class).findName(1);
+      session.close();
+      assertEquals("Jane", cached.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldHoldPermitUntilClosed() throws Exception {
+    PooledDataSource dataSource = new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:async_session", "sa", "");
+    dataSource.setPoolMaximumActiveConnections(1);
+    sqlSessionFactory.getConfiguration().setEnvironment(new Environment("pooled", new JdbcTransactionFactory(), dataSource));
+    try {
+      AsyncSqlSession first = sqlSessionFactory.openAsyncSession();
+      // the first session keeps the only connection
+      assertEquals("Jane", first.getMapper(PersonMapper.class).findName(1).get(5, TimeUnit.SECONDS));
+      AsyncSqlSession second = sqlSessionFactory.openAsyncSession();
+      CompletableFuture<String> waiting = second.getMapper(PersonMapper.class).findName(1);
+      Thread.sleep(100);
+      assertFalse(waiting.isDone());
+      first.commit().get(5, TimeUnit.SECONDS);
+      first.close().get(5, TimeUnit.SECONDS);
+      assertEquals("Jane", waiting.get(5, TimeUnit.SECONDS));
+      second.close().get(5, TimeUnit.SECONDS);
+    } finally {
+      dataSource.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldRejectExecutorWithFewerThreadsThanSessions() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    sqlSessionFactory.getConfiguration().setAsyncExecutor(executor);
+    sqlSessionFactory.getConfiguration().setAsyncMaxConcurrency(3);
+    try {
+      sqlSessionFactory.openAsyncSession();
+      fail("Expected the executor to be rejected");
+    } catch (SqlSessionException e) {
+      assertTrue(e.getMessage().contains("at most 2 threads"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldCompleteFuturesOfRegularSessions() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      CompletableFuture<String> name = sqlSession.getMapper(PersonMapper.class).findName(1);
+      assertTrue(name.isDone());
+      assertEquals("Jane", name.get());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private static Map<String, Object> param(int id, String name) {
+    Map<String, Object> param = new HashMap<String, Object>();
+    param.put("id", id);
+    param.put("name", name);
+    return param;
+  }
+
+}
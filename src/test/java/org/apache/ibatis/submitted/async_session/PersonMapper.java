@@ -0,0 +1,42 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.async_session;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+public interface PersonMapper {
+
+  @Select("select name from person where id = #{id}")
+  CompletableFuture<String> findName(@Param("id") int id);
+
+  @Select("select name from person order by id")
+  CompletableFuture<List<String>> findNames();
+
+  @Insert("insert into person (id, name) values (#{id}, #{name})")
+  CompletableFuture<Integer> insert(@Param("id") int id, @Param("name") String name);
+
+  @Insert("insert into person (id, name) values (#{id}, #{name})")
+  CompletableFuture<Void> insertQuietly(@Param("id") int id, @Param("name") String name);
+
+  @Select("select count(*) from person")
+  int count();
+
+}
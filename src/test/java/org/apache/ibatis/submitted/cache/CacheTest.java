@@ -18,6 +18,9 @@ package org.apache.ibatis.submitted.cache;
 import java.io.Reader;
 import java.lang.reflect.Field;
 import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ibatis.annotations.CacheNamespace;
 import org.apache.ibatis.annotations.Property;
@@ -25,6 +28,17 @@ import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
 import org.apache.ibatis.annotations.CacheNamespaceRef;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.jdbc.ScriptRunner;
 import org.apache.ibatis.session.SqlSession;
@@ -369,6 +383,113 @@ public class CacheTest {
       .hasMessage("Should be specified either value() or name() attribute in the @CacheNamespaceRef");
   }
 
+  @Test
+  public void shouldRefreshAheadThroughOwningStatement() throws Exception {
+    SqlSession sqlSession1 = sqlSessionFactory.openSession();
+    try {
+      Assert.assertEquals(2, sqlSession1.getMapper(RefreshAheadPersonMapper.class).findAll().size());
+    } finally {
+      sqlSession1.close();
+    }
+    SqlSession sqlSession2 = sqlSessionFactory.openSession();
+    try {
+      Connection conn = sqlSession2.getConnection();
+      Statement stmt = conn.createStatement();
+      stmt.execute("delete from person where id = 1");
+      stmt.close();
+      sqlSession2.commit(true);
+    } finally {
+      sqlSession2.close();
+    }
+    SqlSession sqlSession3 = sqlSessionFactory.openSession();
+    try {
+      // the stale value is served, the reload happens in the background
+      Assert.assertEquals(2, sqlSession3.getMapper(RefreshAheadPersonMapper.class).findAll().size());
+    } finally {
+      sqlSession3.close();
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    int size;
+    do {
+      Thread.sleep(20);
+      SqlSession sqlSession4 = sqlSessionFactory.openSession();
+      try {
+        size = sqlSession4.getMapper(RefreshAheadPersonMapper.class).findAll().size();
+      } finally {
+        sqlSession4.close();
+      }
+    } while (size != 1 && System.currentTimeMillis() < deadline);
+    Assert.assertEquals(1, size);
+  }
+
+  @Test
+  public void shouldRefreshAheadWithParameterValuesOfTheLookup() throws Exception {
+    RefreshCounter counter = new RefreshCounter();
+    sqlSessionFactory.getConfiguration().addInterceptor(counter);
+    SqlSession sqlSession1 = sqlSessionFactory.openSession();
+    try {
+      Assert.assertEquals("Jane", sqlSession1.getMapper(RefreshAheadPersonMapper.class).findById(new Person(1, null, null)).getFirstname());
+    } finally {
+      sqlSession1.close();
+    }
+    SqlSession sqlSession2 = sqlSessionFactory.openSession();
+    try {
+      Connection conn = sqlSession2.getConnection();
+      Statement stmt = conn.createStatement();
+      stmt.execute("update person set firstname = 'Janet' where id = 1");
+      stmt.close();
+      sqlSession2.commit(true);
+    } finally {
+      sqlSession2.close();
+    }
+    SqlSession sqlSession3 = sqlSessionFactory.openSession();
+    try {
+      Person parameter = new Person(1, null, null);
+      Assert.assertEquals("Jane", sqlSession3.getMapper(RefreshAheadPersonMapper.class).findById(parameter).getFirstname());
+      // reused by the caller while the reload is pending
+      parameter.setId(2);
+    } finally {
+      sqlSession3.close();
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    String firstname;
+    do {
+      Thread.sleep(20);
+      SqlSession sqlSession4 = sqlSessionFactory.openSession();
+      try {
+        firstname = sqlSession4.getMapper(RefreshAheadPersonMapper.class).findById(new Person(1, null, null)).getFirstname();
+      } finally {
+        sqlSession4.close();
+      }
+    } while ("Jane".equals(firstname) && System.currentTimeMillis() < deadline);
+    Assert.assertEquals("Janet", firstname);
+    // the reload went through the plugins
+    Assert.assertTrue(counter.refreshes.get() > 0);
+  }
+
+  @Intercepts(@Signature(type = Executor.class, method = "query",
+      args = { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class }))
+  public static class RefreshCounter implements Interceptor {
+    private final AtomicInteger refreshes = new AtomicInteger();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      if (Thread.currentThread().getName().startsWith("mybatis-cache-refresh")) {
+        refreshes.incrementAndGet();
+      }
+      return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+  }
+
   private CustomCache unwrap(Cache cache){
     Field field;
     try {
@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.negative_cache;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NegativeCacheTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/negative_cache/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/negative_cache/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    conn.close();
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldCacheMissingRows() throws Exception {
+    assertNull(findName(2));
+    insertPersonBehindTheCache(2, "John");
+    assertNull(findName(2));
+    assertEquals("Jane", findName(1));
+  }
+
+  @Test
+  public void shouldEvictOldestMissingRowsOnly() throws Exception {
+    assertEquals("Jane", findName(1));
+    assertNull(findName(2));
+    assertNull(findName(3));
+    assertNull(findName(4));
+    insertPersonBehindTheCache(2, "John");
+    insertPersonBehindTheCache(3, "Jill");
+    renamePersonBehindTheCache(1, "Joan");
+
+    assertEquals("John", findName(2));
+    assertNull(findName(3));
+    // real results are kept apart from the empty ones
+    assertEquals("Jane", findName(1));
+  }
+
+  @Test
+  public void shouldNotCacheMissingRowsOfStatementOptingOut() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      assertNull(sqlSession.getMapper(PersonMapper.class).findNameUncachedIfMissing(2));
+    } finally {
+      sqlSession.close();
+    }
+    insertPersonBehindTheCache(2, "John");
+    sqlSession = sqlSessionFactory.openSession();
+    try {
+      assertEquals("John", sqlSession.getMapper(PersonMapper.class).findNameUncachedIfMissing(2));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private String findName(int id) {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      return sqlSession.getMapper(PersonMapper.class).findName(id);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private void insertPersonBehindTheCache(int id, String name) throws Exception {
+    execute("insert into person (id, name) values (" + id + ", '" + name + "')");
+  }
+
+  private void renamePersonBehindTheCache(int id, String name) throws Exception {
+    execute("update person set name = '" + name + "' where id = " + id);
+  }
+
+  private void execute(String sql) throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession(true);
+    try {
+      Statement statement = sqlSession.getConnection().createStatement();
+      statement.executeUpdate(sql);
+      statement.close();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
@@ -0,0 +1,163 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.parallel_queries;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.QueryBatch;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelQueriesTest {
+
+  private static final String NAMESPACE = PersonMapper.class.getName() + ".";
+
+  private SqlSessionFactory sqlSessionFactory;
+  private ThreadPoolExecutor queryExecutor;
+
+  @Before
+  public void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/parallel_queries/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+    queryExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+    sqlSessionFactory.getConfiguration().setAsyncExecutor(queryExecutor);
+
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/parallel_queries/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    conn.close();
+    reader.close();
+    session.close();
+  }
+
+  @After
+  public void tearDown() {
+    queryExecutor.shutdownNow();
+  }
+
+  @Test
+  public void shouldReturnResultsInOrderAndCacheThemLocally() {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      List<List<?>> results = session.selectAll(new QueryBatch()
+          .add(NAMESPACE + "findName", 1)
+          .add(NAMESPACE + "findName", 2)
+          .add(NAMESPACE + "count"));
+      assertEquals(Arrays.asList(Collections.singletonList("Jane"), Collections.singletonList("John"),
+          Collections.singletonList(2)), results);
+      assertEquals(2, queryExecutor.getTaskCount());
+      assertSame(results.get(1), session.selectList(NAMESPACE + "findName", 2));
+      assertSame(results.get(2), session.selectList(NAMESPACE + "count"));
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  public void shouldRunOnTheSessionWhenTheQueriesAreCached() {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      List<Object> cached = session.selectList(NAMESPACE + "findName", 2);
+      List<List<?>> results = session.selectAll(new QueryBatch()
+          .add(NAMESPACE + "findName", 1)
+          .add(NAMESPACE + "findName", 2));
+      assertEquals(0, queryExecutor.getTaskCount());
+      assertSame(cached, results.get(1));
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  public void shouldSeeUncommittedChangesOfTheSession() {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      session.getMapper(PersonMapper.class).insert(3, "Jill");
+      List<List<?>> results = session.selectAll(new QueryBatch()
+          .add(NAMESPACE + "findName", 3)
+          .add(NAMESPACE + "count"));
+      assertEquals(Arrays.asList(Collections.singletonList("Jill"), Collections.singletonList(3)), results);
+      assertEquals(0, queryExecutor.getTaskCount());
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void shouldRunOnTheSessionWhenTheExecutorIsBusy() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    for (int i = 0; i < queryExecutor.getCorePoolSize(); i++) {
+      queryExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      List<List<?>> results = session.selectAll(new QueryBatch()
+          .add(NAMESPACE + "findName", 1)
+          .add(NAMESPACE + "findName", 2)
+          .add(NAMESPACE + "count"));
+      assertEquals(Arrays.asList(Collections.singletonList("Jane"), Collections.singletonList("John"),
+          Collections.singletonList(2)), results);
+    } finally {
+      session.close();
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void shouldWrapErrorsOfParallelQueries() {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      session.selectAll(new QueryBatch()
+          .add(NAMESPACE + "findName", 1)
+          .add(NAMESPACE + "findMissing"));
+      fail("Should have failed on the missing table");
+    } catch (PersistenceException e) {
+      assertTrue(e.getMessage().contains("Error querying database"));
+    } finally {
+      session.close();
+    }
+  }
+
+}
@@ -0,0 +1,50 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.table_invalidation;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Property;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+@CacheNamespace(properties = @Property(name = "tableInvalidation", value = "true"))
+public interface PetMapper {
+
+  @Select("select name from person order by id")
+  List<String> findPersonNames();
+
+  @Select("select name from pet order by id")
+  List<String> findPetNames();
+
+  @Select("select p.name from person p join pet t on t.owner_id = p.id order by t.id")
+  List<String> findOwnerNames();
+
+  @Insert("insert into pet (id, owner_id, name) values (#{id}, #{ownerId}, #{name})")
+  int insertPet(@Param("id") int id, @Param("ownerId") int ownerId, @Param("name") String name);
+
+  @Update("update ${table} set name = upper(name)")
+  int upperCaseNames(@Param("table") String table);
+
+  @Update("update ${table} set name = lower(name)")
+  @Options(tables = "pet")
+  int lowerCasePetNames(@Param("table") String table);
+
+}
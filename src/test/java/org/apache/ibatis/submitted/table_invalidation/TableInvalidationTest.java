@@ -0,0 +1,170 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.table_invalidation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TableInvalidationTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/table_invalidation/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/table_invalidation/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    conn.close();
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldOnlyFlushQueriesOfWrittenTables() throws Exception {
+    warmUp();
+    renamePersonBehindTheCache();
+
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.getMapper(PetMapper.class).insertPet(2, 2, "Tom");
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+
+    sqlSession = sqlSessionFactory.openSession();
+    try {
+      PetMapper mapper = sqlSession.getMapper(PetMapper.class);
+      // still cached, so the rename is not seen
+      assertThat(mapper.findPersonNames()).containsExactly("Jane", "John");
+      assertThat(mapper.findPetNames()).containsExactly("Rex", "Tom");
+      assertThat(mapper.findOwnerNames()).containsExactly("Jill", "John");
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldHideInvalidatedEntriesBeforeCommit() throws Exception {
+    warmUp();
+    renamePersonBehindTheCache();
+
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      PetMapper mapper = sqlSession.getMapper(PetMapper.class);
+      mapper.insertPet(2, 2, "Tom");
+      assertThat(mapper.findPersonNames()).containsExactly("Jane", "John");
+      assertThat(mapper.findOwnerNames()).containsExactly("Jill", "John");
+      sqlSession.rollback();
+    } finally {
+      sqlSession.close();
+    }
+
+    sqlSession = sqlSessionFactory.openSession();
+    try {
+      assertThat(sqlSession.getMapper(PetMapper.class).findOwnerNames()).containsExactly("Jane");
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldFlushEverythingWhenTablesAreUnknown() throws Exception {
+    warmUp();
+    renamePersonBehindTheCache();
+
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.getMapper(PetMapper.class).upperCaseNames("pet");
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+
+    sqlSession = sqlSessionFactory.openSession();
+    try {
+      assertThat(sqlSession.getMapper(PetMapper.class).findPersonNames()).containsExactly("Jill", "John");
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldUseExplicitTables() throws Exception {
+    warmUp();
+    renamePersonBehindTheCache();
+
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.getMapper(PetMapper.class).lowerCasePetNames("pet");
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+
+    sqlSession = sqlSessionFactory.openSession();
+    try {
+      PetMapper mapper = sqlSession.getMapper(PetMapper.class);
+      assertThat(mapper.findPersonNames()).containsExactly("Jane", "John");
+      assertThat(mapper.findPetNames()).containsExactly("rex");
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private void warmUp() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      PetMapper mapper = sqlSession.getMapper(PetMapper.class);
+      assertThat(mapper.findPersonNames()).containsExactly("Jane", "John");
+      assertThat(mapper.findPetNames()).containsExactly("Rex");
+      assertThat(mapper.findOwnerNames()).containsExactly("Jane");
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private void renamePersonBehindTheCache() throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession(true);
+    try {
+      Statement statement = sqlSession.getConnection().createStatement();
+      statement.executeUpdate("update person set name = 'Jill' where id = 1");
+      statement.close();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}